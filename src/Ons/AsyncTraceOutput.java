@@ -0,0 +1,215 @@
+package Ons;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves the formatting and writing of the trace off the simulation thread.
+ *
+ * The simulation thread only copies each record into a preallocated ring
+ * buffer of long words. A background writer thread takes the records out in
+ * batches and hands them to the target output, releasing the ring space once
+ * per batch. There is one producer and one consumer, so the ring needs no
+ * locks: each side publishes its position with an ordered write.
+ *
+ * When the ring is full, the simulation thread either waits for the writer
+ * (BLOCK) or discards the record (DROP); the number of discarded records is
+ * reported when the output is closed.
+ *
+ * @author onsteam
+ */
+class AsyncTraceOutput implements TraceOutput {
+
+    static final int BLOCK = 0;
+    static final int DROP = 1;
+
+    private static final long IDLE_PARK = 100000L; // ns
+    private static final long FULL_PARK = 10000L; // ns
+
+    private final TraceOutput target;
+    private final long[] ring;
+    private final int mask;
+    private final int batch;
+    private final int backpressure;
+    private final AtomicLong head; // next word to be written, owned by the simulation thread
+    private final AtomicLong tail; // next word to be read, owned by the writer thread
+    private final Thread writer;
+    private volatile long flushTo; // ring position of the last flush request
+    private volatile long flushRequests; // owned by the simulation thread
+    private volatile long flushesDone; // owned by the writer thread
+    private volatile boolean closed;
+    private volatile Throwable failure;
+    private long dropped;
+
+    /**
+     * Creates a new Ons.AsyncTraceOutput object and starts its writer thread.
+     *
+     * @param target the output that receives the records
+     * @param capacity ring size in long words, rounded up to a power of two
+     * @param batch maximum number of records handled before releasing ring space
+     * @param backpressure BLOCK or DROP
+     */
+    AsyncTraceOutput(TraceOutput target, int capacity, int batch, int backpressure) {
+        if (target == null || capacity < 1024 || capacity > (1 << 30) || batch < 1 || (backpressure != BLOCK && backpressure != DROP)) {
+            throw (new IllegalArgumentException());
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.target = target;
+        this.ring = new long[size];
+        this.mask = size - 1;
+        this.batch = batch;
+        this.backpressure = backpressure;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "trace-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Copies a record into the ring buffer.
+     *
+     * @param rec the array holding the record
+     * @param off the position of the record header
+     */
+    @Override
+    public void write(long[] rec, int off) {
+        int length = TraceRecord.length(rec[off]);
+        if (length > ring.length) {
+            throw (new IllegalArgumentException("Trace record larger than the trace buffer"));
+        }
+        long h = head.get();
+        while (h + length - tail.get() > ring.length) {
+            if (backpressure == DROP || failure != null) {
+                dropped++;
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK);
+        }
+        int start = (int) (h & mask);
+        int first = Math.min(length, ring.length - start);
+        System.arraycopy(rec, off, ring, start, first);
+        System.arraycopy(rec, off + first, ring, 0, length - first);
+        head.lazySet(h + length);
+    }
+
+    /**
+     * Waits until the writer thread has handed every record written so far to
+     * the target output and flushed it.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushTo = head.get();
+        long request = ++flushRequests;
+        while (flushesDone < request && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK);
+        }
+        rethrow();
+    }
+
+    /**
+     * Waits for the writer thread to drain the ring, then closes the target
+     * output.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped > 0) {
+            System.err.println("Trace: " + Long.toString(dropped) + " records dropped, trace buffer full");
+        }
+        try {
+            target.close();
+        } finally {
+            rethrow();
+        }
+    }
+
+    private void rethrow() throws IOException {
+        Throwable t = failure;
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException(t);
+        }
+    }
+
+    /**
+     * Body of the writer thread: takes batches of records out of the ring
+     * until the output is closed and the ring is empty.
+     */
+    private void drainLoop() {
+        long[] rec = new long[64];
+        long t = tail.get();
+        while (true) {
+            boolean done = closed;
+            long h = head.get();
+            if (t == h) {
+                flushUpTo(t);
+                if (done) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK);
+                continue;
+            }
+            for (int n = 0; n < batch && t != h; n++) {
+                int start = (int) (t & mask);
+                int length = TraceRecord.length(ring[start]);
+                if (length > rec.length) {
+                    rec = new long[Integer.highestOneBit(length) << 1];
+                }
+                int first = Math.min(length, ring.length - start);
+                System.arraycopy(ring, start, rec, 0, first);
+                System.arraycopy(ring, 0, rec, first, length - first);
+                t += length;
+                if (failure == null) {
+                    try {
+                        target.write(rec, 0);
+                    } catch (Throwable e) {
+                        failure = e;
+                    }
+                }
+            }
+            tail.lazySet(t);
+        }
+    }
+
+    /**
+     * Flushes the target output if a flush was requested and every record
+     * written before the request has been taken out. The request is read
+     * after head, so its position may be ahead of t; it is then served on a
+     * later pass, once the writer has caught up.
+     */
+    private void flushUpTo(long t) {
+        long request = flushRequests;
+        if (request > flushesDone && flushTo <= t) {
+            if (failure == null) {
+                try {
+                    target.flush();
+                } catch (Throwable e) {
+                    failure = e;
+                }
+            }
+            flushesDone = request;
+        }
+    }
+}
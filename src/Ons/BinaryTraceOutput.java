@@ -0,0 +1,243 @@
+package Ons;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes trace records in the compact binary trace format, which is read
+ * back by the Ons.TraceReader.
+ *
+ * The file starts with the magic bytes "ONST", a version byte and a flags
+ * byte (bit 0 set if the records are deflate-compressed, bit 1 set if the
+ * file is segmented, bit 2 set if times are stored in ticks, in which case
+ * the length of a tick follows as an 8-byte double). Each record is then a
+ * varint holding the number of payload words times 16 plus the kind, and the
+ * payload words delta coded by a Ons.TraceCodec. Runs of zero words are
+ * common (a decision repeats the flow of the arrival before it), so the
+ * payload is a sequence of tokens: bit 0 of a token is 1 for a run of zeros
+ * and 0 for a single nonzero word, and the run length minus one or the word
+ * follow, 6 bits in the rest of the first byte (bit 7 set if more bytes
+ * follow) and the higher bits as a varint.
+ *
+ * A segmented file is a sequence of blocks, each holding a fixed number of
+ * records: a 4-byte length followed by the records, compressed on their own
+ * if the file is compressed. The delta coding restarts at every block, so
+ * any block can be decoded without the ones before it. For every block an
+ * entry is appended to the sidecar index file (see Ons.TraceIndex), which
+ * lets readers jump straight to a time range or to the records of a flow.
+ *
+ * @author onsteam
+ */
+class BinaryTraceOutput implements TraceOutput {
+
+    static final byte[] MAGIC = {'O', 'N', 'S', 'T'};
+    static final int VERSION = 2;
+    static final int COMPRESSED = 1;
+    static final int SEGMENTED = 2;
+    static final int QUANTIZED = 4;
+
+    private final OutputStream out;
+    private final TraceCodec codec;
+    private long[] words;
+    private byte[] buffer;
+    private int position;
+    // segmented files only
+    private final int segmentRecords;
+    private final Deflater deflater;
+    private final DataOutputStream index;
+    private byte[] compressed;
+    private long offset; // file offset of the next block
+    private long records;
+    private double firstTime, lastTime;
+    private long minFlow, maxFlow;
+
+    /**
+     * Creates a new Ons.BinaryTraceOutput object.
+     *
+     * @param filename name of the trace file
+     * @param compress true to deflate the records
+     * @param segmentRecords number of records per segment, or 0 for a
+     * file without segments
+     * @param resolution the length of a time tick, or 0 to keep times exact
+     * @throws IOException if the file cannot be created
+     */
+    BinaryTraceOutput(String filename, boolean compress, int segmentRecords, double resolution) throws IOException {
+        if (segmentRecords < 0) {
+            throw (new IllegalArgumentException());
+        }
+        codec = new TraceCodec(resolution);
+        FileOutputStream file = new FileOutputStream(filename);
+        DataOutputStream header = new DataOutputStream(file);
+        header.write(MAGIC);
+        header.write(VERSION);
+        header.write((compress ? COMPRESSED : 0) | (segmentRecords > 0 ? SEGMENTED : 0) | (resolution > 0 ? QUANTIZED : 0));
+        if (resolution > 0) {
+            header.writeDouble(resolution);
+        }
+        this.segmentRecords = segmentRecords;
+        if (segmentRecords > 0) {
+            out = new BufferedOutputStream(file, 1 << 16);
+            deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+            compressed = new byte[1 << 16];
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(TraceIndex.getIndexFile(filename))));
+            TraceIndex.writeHeader(index);
+            offset = header.size();
+        } else {
+            if (compress) {
+                out = new DeflaterOutputStream(file, new Deflater(Deflater.BEST_SPEED), 1 << 16, true);
+            } else {
+                out = file;
+            }
+            deflater = null;
+            index = null;
+        }
+        words = new long[64];
+        buffer = new byte[1 << 16];
+        position = 0;
+        startSegment(0);
+    }
+
+    @Override
+    public void write(long[] rec, int off) throws IOException {
+        int kind = TraceRecord.kind(rec[off]);
+        int n = TraceRecord.length(rec[off]) - 1;
+        // a varint takes at most 10 bytes, a token 11
+        int maxSize = 10 + 11 * n;
+        if (position + maxSize > buffer.length) {
+            if (segmentRecords > 0) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + maxSize));
+            } else {
+                drain();
+                if (maxSize > buffer.length) {
+                    throw (new IllegalArgumentException("Trace record too large"));
+                }
+            }
+        }
+        if (n > words.length) {
+            words = new long[Integer.highestOneBit(n) << 1];
+        }
+        codec.encode(rec, off, words);
+        putVarint(((long) n << 4) | kind);
+        for (int i = 0; i < n; i++) {
+            if (words[i] != 0) {
+                putToken(words[i], 0);
+            } else {
+                int run = 1;
+                while (i + run < n && words[i + run] == 0) {
+                    run++;
+                }
+                putToken(run - 1, 1);
+                i += run - 1;
+            }
+        }
+        if (segmentRecords > 0) {
+            if (kind == TraceRecord.ARRIVAL || kind == TraceRecord.DEPARTURE) {
+                lastTime = Double.longBitsToDouble(rec[off + 1]);
+            }
+            long flow = TraceRecord.getFlowID(rec, off);
+            if (flow >= 0) {
+                minFlow = Math.min(minFlow, flow);
+                maxFlow = Math.max(maxFlow, flow);
+            }
+            if (++records == segmentRecords) {
+                endSegment();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (segmentRecords > 0) {
+            endSegment();
+            index.flush();
+        } else {
+            drain();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segmentRecords > 0) {
+            endSegment();
+            index.close();
+            if (deflater != null) {
+                deflater.end();
+            }
+        } else {
+            drain();
+        }
+        out.close();
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void putToken(long value, int zeros) {
+        if ((value & ~0x3FL) == 0) {
+            buffer[position++] = (byte) ((value << 1) | zeros);
+        } else {
+            buffer[position++] = (byte) (((value & 0x3F) << 1) | zeros | 0x80);
+            putVarint(value >>> 6);
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void startSegment(double time) {
+        records = 0;
+        firstTime = time;
+        lastTime = time;
+        minFlow = Long.MAX_VALUE;
+        maxFlow = -1;
+        codec.reset();
+    }
+
+    /**
+     * Writes the records of the current segment as a block and indexes it.
+     * Does nothing if the segment is empty.
+     */
+    private void endSegment() throws IOException {
+        if (records == 0) {
+            return;
+        }
+        byte[] data = buffer;
+        int length = position;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(buffer, 0, position);
+            deflater.finish();
+            length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            data = compressed;
+        }
+        out.write(length >>> 24);
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(data, 0, length);
+        TraceIndex.writeEntry(index, offset, firstTime, lastTime, minFlow, maxFlow, records);
+        offset += 4 + length;
+        position = 0;
+        startSegment(lastTime);
+    }
+}
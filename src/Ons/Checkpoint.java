@@ -0,0 +1,221 @@
+package Ons;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Snapshot of a running simulation, so that it can be resumed or forked
+ * without going through the warm-up again. It is configured by the
+ * checkpoint tag of the simulation file:
+ *
+ * save="file" writes a checkpoint once the simulation has processed "at"
+ * arrivals (statisticStart by default), and then goes on;
+ * restore="file" starts the simulation from a checkpoint instead of from an
+ * empty network.
+ *
+ * A checkpoint holds the occupancy of the physical topology (free ports and
+ * wavelength converters of every Ons.OXC, wavelengths or slots of every
+ * Ons.Link), the lightpaths of the Ons.VirtualTopology, the active flows of
+ * the Ons.ControlPlane, the pending events and the Ons.MyStatistics counters.
+ * The Ons.RA module is not saved: it is created anew, so a checkpoint can be
+ * restored under several RA modules to compare them from the same warmed
+ * network. The topology and classes of service must be those of the
+ * simulation that wrote the checkpoint.
+ *
+ * The checkpoint also records how many calls the Ons.TrafficGenerator had
+ * generated and the time of the last one. When the restoring simulation asks
+ * for more calls, the extra calls are generated after that time, from the
+ * same random streams, so a run of N calls restored and continued to M calls
+ * sees exactly the same traffic as a run of M calls from the start.
+ *
+ * A checkpoint may also be kept in memory instead of in a file. Main does so
+ * to continue a load sweep: each load starts from the network left by the
+ * previous one at its last arrival, with new statistics (see
+ * restoreNetwork).
+ *
+ * The file is the magic bytes "ONSC", a version byte and the state, deflate
+ * compressed.
+ *
+ * @author onsteam
+ */
+public class Checkpoint {
+
+    private static final byte[] MAGIC = {'O', 'N', 'S', 'C'};
+    private static final int VERSION = 2;
+
+    private final String filename; // null if the checkpoint is kept in memory
+    private final long arrivals;
+    private final long calls;
+    private final double lastArrival;
+    private byte[] state;
+
+    /**
+     * Creates a new Ons.Checkpoint object.
+     *
+     * @param filename name of the checkpoint file, or null to keep the
+     * checkpoint in memory
+     * @param arrivals number of arrivals the Ons.SimulationRunner processes
+     * before writing the checkpoint
+     * @param calls number of calls generated so far, which is the id of the
+     * last call
+     * @param lastArrival time of the last generated arrival
+     */
+    public Checkpoint(String filename, long arrivals, long calls, double lastArrival) {
+        this.filename = filename;
+        this.arrivals = arrivals;
+        this.calls = calls;
+        this.lastArrival = lastArrival;
+    }
+
+    /**
+     * Retrieves the number of arrivals after which the checkpoint is written.
+     *
+     * @return the number of arrivals
+     */
+    public long getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * Retrieves the number of calls generated by the simulation that wrote
+     * the checkpoint, which is also the id of its last call.
+     *
+     * @return the number of calls
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Retrieves the time of the last arrival generated by the simulation
+     * that wrote the checkpoint.
+     *
+     * @return the arrival time
+     */
+    public double getLastArrival() {
+        return lastArrival;
+    }
+
+    /**
+     * Writes the state of a simulation to the checkpoint.
+     *
+     * @param cp the simulation's control plane
+     * @param events the simulation's event scheduler
+     * @throws IOException if the file cannot be written
+     */
+    public void save(ControlPlane cp, EventScheduler events) throws IOException {
+        ByteArrayOutputStream memory = null;
+        OutputStream target;
+        if (filename == null) {
+            target = memory = new ByteArrayOutputStream(1 << 20);
+        } else {
+            target = new FileOutputStream(filename);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(target, new Deflater(Deflater.BEST_SPEED)), 1 << 16))) {
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.writeByte(cp.getPT() instanceof EONPhysicalTopology ? 1 : 0);
+            out.writeLong(calls);
+            out.writeDouble(lastArrival);
+            cp.getPT().writeState(out);
+            cp.getVT().writeState(out);
+            cp.writeState(out);
+            events.writeState(out);
+            out.writeDouble(Main.sumAcceptedSNR);
+            out.writeDouble(Main.sumBlockedSNR);
+            MyStatistics.getMyStatisticsObject().writeState(out);
+        }
+        if (memory != null) {
+            state = memory.toByteArray();
+        }
+    }
+
+    /**
+     * Restores the state of a simulation from a checkpoint file. The
+     * simulation must have been set up from the same topology, with no
+     * traffic yet.
+     *
+     * @param filename name of the checkpoint file
+     * @param cp the simulation's control plane
+     * @param events the simulation's event scheduler
+     * @return the checkpoint, which tells how many calls were generated
+     * @throws IOException if the file cannot be read or does not match the
+     * simulation
+     */
+    public static Checkpoint restore(String filename, ControlPlane cp, EventScheduler events) throws IOException {
+        return read(new FileInputStream(filename), filename, cp, events, true);
+    }
+
+    /**
+     * Restores the network of a simulation from the checkpoint: the
+     * occupancy of the physical topology, the lightpaths, the active flows
+     * and the pending events. The statistics are not restored, so they start
+     * from zero.
+     *
+     * @param cp the simulation's control plane
+     * @param events the simulation's event scheduler
+     * @throws IOException if the checkpoint cannot be read or does not match
+     * the simulation
+     */
+    public void restoreNetwork(ControlPlane cp, EventScheduler events) throws IOException {
+        if (filename == null && state == null) {
+            throw (new IllegalStateException("Checkpoint has not been saved"));
+        }
+        InputStream source = filename == null ? new ByteArrayInputStream(state) : new FileInputStream(filename);
+        read(source, filename == null ? "checkpoint" : filename, cp, events, false);
+    }
+
+    private static Checkpoint read(InputStream source, String name, ControlPlane cp, EventScheduler events, boolean statistics) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(source), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw (new IOException(name + " is not a checkpoint file"));
+            }
+            if (in.read() != VERSION) {
+                throw (new IOException(name + " has an unsupported checkpoint version"));
+            }
+            if (in.readByte() != (cp.getPT() instanceof EONPhysicalTopology ? 1 : 0)) {
+                throw (new IOException(name + " was written by another type of simulation"));
+            }
+            Checkpoint checkpoint = new Checkpoint(name, 0, in.readLong(), in.readDouble());
+            cp.getPT().readState(in);
+            cp.getVT().readState(in);
+            cp.readState(in);
+            events.readState(in);
+            if (statistics) {
+                Main.sumAcceptedSNR = in.readDouble();
+                Main.sumBlockedSNR = in.readDouble();
+                MyStatistics.getMyStatisticsObject().readState(in);
+            }
+            return checkpoint;
+        }
+    }
+
+    static void writeFlow(DataOutputStream out, Flow flow) throws IOException {
+        out.writeLong(flow.getID());
+        out.writeInt(flow.getSource());
+        out.writeInt(flow.getDestination());
+        out.writeInt(flow.getRate());
+        out.writeInt(flow.getDuration());
+        out.writeInt(flow.getCOS());
+    }
+
+    static Flow readFlow(DataInputStream in) throws IOException {
+        return new Flow(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
@@ -0,0 +1,113 @@
+package Ons;
+
+import Ons.Util.BatchMeans;
+
+/**
+ * Runs several copies of the network side by side, each with its own
+ * Ons.RA module, on the same traffic: every event is handed to all of them
+ * in turn, so they see the same arrivals at the same times (common random
+ * numbers). It is configured by the compare tag of the simulation file:
+ *
+ * modules="KSPRandomFit,KSPBestModulation" are the RA modules compared to
+ * the one of the ra tag;
+ * batch="N" is the number of arrivals per batch (1000 by default).
+ *
+ * The blocking probability of each copy is estimated by batch means, and so
+ * is its difference to the first copy, batch by batch. As the copies see the
+ * same traffic, their blockings are correlated, and the confidence interval
+ * of the paired difference is narrower than the one of two independent
+ * simulations.
+ *
+ * Each copy has its own topologies, control plane and Ons.MyStatistics. The
+ * SNR sums of Ons.Main are shared.
+ *
+ * @author onsteam
+ */
+public class ComparisonRunner {
+
+    private final BatchMeans[] blocking;
+    private final BatchMeans[] differences;
+
+    /**
+     * Creates a new Ons.ComparisonRunner object, and runs the simulation.
+     *
+     * @param cps the control planes of the copies
+     * @param stats the statistics of the copies
+     * @param events the event scheduler, with the traffic of all copies
+     * @param batch the number of arrivals per batch
+     */
+    public ComparisonRunner(ControlPlane[] cps, MyStatistics[] stats, EventScheduler events, int batch) {
+        if (cps.length != stats.length || batch < 1) {
+            throw (new IllegalArgumentException());
+        }
+        int copies = cps.length;
+        blocking = new BatchMeans[copies];
+        differences = new BatchMeans[copies];
+        for (int i = 0; i < copies; i++) {
+            blocking[i] = new BatchMeans();
+            differences[i] = new BatchMeans();
+        }
+        int[] lastBlocked = new int[copies];
+        int lastArrivals = 0;
+        Event[] copy = new Event[copies];
+        Event event;
+        Tracer tr = Tracer.getTracerObject();
+        while ((event = events.popEvent()) != null) {
+            // each copy gets its own flow, which its RA module may change
+            copy[0] = event;
+            for (int i = 1; i < copies; i++) {
+                if (event instanceof FlowArrivalEvent) {
+                    Flow flow = ((FlowArrivalEvent) event).getFlow();
+                    copy[i] = new FlowArrivalEvent(new Flow(flow.getID(), flow.getSource(), flow.getDestination(), flow.getRate(), flow.getDuration(), flow.getCOS()));
+                } else {
+                    copy[i] = new FlowDepartureEvent(((FlowDepartureEvent) event).getID());
+                }
+                copy[i].setTime(event.getTime());
+            }
+            for (int i = 0; i < copies; i++) {
+                SimulationRunner.handle(cps[i], copy[i], tr, stats[i]);
+                if (event instanceof FlowArrivalEvent) {
+                    stats[i].arrivalHandled();
+                }
+            }
+            int arrivals = stats[0].getArrivals();
+            if (arrivals - lastArrivals == batch) {
+                double first = 0;
+                for (int i = 0; i < copies; i++) {
+                    double bp = (double) (stats[i].getBlocked() - lastBlocked[i]) / batch;
+                    lastBlocked[i] = stats[i].getBlocked();
+                    if (i == 0) {
+                        first = bp;
+                    }
+                    blocking[i].add(bp);
+                    differences[i].add(bp - first);
+                }
+                lastArrivals = arrivals;
+            }
+        }
+        for (ControlPlane cp : cps) {
+            cp.flush();
+        }
+    }
+
+    /**
+     * Retrieves the batch means of the blocking probability of a copy.
+     *
+     * @param copy the index of the copy
+     * @return the batch means
+     */
+    public BatchMeans getBlocking(int copy) {
+        return blocking[copy];
+    }
+
+    /**
+     * Retrieves the batch means of the difference between the blocking
+     * probability of a copy and the one of the first copy.
+     *
+     * @param copy the index of the copy
+     * @return the batch means
+     */
+    public BatchMeans getDifference(int copy) {
+        return differences[copy];
+    }
+}
@@ -4,6 +4,9 @@ package Ons;/*
  */
 
 import Ons.RA.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -19,10 +22,12 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     private RA ra;
     private PhysicalTopology pt;
     private VirtualTopology vt;
-    private Map<Flow, Path> mappedFlows; // Flows that have been accepted into the network
-    private Map<Long, Flow> activeFlows; // Flows that have been accepted or that are waiting for a Ons.RA decision
+    private FlowTable activeFlows; // Flows that have been accepted or that are waiting for a Ons.RA decision, with their lightpaths once accepted
     private Tracer tr = Tracer.getTracerObject();
     private MyStatistics st = MyStatistics.getMyStatisticsObject();
+    private double batchWindow; // 0 if arrivals are decided one at a time
+    private ArrayList<Flow> batch = new ArrayList<>(); // arrived, waiting for the end of the window
+    private double batchEnd;
 
     /**
      * Creates a new Ons.ControlPlane object.
@@ -34,8 +39,7 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     public ControlPlane(String raModule, PhysicalTopology pt, VirtualTopology vt) {
         Class RAClass;
 
-        mappedFlows = new HashMap<Flow, Path>();
-        activeFlows = new HashMap<Long, Flow>();
+        activeFlows = new FlowTable();
 
         this.pt = pt;
         this.vt = vt;
@@ -59,15 +63,114 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
      */
     public void newEvent(Event event) {
 
+        if (!batch.isEmpty() && (event.getTime() > batchEnd
+                || (event instanceof FlowDepartureEvent && isBatched(((FlowDepartureEvent) event).getID())))) {
+            flush();
+        }
         if (event instanceof FlowArrivalEvent) {
             newFlow(((FlowArrivalEvent) event).getFlow());
-            ra.flowArrival(((FlowArrivalEvent) event).getFlow());
+            if (batchWindow > 0) {
+                if (batch.isEmpty()) {
+                    batchEnd = event.getTime() + batchWindow;
+                }
+                batch.add(((FlowArrivalEvent) event).getFlow());
+            } else {
+                ra.flowArrival(((FlowArrivalEvent) event).getFlow());
+            }
         } else if (event instanceof FlowDepartureEvent) {
             ra.flowDeparture(((FlowDepartureEvent) event).getID());
             removeFlow(((FlowDepartureEvent) event).getID());
         }
     }
 
+    /**
+     * Says whether the Ons.RA module can take its decisions ahead of time,
+     * as an Ons.RA.SpeculativeRA.
+     *
+     * @return true if plan can be called
+     */
+    public boolean isSpeculative() {
+        return ra instanceof SpeculativeRA;
+    }
+
+    /**
+     * Takes the decision on an arriving flow ahead of time, without
+     * changing the network. Several flows may be planned concurrently, as
+     * long as nothing changes the network meanwhile.
+     *
+     * @param flow the arriving flow
+     * @return the decision
+     */
+    public Plan plan(Flow flow) {
+        return ((SpeculativeRA) ra).plan(flow);
+    }
+
+    /**
+     * Deals with an Ons.Event like newEvent, but carries out the decision
+     * planned for an arrival if it still holds (SpeculativeRA.holds);
+     * otherwise the flow is decided again by the Ons.RA
+     * module (SpeculativeRA.retry).
+     *
+     * @param event the Ons.Event object taken from the queue
+     * @param plan the decision planned for the arrival, or null
+     * @return true if the planned decision was carried out
+     */
+    public boolean newEvent(Event event, Plan plan) {
+        if (plan == null || batchWindow > 0 || !(event instanceof FlowArrivalEvent)) {
+            newEvent(event);
+            return false;
+        }
+        Flow flow = ((FlowArrivalEvent) event).getFlow();
+        newFlow(flow);
+        if (((SpeculativeRA) ra).holds(flow, plan)) {
+            ((SpeculativeRA) ra).commit(flow, plan);
+            return true;
+        }
+        ((SpeculativeRA) ra).retry(flow, plan);
+        return false;
+    }
+
+    /**
+     * Collects the arrivals within a window of time, from the first one,
+     * and hands them to the Ons.RA module together (RA.flowArrivals) at the
+     * end of the window: when an event after it comes, or the departure of
+     * one of them, or the end of the simulation (flush). Departures of
+     * other flows within the window are handled at once, so the batch is
+     * decided on the resources they free.
+     *
+     * @param window the length of the window, in seconds; 0 to decide each
+     * arrival at once
+     */
+    public void setBatchWindow(double window) {
+        if (window < 0) {
+            throw (new IllegalArgumentException());
+        }
+        flush();
+        batchWindow = window;
+    }
+
+    /**
+     * Hands the arrivals collected in the batching window, if any, to the
+     * Ons.RA module.
+     */
+    public void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Flow[] flows = batch.toArray(new Flow[0]);
+        batch.clear();
+        ra.flowArrivals(flows);
+    }
+
+    private boolean isBatched(long id) {
+        for (Flow flow : batch) {
+            if (flow.getID() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Adds a given active Ons.Flow object to a determined Physical Topology.
      * 
@@ -78,14 +181,15 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public boolean acceptFlow(long id, LightPath[] lightpaths) {
         Flow flow;
+        int slot;
 
         if (id < 0 || lightpaths.length < 1) {
             throw (new IllegalArgumentException());
         } else {
-            if (!activeFlows.containsKey(id)) {
+            if ((slot = activeFlows.find(id)) < 0) {
                 return false;
             }
-            flow = activeFlows.get(id);
+            flow = activeFlows.getFlow(slot);
             if (!canAddFlowToPT(flow, lightpaths)) {
                 return false;
             }
@@ -99,7 +203,7 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
                 }
             }
             addFlowToPT(flow, lightpaths);
-            mappedFlows.put(flow, new Path(lightpaths));
+            activeFlows.setLightpaths(slot, lightpaths);
             tr.acceptFlow(flow, lightpaths);
             st.userTransponder(usedTransponders);
             st.acceptFlow(flow, lightpaths);
@@ -117,14 +221,15 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public boolean MyacceptFlow(long id, LightPath[] lightpaths){
         Flow flow;
+        int slot;
 
         if (id < 0 || lightpaths.length < 1) {
             throw (new IllegalArgumentException());
         } else {
-            if (!activeFlows.containsKey(id)) {
+            if ((slot = activeFlows.find(id)) < 0) {
                 return false;
             }
-            flow = activeFlows.get(id);
+            flow = activeFlows.getFlow(slot);
             if (!canAddFlowToPT(flow, lightpaths)) {
                 return false;
             }
@@ -144,18 +249,19 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public boolean blockFlow(long id) {
         Flow flow;
+        int slot;
 
         if (id < 0) {
             throw (new IllegalArgumentException());
         } else {
-            if (!activeFlows.containsKey(id)) {
+            if ((slot = activeFlows.find(id)) < 0) {
                 return false;
             }
-            flow = activeFlows.get(id);
-            if (mappedFlows.containsKey(flow)) {
+            flow = activeFlows.getFlow(slot);
+            if (activeFlows.getLightpaths(slot) != null) {
                 return false;
             }
-            activeFlows.remove(id);
+            activeFlows.remove(slot);
             tr.blockFlow(flow);
             st.blockFlow(flow);
             return true;
@@ -171,18 +277,19 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public boolean SNRblockFlow(long id) {     //(New)
         Flow flow;
+        int slot;
 
         if (id < 0) {
             throw (new IllegalArgumentException());
         } else {
-            if (!activeFlows.containsKey(id)) {
+            if ((slot = activeFlows.find(id)) < 0) {
                 return false;
             }
-            flow = activeFlows.get(id);
-            if (mappedFlows.containsKey(flow)) {
+            flow = activeFlows.getFlow(slot);
+            if (activeFlows.getLightpaths(slot) != null) {
                 return false;
             }
-            activeFlows.remove(id);
+            activeFlows.remove(slot);
             tr.blockFlow(flow);
             st.SNRblockFlow(flow);
             return true;
@@ -200,42 +307,42 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public boolean rerouteFlow(long id, LightPath[] lightpaths) {
         Flow flow;
-        Path oldPath;
+        LightPath[] oldLightpaths;
+        int slot;
 
         if (id < 0 || lightpaths.length < 1) {
             throw (new IllegalArgumentException());
         } else {
-            if (!activeFlows.containsKey(id)) {
+            if ((slot = activeFlows.find(id)) < 0) {
                 return false;
             }
-            flow = activeFlows.get(id);
-            if (!mappedFlows.containsKey(flow)) {
+            flow = activeFlows.getFlow(slot);
+            if ((oldLightpaths = activeFlows.getLightpaths(slot)) == null) {
                 return false;
             }
-            oldPath = mappedFlows.get(flow);
             removeFlowFromPT(flow, lightpaths);
             if (!canAddFlowToPT(flow, lightpaths)) {
-                addFlowToPT(flow, oldPath.getLightpaths());
+                addFlowToPT(flow, oldLightpaths);
                 return false;
             }
             if(!checkLightpathContinuity(flow, lightpaths)){
                 return false;
             }
             addFlowToPT(flow, lightpaths);
-            mappedFlows.put(flow, new Path(lightpaths));
+            activeFlows.setLightpaths(slot, lightpaths);
             //tr.flowRequest(id, true);
             return true;
         }
     }
     
     /**
-     * Adds a given Ons.Flow object to the HashMap of active flows.
-     * The HashMap also stores the object's unique identifier (ID). 
+     * Adds a given Ons.Flow object to the table of active flows.
+     * The table is keyed by the object's unique identifier (ID). 
      * 
      * @param flow Ons.Flow object to be added
      */
     private void newFlow(Flow flow) {
-        activeFlows.put(flow.getID(), flow);
+        activeFlows.add(flow);
     }
     
     /**
@@ -244,17 +351,14 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
      * @param id the unique identifier of the Ons.Flow to be removed
      */
     private void removeFlow(long id) {
-        Flow flow;
         LightPath[] lightpaths;
+        int slot;
 
-        if (activeFlows.containsKey(id)) {
-            flow = activeFlows.get(id);
-            if (mappedFlows.containsKey(flow)) {
-                lightpaths = mappedFlows.get(flow).getLightpaths();
-                removeFlowFromPT(flow, lightpaths);
-                mappedFlows.remove(flow);
+        if ((slot = activeFlows.find(id)) >= 0) {
+            if ((lightpaths = activeFlows.getLightpaths(slot)) != null) {
+                removeFlowFromPT(activeFlows.getFlow(slot), lightpaths);
             }
-            activeFlows.remove(id);
+            activeFlows.remove(slot);
         }
     }
     
@@ -327,25 +431,36 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     
     /**
      * Retrieves a Ons.Path object, based on a given Ons.Flow object.
-     * That's possible thanks to the HashMap mappedFlows, which
-     * maps a Ons.Flow to a Ons.Path.
+     * That's possible thanks to the table of active flows, which
+     * keeps the lightpaths of each accepted Ons.Flow.
      * 
      * @param flow Ons.Flow object that will be used to find the Ons.Path object
-     * @return Ons.Path object mapped to the given flow
+     * @return Ons.Path object mapped to the given flow, or null if the flow was not accepted
      */
     @Override
     public Path getPath(Flow flow) {
-        return mappedFlows.get(flow);
+        int slot = activeFlows.find(flow.getID());
+        if (slot < 0 || activeFlows.getFlow(slot) != flow || activeFlows.getLightpaths(slot) == null) {
+            return null;
+        }
+        return new Path(activeFlows.getLightpaths(slot));
     }
     
     /**
-     * Retrieves the complete set of Ons.Flow/Ons.Path pairs listed on the
-     * mappedFlows HashMap.
+     * Retrieves the complete set of Ons.Flow/Ons.Path pairs of the flows
+     * that have been accepted into the network. The map is a snapshot built
+     * from the table of active flows on each call.
      * 
-     * @return the mappedFlows HashMap
+     * @return a HashMap with the accepted flows and their paths
      */
     @Override
     public Map<Flow, Path> getMappedFlows() {
+        Map<Flow, Path> mappedFlows = new HashMap<>();
+        for (int slot = 0; slot < activeFlows.capacity(); slot++) {
+            if (activeFlows.getLightpaths(slot) != null) {
+                mappedFlows.put(activeFlows.getFlow(slot), new Path(activeFlows.getLightpaths(slot)));
+            }
+        }
         return mappedFlows;
     }
     
@@ -357,7 +472,8 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
      */
     @Override
     public Flow getFlow(long id) {
-        return activeFlows.get(id);
+        int slot = activeFlows.find(id);
+        return slot < 0 ? null : activeFlows.getFlow(slot);
     }
     
     /**
@@ -370,12 +486,11 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
     @Override
     public int getLightpathFlowCount(long id) {
         int num = 0;
-        Path p;
         LightPath[] lps;
-        ArrayList<Path> ps = new ArrayList<>(mappedFlows.values());
-        for (Path p1 : ps) {
-            p = p1;
-            lps = p.getLightpaths();
+        for (int slot = 0; slot < activeFlows.capacity(); slot++) {
+            if ((lps = activeFlows.getLightpaths(slot)) == null) {
+                continue;
+            }
             for (LightPath lp : lps) {
                 if (lp.getID() == id) {
                     num++;
@@ -386,6 +501,59 @@ public class ControlPlane implements ControlPlaneForRA { // Ons.RA is Routing As
         return num;
     }
     
+    /**
+     * Writes the active flows to a checkpoint, each with the ids of the
+     * lightpaths it was accepted into.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        LightPath[] lps;
+        out.writeInt(activeFlows.size());
+        for (int slot = 0; slot < activeFlows.capacity(); slot++) {
+            if (activeFlows.getFlow(slot) == null) {
+                continue;
+            }
+            Checkpoint.writeFlow(out, activeFlows.getFlow(slot));
+            if ((lps = activeFlows.getLightpaths(slot)) == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(lps.length);
+                for (LightPath lp : lps) {
+                    out.writeLong(lp.getID());
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the active flows by the ones of a checkpoint. The virtual
+     * topology must have been restored first, as the flows refer to its
+     * lightpaths.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read
+     */
+    void readState(DataInputStream in) throws IOException {
+        activeFlows = new FlowTable();
+        int count = in.readInt();
+        for (int k = 0; k < count; k++) {
+            int slot = activeFlows.add(Checkpoint.readFlow(in));
+            int n = in.readInt();
+            if (n >= 0) {
+                LightPath[] lps = new LightPath[n];
+                for (int i = 0; i < n; i++) {
+                    long id = in.readLong();
+                    if ((lps[i] = vt.getLightpath(id)) == null) {
+                        throw (new IOException("Checkpoint refers to unknown lightpath " + id));
+                    }
+                }
+                activeFlows.setLightpaths(slot, lps);
+            }
+        }
+    }
+
     /**
      * Retrieves the Ons.PhysicalTopology object
      * @return Ons.PhysicalTopology object
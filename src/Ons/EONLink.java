@@ -2,6 +2,10 @@ package Ons;
 
 import Ons.Util.MathFunctions;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import java.util.TreeSet;
 import java.util.function.DoubleToIntFunction;
 
@@ -532,4 +536,22 @@ public class EONLink extends Link {
         return contPossibles;
     }
 
+    @Override
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(slots.length);
+        for (long slot : slots) {
+            out.writeLong(slot);
+        }
+    }
+
+    @Override
+    void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != slots.length) {
+            throw (new IOException("Checkpoint does not match link " + id));
+        }
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = in.readLong();
+        }
+    }
+
 }
@@ -80,6 +80,7 @@ public class EONPhysicalTopology extends PhysicalTopology {
                 }
                 nodeVector[id] = new EONOXC(id, groomingInPorts, groomingOutPorts, capacity, modulations);
             }
+            registerNodes();
 
             int src, dst, slots = 0, guardband = 0;
             EONPhysicalTopology.slotSize = 0;
@@ -107,7 +108,6 @@ public class EONPhysicalTopology extends PhysicalTopology {
                 System.out.println(Integer.toString(links) + " links");
             }
             linkVector = new EONLink[links];
-            adjMatrix = new EONLink[nodes][nodes];
             for (int i = 0; i < links; i++) {
                 id = Integer.parseInt(((Element) linklist.item(i)).getAttribute("id"));
                 src = Integer.parseInt(((Element) linklist.item(i)).getAttribute("source"));
@@ -126,8 +126,9 @@ public class EONPhysicalTopology extends PhysicalTopology {
                     EONPhysicalTopology.slotSize = Integer.parseInt(((Element) linksEntities.item(0)).getAttribute("slot-size"));
                 }
                 weight = Double.parseDouble(((Element) linklist.item(i)).getAttribute("weight"));
-                linkVector[id] = adjMatrix[src][dst] = new EONLink(id, src, dst, delay, weight, slots, guardband);
+                linkVector[id] = new EONLink(id, src, dst, delay, weight, slots, guardband);
             }
+            buildAdjacency();
         } catch (Throwable t) {
             t.printStackTrace();
         }
@@ -257,14 +258,10 @@ public class EONPhysicalTopology extends PhysicalTopology {
     public WeightedGraph getWeightedGraph(int slots) {
         EONLink link;
         WeightedGraph g = new WeightedGraph(nodes);
-        for (int i = 0; i < nodes; i++) {
-            for (int j = 0; j < nodes; j++) {
-                if (hasLink(i, j)) {
-                    link = (EONLink) getLink(i, j);
-                    if (link.maxSizeAvaiable() >= slots) {
-                        g.addEdge(i, j, link.getWeight());
-                    }
-                }
+        for (int k = 0; k < adjLinks.length; k++) {
+            link = (EONLink) linkVector[adjLinks[k]];
+            if (link.maxSizeAvaiable() >= slots) {
+                g.addEdge(link.getSource(), link.getDestination(), link.getWeight());
             }
         }
         return g;
@@ -302,4 +299,14 @@ public class EONPhysicalTopology extends PhysicalTopology {
         }
         return slots;
     }
+
+    @Override
+    public double getOccupancy() {
+        int slots = 0, total = 0;
+        for (int i = 0; i < links; i++) {
+            slots += ((EONLink) this.getLink(i)).getAvaiableSlots();
+            total += ((EONLink) this.getLink(i)).getNumSlots();
+        }
+        return 1.0 - (double) slots / (double) total;
+    }
 }
@@ -0,0 +1,326 @@
+package Ons;
+
+import Ons.Util.YenKSP;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Analytical estimate of the blocking probability, by the reduced load
+ * (Erlang fixed-point) approximation, to screen a range of loads in
+ * seconds before simulating it. Links are assumed to block independently:
+ * each link sees the traffic of the routes through it, thinned by the
+ * blocking of the other links of the route, and blocks it as a multirate
+ * loss system (Kaufman-Roberts recursion). The link blocking probabilities
+ * are iterated to a fixed point.
+ *
+ * Calls go from every node to every other node with the same probability,
+ * or between the pairs of the traffic matrix, in the types of the traffic
+ * tag. Each pair is routed on its k shortest
+ * paths, tried in order: the traffic blocked on a path overflows to the
+ * next one. It is configured by the optional analytical tag of the
+ * simulation file:
+ *
+ * routes="k" is the number of paths per pair (1 by default);
+ * modulation="QPSK" sets the modulation of EON lightpaths, which is
+ * otherwise the best one for the length of each path.
+ *
+ * Besides the links of its path, a call uses a grooming input port of its
+ * source node and a grooming output port of its destination node, which
+ * are loss systems of their own. In EON, a call uses the slots given by
+ * Ons.Modulation.convertRateToSlot plus the guardband, out of the slots of
+ * each link, and a port of its own. In WDM, a call uses its rate out of the
+ * bandwidth of all the wavelengths of each link, and of all the ports of
+ * each node, as if traffic were perfectly groomed. Wavelength or spectrum
+ * continuity and fragmentation are ignored, so the estimate is optimistic
+ * at high loads.
+ *
+ * @author onsteam
+ */
+public class ErlangFixedPoint {
+
+    private static final double TOLERANCE = 1e-9;
+    private static final int MAX_ITERATIONS = 1000;
+
+    private final PhysicalTopology pt;
+    private final TrafficGenerator traffic;
+    private final TrafficInfo[] types;
+    private final int totalWeight;
+    private final int numClasses;
+    private final int numLinks;
+    private final int[] capacity; // units of each link, then of the input and output ports of each node
+    private final int maxUnits;
+    private final int[][][] routes; // links of each path and its two ports, by pair
+    private final int[][][] units; // units of each type on the links of each path, by pair; -1 if the path can not be used
+    private final int[] portUnits; // units of each type on a port
+
+    /**
+     * Creates a new Ons.ErlangFixedPoint object, and finds the paths of all
+     * pairs of nodes.
+     *
+     * @param pt the network's Physical Topology
+     * @param traffic the traffic generator, for its types of calls
+     * @param numClasses number of classes of service
+     * @param k number of paths per pair
+     * @param modulation the modulation of EON lightpaths, or -1 for the best
+     * one for the length of each path
+     */
+    public ErlangFixedPoint(PhysicalTopology pt, TrafficGenerator traffic, int numClasses, int k, int modulation) {
+        if (k < 1) {
+            throw (new IllegalArgumentException());
+        }
+        this.pt = pt;
+        this.traffic = traffic;
+        this.types = traffic.getCallsTypesInfo();
+        this.numClasses = numClasses;
+        int weights = 0;
+        for (TrafficInfo type : types) {
+            weights += type.getWeight();
+        }
+        this.totalWeight = weights;
+
+        boolean eon = pt instanceof EONPhysicalTopology;
+        int numNodes = pt.getNumNodes();
+        numLinks = pt.getNumLinks();
+        int unit = 0;
+        if (!eon) {
+            // the largest bandwidth unit all rates and wavelengths are made of
+            for (TrafficInfo type : types) {
+                unit = gcd(unit, type.getRate());
+            }
+            for (int l = 0; l < numLinks; l++) {
+                unit = gcd(unit, ((WDMLink) pt.getLink(l)).getBandwidth());
+            }
+        }
+        capacity = new int[numLinks + 2 * numNodes];
+        for (int l = 0; l < numLinks; l++) {
+            if (eon) {
+                capacity[l] = ((EONLink) pt.getLink(l)).getNumSlots();
+            } else {
+                WDMLink link = (WDMLink) pt.getLink(l);
+                capacity[l] = link.getWavelengths() * (link.getBandwidth() / unit);
+            }
+        }
+        // a port carries a lightpath, of the bandwidth of a wavelength in WDM
+        int portSize = eon ? 1 : ((WDMLink) pt.getLink(0)).getBandwidth() / unit;
+        for (int n = 0; n < numNodes; n++) {
+            capacity[numLinks + n] = pt.getNode(n).getFreeGroomingInputPorts() * portSize;
+            capacity[numLinks + numNodes + n] = pt.getNode(n).getFreeGroomingOutputPorts() * portSize;
+        }
+        int max = 1;
+        portUnits = new int[types.length];
+        for (int t = 0; t < types.length; t++) {
+            portUnits[t] = eon ? 1 : types[t].getRate() / unit;
+            max = Math.max(max, portUnits[t]);
+        }
+
+        routes = new int[numNodes * numNodes][][];
+        units = new int[numNodes * numNodes][][];
+        for (int src = 0; src < numNodes; src++) {
+            for (int dst = 0; dst < numNodes; dst++) {
+                if (src == dst) {
+                    continue;
+                }
+                ArrayList<Integer>[] paths = YenKSP.kShortestPaths(pt.getWeightedGraph(), src, dst, k);
+                ArrayList<int[]> links = new ArrayList<>();
+                ArrayList<int[]> needs = new ArrayList<>();
+                for (ArrayList<Integer> path : paths) {
+                    if (path == null || path.size() < 2) {
+                        continue;
+                    }
+                    int hops = path.size() - 1;
+                    int[] route = new int[hops + 2];
+                    double length = 0;
+                    for (int i = 0; i < hops; i++) {
+                        route[i] = pt.getLink(path.get(i), path.get(i + 1)).getID();
+                        length += pt.getLink(route[i]).getWeight();
+                    }
+                    route[hops] = numLinks + src;
+                    route[hops + 1] = numLinks + numNodes + dst;
+                    int bottleneck = Integer.MAX_VALUE;
+                    for (int i = 0; i < hops; i++) {
+                        bottleneck = Math.min(bottleneck, capacity[route[i]]);
+                    }
+                    int mod = modulation >= 0 ? modulation : Modulation.getBestModulation(length);
+                    int[] need = new int[types.length];
+                    for (int t = 0; t < types.length; t++) {
+                        if (eon) {
+                            need[t] = mod < 0 ? -1 : Modulation.convertRateToSlot(types[t].getRate(), EONPhysicalTopology.getSlotSize(), mod)
+                                    + ((EONLink) pt.getLink(route[0])).getGuardband();
+                        } else {
+                            need[t] = types[t].getRate() / unit;
+                        }
+                        if (need[t] > bottleneck || portUnits[t] > Math.min(capacity[route[hops]], capacity[route[hops + 1]])) {
+                            need[t] = -1;
+                        }
+                        max = Math.max(max, need[t]);
+                    }
+                    links.add(route);
+                    needs.add(need);
+                }
+                routes[src * numNodes + dst] = links.toArray(new int[0][]);
+                units[src * numNodes + dst] = needs.toArray(new int[0][]);
+            }
+        }
+        maxUnits = max;
+    }
+
+    /**
+     * Estimates the blocking under a given load.
+     *
+     * @param load the offered load, in erlangs
+     * @return the blocking probability of each type of call, between 0 and 1
+     */
+    public double[] solve(double load) {
+        double rate = traffic.getArrivalRate(pt, load);
+        double[] pairs = traffic.getPairProbabilities(pt.getNumNodes());
+        double[] offered = new double[types.length]; // erlangs of each type
+        for (int t = 0; t < types.length; t++) {
+            offered[t] = rate * types[t].getWeight() / totalWeight * types[t].getHoldingTime();
+        }
+        double[][] blocking = new double[capacity.length][maxUnits + 1];
+        double[] blocked = new double[types.length];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double[][] linkLoad = new double[capacity.length][maxUnits + 1];
+            Arrays.fill(blocked, 0);
+            for (int p = 0; p < routes.length; p++) {
+                if (routes[p] == null || pairs[p] == 0) {
+                    continue;
+                }
+                for (int t = 0; t < types.length; t++) {
+                    double left = offered[t] * pairs[p]; // not carried by the previous paths
+                    for (int r = 0; r < routes[p].length && left > 0; r++) {
+                        int b = units[p][r][t];
+                        if (b < 0) {
+                            continue;
+                        }
+                        int[] route = routes[p][r];
+                        double carried = left;
+                        for (int l : route) {
+                            carried *= 1 - blocking[l][l < numLinks ? b : portUnits[t]];
+                        }
+                        for (int l : route) {
+                            // reduced load: thinned by the other resources of the path
+                            double thinned = left;
+                            for (int m : route) {
+                                if (m != l) {
+                                    thinned *= 1 - blocking[m][m < numLinks ? b : portUnits[t]];
+                                }
+                            }
+                            linkLoad[l][l < numLinks ? b : portUnits[t]] += thinned;
+                        }
+                        left -= carried;
+                    }
+                    blocked[t] += left;
+                }
+            }
+            double change = 0;
+            for (int l = 0; l < capacity.length; l++) {
+                double[] next = kaufmanRoberts(capacity[l], linkLoad[l]);
+                for (int b = 1; b <= maxUnits; b++) {
+                    // damped, as plain substitution may oscillate at high loads
+                    next[b] = (next[b] + blocking[l][b]) / 2;
+                    change = Math.max(change, Math.abs(next[b] - blocking[l][b]));
+                }
+                blocking[l] = next;
+            }
+            if (change < TOLERANCE) {
+                break;
+            }
+        }
+        for (int t = 0; t < types.length; t++) {
+            blocked[t] = offered[t] > 0 ? blocked[t] / offered[t] : 0;
+        }
+        return blocked;
+    }
+
+    /**
+     * Estimates the blocking under a given load, as the first columns
+     * printed by Ons.MyStatistics.printStatistics: the blocking
+     * probability, by SNR (always 0) and by resources, the bandwidth
+     * blocking ratio, by SNR and by resources, and the blocking probability
+     * of each class of service, all in percent.
+     *
+     * @param load the offered load, in erlangs
+     * @return the statistics line
+     */
+    public String estimate(double load) {
+        double[] blocked = solve(load);
+        double arrivals = 0, bp = 0, bandwidth = 0, bbr = 0;
+        double[] classArrivals = new double[numClasses];
+        double[] classBlocked = new double[numClasses];
+        for (int t = 0; t < types.length; t++) {
+            double share = types[t].getWeight();
+            arrivals += share;
+            bp += share * blocked[t];
+            bandwidth += share * types[t].getRate();
+            bbr += share * types[t].getRate() * blocked[t];
+            if (types[t].getCOS() < numClasses) {
+                classArrivals[types[t].getCOS()] += share;
+                classBlocked[types[t].getCOS()] += share * blocked[t];
+            }
+        }
+        float blockProb = (float) (bp / arrivals * 100);
+        float blockedBandwidth = (float) (bbr / bandwidth * 100);
+        String stats = "";
+        stats += Float.toString(blockProb) + ", ";
+        stats += Float.toString(0f) + ", ";
+        stats += Float.toString(blockProb) + ", ";
+        stats += Float.toString(blockedBandwidth) + ", ";
+        stats += Float.toString(0f) + ", ";
+        stats += Float.toString(blockedBandwidth);
+        for (int i = 0; i < numClasses; i++) {
+            stats += ", " + Float.toString(classArrivals[i] > 0 ? (float) (classBlocked[i] / classArrivals[i] * 100) : 0f);
+        }
+        return stats;
+    }
+
+    /**
+     * Computes the blocking probabilities of a multirate loss link by the
+     * Kaufman-Roberts recursion.
+     *
+     * @param capacity the units of the link
+     * @param load the offered erlangs of the calls of each number of units
+     * @return the blocking probability of calls of each number of units
+     */
+    private double[] kaufmanRoberts(int capacity, double[] load) {
+        double[] q = new double[capacity + 1];
+        q[0] = 1;
+        for (int n = 1; n <= capacity; n++) {
+            double sum = 0;
+            for (int b = 1; b < load.length && b <= n; b++) {
+                sum += load[b] * b * q[n - b];
+            }
+            q[n] = sum / n;
+            if (q[n] > 1e250) {
+                // rescale, only the ratios matter
+                for (int i = 0; i <= n; i++) {
+                    q[i] *= 1e-250;
+                }
+            }
+        }
+        double total = 0;
+        for (double value : q) {
+            total += value;
+        }
+        double[] blocking = new double[load.length];
+        double tail = 0;
+        for (int b = 1; b < load.length; b++) {
+            if (b > capacity) {
+                blocking[b] = 1;
+                continue;
+            }
+            tail += q[capacity - b + 1];
+            blocking[b] = tail / total;
+        }
+        return blocking;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+}
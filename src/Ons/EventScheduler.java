@@ -4,6 +4,10 @@ package Ons;/*
  */
 
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.PriorityQueue;
 import java.util.Comparator;
 
@@ -72,6 +76,15 @@ public class EventScheduler {
         return eventQueue.poll();
     }
     
+    /**
+     * Retrieves, but does not remove, the first event from the eventQueue.
+     * 
+     * @return the first event of the queue, or null if it has no events
+     */
+    Event peekEvent() {
+        return eventQueue.peek();
+    }
+    
     /**
      * Retrieves the number of events in eventQueue.
      * If the there are more than Integer.MAX_VALUE events,
@@ -82,5 +95,72 @@ public class EventScheduler {
     public int numEvents() {
         return eventQueue.size();
     }
-    
+
+    /**
+     * Retrieves the number of arrival events in eventQueue.
+     *
+     * @return number of Ons.FlowArrivalEvent objects in eventQueue
+     */
+    int numArrivals() {
+        int arrivals = 0;
+        for (Event event : eventQueue) {
+            if (event instanceof FlowArrivalEvent) {
+                arrivals++;
+            }
+        }
+        return arrivals;
+    }
+
+    /**
+     * Removes all arrival events from eventQueue, keeping the departures.
+     */
+    void removeArrivals() {
+        eventQueue.removeIf(event -> event instanceof FlowArrivalEvent);
+    }
+
+    /**
+     * Writes the pending events to a checkpoint, in time order.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        Event[] pending = eventQueue.toArray(new Event[0]);
+        Arrays.sort(pending, eventQueue.comparator());
+        out.writeInt(pending.length);
+        for (Event event : pending) {
+            out.writeDouble(event.getTime());
+            if (event instanceof FlowArrivalEvent) {
+                out.writeByte(0);
+                Checkpoint.writeFlow(out, ((FlowArrivalEvent) event).getFlow());
+            } else if (event instanceof FlowDepartureEvent) {
+                out.writeByte(1);
+                out.writeLong(((FlowDepartureEvent) event).getID());
+            } else {
+                throw (new IllegalArgumentException("Cannot checkpoint event " + event));
+            }
+        }
+    }
+
+    /**
+     * Replaces the events of the eventQueue by those of a checkpoint.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read
+     */
+    void readState(DataInputStream in) throws IOException {
+        eventQueue.clear();
+        int count = in.readInt();
+        for (int k = 0; k < count; k++) {
+            double time = in.readDouble();
+            Event event;
+            if (in.readByte() == 0) {
+                event = new FlowArrivalEvent(Checkpoint.readFlow(in));
+            } else {
+                event = new FlowDepartureEvent(in.readLong());
+            }
+            event.setTime(time);
+            eventQueue.add(event);
+        }
+    }
 }
@@ -0,0 +1,180 @@
+package Ons;
+
+/**
+ * Table of the flows known by the Ons.ControlPlane, keyed by the primitive flow
+ * id. Each slot keeps the flow together with the lightpaths it was accepted
+ * into (null while the flow waits for a Ons.RA decision), so the control plane
+ * finds everything about a flow with a single lookup and without boxing ids.
+ *
+ * It is an open-addressing hash table with linear probing. The flow ids
+ * created by the Ons.TrafficGenerator are dense and increasing, so the id itself
+ * is used as hash: the active flows occupy consecutive slots, like in a ring
+ * buffer, and only long-lived flows that wrap around the table need probing.
+ * Slots are freed with backward-shift deletion, so there are no tombstones.
+ *
+ * @author onsteam
+ */
+class FlowTable {
+
+    private long[] ids;
+    private Flow[] flows; // null means the slot is empty
+    private LightPath[][] lightpaths;
+    private int size;
+
+    /**
+     * Creates a new, empty Ons.FlowTable object.
+     */
+    FlowTable() {
+        ids = new long[1024];
+        flows = new Flow[1024];
+        lightpaths = new LightPath[1024][];
+        size = 0;
+    }
+
+    /**
+     * Adds a flow to the table, with no lightpaths. If a flow with the same
+     * id is already in the table, it is replaced.
+     *
+     * @param flow the Ons.Flow object to be added
+     * @return the slot of the flow
+     */
+    int add(Flow flow) {
+        if ((size + 1) * 2 > flows.length) {
+            resize(flows.length * 2);
+        }
+        int mask = flows.length - 1;
+        int i = home(flow.getID(), mask);
+        while (flows[i] != null && ids[i] != flow.getID()) {
+            i = (i + 1) & mask;
+        }
+        if (flows[i] == null) {
+            size++;
+        }
+        ids[i] = flow.getID();
+        flows[i] = flow;
+        lightpaths[i] = null;
+        return i;
+    }
+
+    /**
+     * Finds the slot of a flow.
+     *
+     * @param id the unique identifier of the flow
+     * @return the slot of the flow, or -1 if it is not in the table
+     */
+    int find(long id) {
+        int mask = flows.length - 1;
+        int i = home(id, mask);
+        while (flows[i] != null) {
+            if (ids[i] == id) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the flow stored in a slot.
+     *
+     * @param slot the slot, as returned by find
+     * @return the Ons.Flow object, or null if the slot is empty
+     */
+    Flow getFlow(int slot) {
+        return flows[slot];
+    }
+
+    /**
+     * Retrieves the lightpaths of the flow stored in a slot.
+     *
+     * @param slot the slot, as returned by find
+     * @return the lightpaths, or null if the flow has not been accepted
+     */
+    LightPath[] getLightpaths(int slot) {
+        return lightpaths[slot];
+    }
+
+    /**
+     * Sets the lightpaths of the flow stored in a slot, which marks the flow
+     * as accepted into the network.
+     *
+     * @param slot the slot, as returned by find
+     * @param lps the lightpaths used by the flow
+     */
+    void setLightpaths(int slot, LightPath[] lps) {
+        lightpaths[slot] = lps;
+    }
+
+    /**
+     * Removes the flow stored in a slot. Slots returned by previous calls to
+     * find or add are no longer valid after this call.
+     *
+     * @param slot the slot, as returned by find
+     */
+    void remove(int slot) {
+        int mask = flows.length - 1;
+        int i = slot;
+        int j = slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (flows[j] == null) {
+                break;
+            }
+            int k = home(ids[j], mask);
+            // move j back to i unless its home lies cyclically in (i, j]
+            if ((i <= j) ? (i >= k || k > j) : (i >= k && k > j)) {
+                ids[i] = ids[j];
+                flows[i] = flows[j];
+                lightpaths[i] = lightpaths[j];
+                i = j;
+            }
+        }
+        flows[i] = null;
+        lightpaths[i] = null;
+        size--;
+    }
+
+    /**
+     * Retrieves the number of flows in the table.
+     *
+     * @return the number of flows
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of slots of the table. Together with getFlow and
+     * getLightpaths, it allows iterating over all flows.
+     *
+     * @return the number of slots
+     */
+    int capacity() {
+        return flows.length;
+    }
+
+    private static int home(long id, int mask) {
+        return (int) (id ^ (id >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldIds = ids;
+        Flow[] oldFlows = flows;
+        LightPath[][] oldLightpaths = lightpaths;
+        ids = new long[capacity];
+        flows = new Flow[capacity];
+        lightpaths = new LightPath[capacity][];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldFlows.length; j++) {
+            if (oldFlows[j] != null) {
+                int i = home(oldIds[j], mask);
+                while (flows[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                ids[i] = oldIds[j];
+                flows[i] = oldFlows[j];
+                lightpaths[i] = oldLightpaths[j];
+            }
+        }
+    }
+}
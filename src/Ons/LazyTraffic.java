@@ -0,0 +1,57 @@
+package Ons;
+
+/**
+ * Generates the traffic of an Ons.TrafficGenerator as the simulation goes,
+ * instead of scheduling all calls before it starts. Each time an arrival is
+ * retrieved, the next call is drawn and its arrival and departure are
+ * scheduled, so the queue only holds the departures of the calls in the
+ * network and one arrival, no matter how many calls are simulated.
+ * 
+ * The calls are those generateTraffic would schedule, drawn from the same
+ * random streams in the same order. The traffic models of the
+ * Ons.TrafficGenerator (rate profiles, MMPP, holding-time distributions)
+ * are always generated this way.
+ * 
+ * @author onsteam
+ */
+public class LazyTraffic extends EventScheduler {
+
+    private final TrafficGenerator traffic;
+    private final long calls;
+    private long generated;
+
+    /**
+     * Creates a new Ons.LazyTraffic object and schedules the first call.
+     * 
+     * @param traffic the traffic generator
+     * @param pt the network's Physical Topology
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations (any positive number with the xoroshiro generator)
+     */
+    public LazyTraffic(TrafficGenerator traffic, PhysicalTopology pt, int seed) {
+        super();
+        this.traffic = traffic;
+        this.calls = traffic.getCalls();
+        traffic.startTraffic(pt, seed);
+        generated = 0;
+        if (calls > 0) {
+            traffic.generateCall(this);
+            generated++;
+        }
+    }
+
+    /**
+     * Retrieves and removes the first event, and schedules the next call if
+     * the event is an arrival.
+     * 
+     * @return the first event of the queue, or null if it has no events
+     */
+    @Override
+    public Event popEvent() {
+        Event event = super.popEvent();
+        if (event instanceof FlowArrivalEvent && generated < calls) {
+            traffic.generateCall(this);
+            generated++;
+        }
+        return event;
+    }
+}
@@ -1,5 +1,9 @@
 package Ons;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 /**
  * The abstract class Ons.Link
  * @author onsteam
@@ -91,4 +95,21 @@ public abstract class Link {
     @Override
     public abstract String toString();
 
+    /**
+     * Writes the occupancy of the link to a checkpoint.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    abstract void writeState(DataOutputStream out) throws IOException;
+
+    /**
+     * Restores the occupancy of the link from a checkpoint.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read or does not match
+     * the link
+     */
+    abstract void readState(DataInputStream in) throws IOException;
+
 }
@@ -19,17 +19,49 @@ public class Main {
      * Based on the number of arguments, can detect if there are too many or too few,
      * which prints a message teaching how to run WDMSim. If the number is correct,
      * detects which arguments were applied and makes sure they have the expected effect.
+     * With -continue, each load of the range starts from the network left by
+     * the previous one, instead of from an empty network. With -analytical,
+     * the blocking of each load is estimated by the Ons.ErlangFixedPoint
+     * approximation instead of simulated, all loads in parallel. With
+     * -search BP, the range is searched for the load whose blocking
+     * probability is BP percent (see search).
      * 
      * @param args the command line arguments
      */
     public static void main(String[] args) {
         Simulator wdm;
-        String usage = "Usage: ONS simulation_file seed [-trace] [-verbose] [minload maxload step]";
+        String usage = "Usage: ONS simulation_file seed [-trace] [-verbose] [-continue] [-analytical] [-search BP] [minload maxload step]";
         String simConfigFile;
         boolean verbose = false;
         boolean trace = false;
+        boolean continuation = false;
+        boolean analytical = false;
+        double target = -1;
         int seed = 1;
         double minload = 0, maxload = 0, step = 1;
+        Checkpoint state = null;
+
+        // -continue, -analytical and -search may be anywhere after the seed
+        for (int i = 2; i < args.length; i++) {
+            int used = 0;
+            if (args[i].equals("-continue")) {
+                continuation = true;
+                used = 1;
+            } else if (args[i].equals("-analytical")) {
+                analytical = true;
+                used = 1;
+            } else if (args[i].equals("-search") && i + 1 < args.length) {
+                target = Double.parseDouble(args[i + 1]);
+                used = 2;
+            }
+            if (used > 0) {
+                String[] rest = new String[args.length - used];
+                System.arraycopy(args, 0, rest, 0, i);
+                System.arraycopy(args, i + used, rest, i, args.length - i - used);
+                args = rest;
+                i--;
+            }
+        }
 
         if (args.length < 2 || args.length > 7) {
             System.out.println(usage);
@@ -65,12 +97,110 @@ public class Main {
 
         simConfigFile = args[0];
         seed = Integer.parseInt(args[1]);
-        
+
+        if (target >= 0) {
+            if (maxload <= minload || continuation || analytical) {
+                System.out.println(usage);
+                System.exit(0);
+            }
+            search(simConfigFile, trace, verbose, seed, target, minload, maxload, step);
+            return;
+        }
+
+        if (analytical) {
+            int count = 0;
+            for (double load = minload; load <= maxload; load += step) {
+                count++;
+            }
+            double[] loads = new double[count];
+            count = 0;
+            for (double load = minload; load <= maxload; load += step) {
+                loads[count++] = load;
+            }
+            new Simulator().Estimate(simConfigFile, verbose, loads);
+            return;
+        }
+
         for (double load = minload; load <= maxload; load += step) {
             sumAcceptedSNR = 0d;
             sumBlockedSNR = 0d;
             wdm = new Simulator();
-            wdm.Execute(simConfigFile, trace, verbose, load, seed);
+            state = wdm.Execute(simConfigFile, trace, verbose, load, seed, continuation, state);
         }
     }
+
+    /**
+     * Searches the load whose blocking probability is the target, between
+     * minload and maxload, by regula falsi (bisection when it moves too
+     * little). Each load is simulated by a probe run, short at first: when
+     * the confidence interval of a probe brackets the target, the load is
+     * close enough for its precision, and the runs get twice as long. The
+     * search ends when the interval of a run of all the calls of the XML
+     * file brackets the target, or when the loads left to search are less
+     * than step apart.
+     *
+     * @param simConfigFile name of the XML file that contains all information about the simulation
+     * @param trace activates the Ons.Tracer class functionalities
+     * @param verbose activates the printing of information about the simulation
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations
+     * @param target the blocking probability searched, in percent
+     * @param minload the lowest load, whose blocking must be below the target
+     * @param maxload the highest load, whose blocking must be above the target
+     * @param step the precision of the load
+     */
+    static void search(String simConfigFile, boolean trace, boolean verbose, int seed, double target, double minload, double maxload, double step) {
+        double goal = target / 100;
+        double fraction = 1.0 / 8; // of the calls simulated by the probes
+        double low = minload, high = maxload;
+        double lowBP = probe(simConfigFile, trace, verbose, seed, low, fraction)[0];
+        double highBP = probe(simConfigFile, trace, verbose, seed, high, fraction)[0];
+        if (lowBP < 0 || highBP < 0) {
+            return;
+        }
+        if (lowBP > goal || highBP < goal) {
+            System.out.println("Blocking of " + Double.toString(target) + "% is not between loads " + Double.toString(low) + " and " + Double.toString(high));
+            return;
+        }
+        double load = low;
+        while (high - low >= step) {
+            load = low + (goal - lowBP) * (high - low) / (highBP - lowBP);
+            if (Double.isNaN(load) || load < low + (high - low) / 10 || load > high - (high - low) / 10) {
+                load = (low + high) / 2;
+            }
+            double[] result = probe(simConfigFile, trace, verbose, seed, load, fraction);
+            if (result[0] < 0) {
+                return;
+            }
+            while (Math.abs(result[0] - goal) <= result[1] && fraction < 1) {
+                // Close enough for this precision: look closer
+                fraction = Math.min(fraction * 2, 1);
+                result = probe(simConfigFile, trace, verbose, seed, load, fraction);
+                if (result[0] < 0) {
+                    return;
+                }
+            }
+            if (Math.abs(result[0] - goal) <= result[1]) {
+                break;
+            }
+            if (result[0] < goal) {
+                low = load;
+                lowBP = result[0];
+            } else {
+                high = load;
+                highBP = result[0];
+            }
+        }
+        System.out.println("Blocking of " + Double.toString(target) + "% at load " + Double.toString(load)
+                + " (searched between " + Double.toString(low) + " and " + Double.toString(high) + ")");
+    }
+
+    private static double[] probe(String simConfigFile, boolean trace, boolean verbose, int seed, double load, double fraction) {
+        System.out.println("Load " + Double.toString(load) + ", " + Double.toString(fraction * 100) + "% of the calls:");
+        sumAcceptedSNR = 0d;
+        sumBlockedSNR = 0d;
+        Simulator wdm = new Simulator();
+        wdm.setProbe(fraction);
+        wdm.Execute(simConfigFile, trace, verbose, load, seed);
+        return new double[]{wdm.getBlocking(), wdm.getHalfWidth()};
+    }
 }
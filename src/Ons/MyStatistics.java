@@ -1,5 +1,13 @@
 package Ons;
 
+import Ons.Util.BatchMeans;
+import Ons.Util.MSER;
+import Ons.Util.PairCounters;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
 /**
  * This class calculates and print all simulator statistics.
  * @author onsteam
@@ -20,10 +28,7 @@ public class MyStatistics {
     private long SNRblockedBandwidth;     //(New)
     private long SpectrumblockedBandwidth;     //(New)
     private int numNodes;
-    private int[][] arrivalsPairs;
-    private int[][] blockedPairs;
-    private long[][] requiredBandwidthPairs;
-    private long[][] blockedBandwidthPairs;
+    private PairCounters pairs; // per s-d pair and per class counters, only for pairs with traffic
     private int numfails;
     private int flowfails;
     private int lpsfails;
@@ -37,7 +42,6 @@ public class MyStatistics {
     //for available slots
     private long times = 0;
     private long availableSlots;
-    private boolean firstTime = false;
     private int MAX_AvailableSlots;
     //for virtual hops per request
     private long virtualHops = 0;
@@ -53,10 +57,40 @@ public class MyStatistics {
     private int[] blockedDiff;
     private long[] requiredBandwidthDiff;
     private long[] blockedBandwidthDiff;
-    private int[][][] arrivalsPairsDiff;
-    private int[][][] blockedPairsDiff;
-    private int[][][] requiredBandwidthPairsDiff;
-    private int[][][] blockedBandwidthPairsDiff;
+    //Batch means confidence interval of the blocking probability
+    private int batchSize; // arrivals per batch, 0 if no interval is computed
+    private int minBatches;
+    private double relativeError;
+    private double absoluteError;
+    private int batchArrivals;
+    private int batchBlocked;
+    private BatchMeans blockingBatches;
+    private boolean converged;
+    //Automatic warm-up detection
+    private int warmupBatch; // arrivals per observation, 0 if the warm-up is given by minNumberArrivals
+    private int warmupMinBatches;
+    private int warmupMax;
+    private int warmupArrivals;
+    private int warmupBlocked;
+    private double warmupUtilization;
+    private double utilization; // spectrum utilization of the current EON event
+    private MSER blockingSeries;
+    private MSER utilizationSeries;
+    private int warmup; // arrivals discarded as warm-up, -1 while still detecting
+    private int warmupStart; // arrivals before the first observation
+    private int warmupEnd; // arrivals when the warm-up was found to have ended
+    private ArrayList<long[]> warmupLog; // what the events add while detecting, counted from the truncation point
+    private static final int LOG_ARRIVAL = 0;
+    private static final int LOG_DEPARTURE = 1;
+    private static final int LOG_SLOTS = 2;
+    private static final int LOG_ACCEPTED = 3;
+    private static final int LOG_BLOCKED = 4;
+    private static final int LOG_SNR_BLOCKED = 5;
+    //Splitting estimate of the blocking probability
+    private boolean splitting;
+    private double weight; // weight of the current event's trajectory
+    private double weightedArrivals;
+    private double weightedBlocked;
 
 
     /**
@@ -100,6 +134,27 @@ public class MyStatistics {
         return singletonObject;
     }
 
+    /**
+     * Creates an Ons.MyStatistics object besides the singleton, for one of
+     * several networks simulated side by side (see Ons.ComparisonRunner).
+     *
+     * @return the new object
+     */
+    static MyStatistics newMyStatisticsObject() {
+        return new MyStatistics();
+    }
+
+    /**
+     * Makes an object the one returned by getMyStatisticsObject, so that the
+     * objects created next (Ons.VirtualTopology, Ons.ControlPlane) report to
+     * it.
+     *
+     * @param st the statistics object
+     */
+    static synchronized void setMyStatisticsObject(MyStatistics st) {
+        singletonObject = st;
+    }
+
     /**
      * Throws an exception to stop a cloned Ons.MyStatistics object from being
      * created.
@@ -118,10 +173,7 @@ public class MyStatistics {
      */
     public void statisticsSetup(PhysicalTopology pt, int numClasses, int minNumberArrivals) {
         this.numNodes = pt.getNumNodes();
-        this.arrivalsPairs = new int[numNodes][numNodes];
-        this.blockedPairs = new int[numNodes][numNodes];
-        this.requiredBandwidthPairs = new long[numNodes][numNodes];
-        this.blockedBandwidthPairs = new long[numNodes][numNodes];
+        this.pairs = new PairCounters(numNodes, numClasses);
 
         this.minNumberArrivals = minNumberArrivals;
 
@@ -137,14 +189,250 @@ public class MyStatistics {
             this.requiredBandwidthDiff[i] = 0;
             this.blockedBandwidthDiff[i] = 0;
         }
-        this.arrivalsPairsDiff = new int[numNodes][numNodes][numClasses];
-        this.blockedPairsDiff = new int[numNodes][numNodes][numClasses];
-        this.requiredBandwidthPairsDiff = new int[numNodes][numNodes][numClasses];
-        this.blockedBandwidthPairsDiff = new int[numNodes][numNodes][numClasses];
         //
         if(pt instanceof EONPhysicalTopology) {
             this.modulations = new long[8];
         } 
+        // The maxima are those of the empty network, even if the simulation
+        // starts from a loaded one (continued load sweeps)
+        this.MAX_NumTransponders = pt.getAllFreeGroomingInputPorts();
+        if (pt instanceof EONPhysicalTopology) {
+            this.MAX_AvailableSlots = ((EONPhysicalTopology) pt).getAvailableSlots();
+        }
+    }
+
+    /**
+     * Replaces the fixed warm-up (minNumberArrivals) by automatic detection:
+     * statistics are collected once the MSER-5 rule finds the end of the
+     * transient in both the blocking ratio and the utilization (of the
+     * spectrum in EON, of the transponders in WDM), each averaged over
+     * batches of arrivals. The warm-up then lasts until the later of the two
+     * truncation points. The rule needs at least twice as many arrivals as
+     * the truncation point to trust it, so what the arrivals add to the
+     * statistics is kept until then, and the ones after the truncation point
+     * are counted once it is found.
+     *
+     * @param batch number of arrivals per observation
+     * @param minBatches number of observations before the rule is trusted
+     * @param max number of arrivals after which the warm-up ends anyway
+     */
+    public void warmupSetup(int batch, int minBatches, int max) {
+        if (batch < 1 || minBatches < 20 || max < 0) {
+            throw (new IllegalArgumentException());
+        }
+        this.warmupBatch = batch;
+        this.warmupMinBatches = minBatches;
+        this.warmupMax = max;
+        this.warmupArrivals = 0;
+        this.warmupBlocked = 0;
+        this.warmupUtilization = 0;
+        this.blockingSeries = new MSER();
+        this.utilizationSeries = new MSER();
+        this.warmup = -1;
+        this.warmupStart = numberArrivals;
+        this.warmupLog = new ArrayList<>();
+        this.minNumberArrivals = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Retrieves the length of the warm-up, once it has ended.
+     *
+     * @return the number of arrivals discarded, or -1 if the warm-up has not
+     * ended
+     */
+    public int getWarmup() {
+        return warmupBatch > 0 ? warmup : minNumberArrivals;
+    }
+
+    /**
+     * Sets up the batch means confidence interval of the blocking
+     * probability, and the rule that stops the simulation once it is narrow
+     * enough. Batches count the arrivals after the warm-up. The interval is
+     * narrow enough when its half-width is below a fraction of the blocking
+     * probability, or below an absolute value; with a blocking probability
+     * of zero, only the absolute rule can be met.
+     *
+     * @param batchSize number of arrivals per batch
+     * @param minBatches number of batches before the stop rule is checked
+     * @param relativeError largest half-width, in percent of the blocking
+     * probability, or 0 to disable the relative rule
+     * @param absoluteError largest half-width, in percentage points of
+     * blocking probability, or 0 to disable the absolute rule
+     */
+    public void confidenceSetup(int batchSize, int minBatches, double relativeError, double absoluteError) {
+        if (batchSize < 1 || minBatches < 2 || relativeError < 0 || absoluteError < 0) {
+            throw (new IllegalArgumentException());
+        }
+        this.batchSize = batchSize;
+        this.minBatches = minBatches;
+        this.relativeError = relativeError;
+        this.absoluteError = absoluteError;
+        this.batchArrivals = 0;
+        this.batchBlocked = 0;
+        this.blockingBatches = new BatchMeans();
+        this.converged = false;
+    }
+
+    /**
+     * Retrieves the blocking probability of the arrivals counted so far,
+     * weighted if splittingSetup was called.
+     *
+     * @return the blocking probability, between 0 and 1
+     */
+    public double getBlocking() {
+        if (splitting) {
+            return getWeightedBlocking();
+        }
+        return arrivals > 0 ? (double) blocked / (double) arrivals : 0;
+    }
+
+    /**
+     * Retrieves the number of arrivals counted so far, after the warm-up.
+     *
+     * @return the number of arrivals
+     */
+    public int getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * Retrieves the number of blocked flows counted so far, after the
+     * warm-up.
+     *
+     * @return the number of blocked flows
+     */
+    public int getBlocked() {
+        return blocked;
+    }
+
+    /**
+     * Retrieves the half-width of the 95% confidence interval of the
+     * blocking probability, set up by confidenceSetup.
+     *
+     * @return the half-width, between 0 and 1, or infinity if there is no
+     * interval yet
+     */
+    public double getHalfWidth() {
+        return blockingBatches != null ? blockingBatches.getHalfWidth() : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Sets up the splitting estimate of the blocking probability (see
+     * Ons.SplittingRunner). Every counted arrival and blocking is also added
+     * with the weight of the trajectory it occurs in, so that the blocking
+     * probability of the network as simulated without splitting can be
+     * estimated from all trajectories. The other statistics count the
+     * events of all trajectories alike.
+     */
+    public void splittingSetup() {
+        this.splitting = true;
+        this.weight = 1;
+        this.weightedArrivals = 0;
+        this.weightedBlocked = 0;
+    }
+
+    /**
+     * Sets the weight of the events that follow, which is the inverse of the
+     * number of trajectories simulated from the same state.
+     *
+     * @param weight the weight
+     */
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Retrieves the blocking probability estimated from the weighted
+     * arrivals and blockings.
+     *
+     * @return the blocking probability, between 0 and 1
+     */
+    public double getWeightedBlocking() {
+        return weightedArrivals > 0 ? weightedBlocked / weightedArrivals : 0;
+    }
+
+    /**
+     * Called once an arrival has been handled by the control plane. Closes
+     * the current batch when it is complete, and checks the stop rule.
+     */
+    public void arrivalHandled() {
+        if (warmup < 0 && warmupArrivals >= warmupBatch) {
+            blockingSeries.add((double) warmupBlocked / (double) warmupArrivals);
+            utilizationSeries.add(warmupUtilization / warmupArrivals);
+            warmupArrivals = 0;
+            warmupBlocked = 0;
+            warmupUtilization = 0;
+            int blockingTruncation = blockingSeries.getTruncation();
+            int utilizationTruncation = utilizationSeries.getTruncation();
+            if (blockingSeries.getObservations() >= warmupMinBatches && blockingTruncation >= 0 && utilizationTruncation >= 0) {
+                endWarmup(warmupStart + Math.max(blockingTruncation, utilizationTruncation) * warmupBatch);
+            } else if (numberArrivals >= warmupMax) {
+                endWarmup(numberArrivals);
+            }
+        }
+        closeBatch();
+    }
+
+    /**
+     * Ends the warm-up at a given arrival, and counts what the events after
+     * it have added while the warm-up was being detected.
+     *
+     * @param end the number of arrivals discarded
+     */
+    private void endWarmup(int end) {
+        warmup = end;
+        warmupEnd = numberArrivals;
+        minNumberArrivals = end;
+        for (long[] record : warmupLog) {
+            if (record[1] <= end) {
+                continue;
+            }
+            switch ((int) record[0]) {
+                case LOG_ARRIVAL:
+                    // the batch of the previous arrival is complete
+                    closeBatch();
+                    countArrival((int) record[2], (int) record[3], (int) record[4], (int) record[5], (int) record[6], Double.longBitsToDouble(record[7]));
+                    break;
+                case LOG_DEPARTURE:
+                    this.departures++;
+                    break;
+                case LOG_SLOTS:
+                    this.availableSlots += record[2];
+                    break;
+                case LOG_ACCEPTED:
+                    countAccepted((int) record[2], (int) record[3]);
+                    break;
+                default:
+                    countBlocked((int) record[2], (int) record[3], (int) record[4], (int) record[5], Double.longBitsToDouble(record[6]), record[0] == LOG_SNR_BLOCKED);
+                    break;
+            }
+        }
+        warmupLog = null;
+    }
+
+    // closes the current batch of the confidence interval when it is complete, and checks the stop rule
+    private void closeBatch() {
+        if (batchSize == 0 || batchArrivals < batchSize) {
+            return;
+        }
+        blockingBatches.add((double) batchBlocked / (double) batchArrivals);
+        batchArrivals = 0;
+        batchBlocked = 0;
+        if (blockingBatches.getBatches() >= minBatches) {
+            double halfWidth = blockingBatches.getHalfWidth() * 100;
+            double bp = blockingBatches.getMean() * 100;
+            converged = (relativeError > 0 && bp > 0 && halfWidth <= relativeError / 100 * bp)
+                    || (absoluteError > 0 && halfWidth <= absoluteError);
+        }
+    }
+
+    /**
+     * Says whether the stop rule set by confidenceSetup is met.
+     *
+     * @return true if the simulation can stop
+     */
+    public boolean isConverged() {
+        return converged;
     }
 
     /**
@@ -154,16 +442,22 @@ public class MyStatistics {
      * @param lightpaths list of lightpaths in the flow
      */
     public void acceptFlow(Flow flow, LightPath[] lightpaths) {
+        int count = 0;
+        for (LightPath lps : lightpaths) {
+            count += lps.getHops();
+        }
         if (this.numberArrivals > this.minNumberArrivals) {
-            this.accepted++;
-            this.virtualHops(lightpaths.length);
-            int count = 0;
-            for (LightPath lps : lightpaths) {
-                count += lps.getHops();
-            }
-            this.physicalHops(count);
+            countAccepted(lightpaths.length, count);
+        } else if (warmup < 0) {
+            warmupLog.add(new long[]{LOG_ACCEPTED, numberArrivals, lightpaths.length, count});
         }
     }
+
+    private void countAccepted(int virtualHops, int physicalHops) {
+        this.accepted++;
+        this.virtualHops(virtualHops);
+        this.physicalHops(physicalHops);
+    }
     
     /**
      * Adds a blocked flow to the statistics.
@@ -171,19 +465,7 @@ public class MyStatistics {
      * @param flow the blocked Ons.Flow object
      */
     public void SNRblockFlow(Flow flow) {     //(New)
-        if (this.numberArrivals > this.minNumberArrivals) {
-            int cos = flow.getCOS();
-            this.blocked++;
-            this.SNRblocked++;
-            this.blockedDiff[cos]++;
-            this.blockedBandwidth += flow.getRate();
-            this.SNRblockedBandwidth += flow.getRate();
-            this.blockedBandwidthDiff[cos] += flow.getRate();
-            this.blockedPairs[flow.getSource()][flow.getDestination()]++;
-            this.blockedPairsDiff[flow.getSource()][flow.getDestination()][cos]++;
-            this.blockedBandwidthPairs[flow.getSource()][flow.getDestination()] += flow.getRate();
-            this.blockedBandwidthPairsDiff[flow.getSource()][flow.getDestination()][cos] += flow.getRate();
-        }
+        blockFlow(flow, true);
     }
 
     /**
@@ -192,19 +474,37 @@ public class MyStatistics {
      * @param flow the blocked Ons.Flow object
      */
     public void blockFlow(Flow flow) {
+        blockFlow(flow, false);
+    }
+
+    private void blockFlow(Flow flow, boolean snr) {
+        if (warmup < 0) {
+            this.warmupBlocked++;
+        }
         if (this.numberArrivals > this.minNumberArrivals) {
-            int cos = flow.getCOS();
-            this.blocked++;
+            countBlocked(flow.getSource(), flow.getDestination(), flow.getCOS(), flow.getRate(), weight, snr);
+        } else if (warmup < 0) {
+            warmupLog.add(new long[]{snr ? LOG_SNR_BLOCKED : LOG_BLOCKED, numberArrivals, flow.getSource(), flow.getDestination(),
+                flow.getCOS(), flow.getRate(), Double.doubleToRawLongBits(weight)});
+        }
+    }
+
+    private void countBlocked(int src, int dst, int cos, int rate, double weight, boolean snr) {
+        this.blocked++;
+        this.batchBlocked++;
+        this.weightedBlocked += weight;
+        if (snr) {
+            this.SNRblocked++;
+            this.SNRblockedBandwidth += rate;
+        } else {
             this.Spectrumblocked++;
-            this.blockedDiff[cos]++;
-            this.blockedBandwidth += flow.getRate();
-            this.SpectrumblockedBandwidth += flow.getRate();
-            this.blockedBandwidthDiff[cos] += flow.getRate();
-            this.blockedPairs[flow.getSource()][flow.getDestination()]++;
-            this.blockedPairsDiff[flow.getSource()][flow.getDestination()][cos]++;
-            this.blockedBandwidthPairs[flow.getSource()][flow.getDestination()] += flow.getRate();
-            this.blockedBandwidthPairsDiff[flow.getSource()][flow.getDestination()][cos] += flow.getRate();
+            this.SpectrumblockedBandwidth += rate;
         }
+        this.blockedDiff[cos]++;
+        this.blockedBandwidth += rate;
+        this.blockedBandwidthDiff[cos] += rate;
+        this.pairs.add(src, dst, cos, PairCounters.BLOCKED, 1);
+        this.pairs.add(src, dst, cos, PairCounters.BLOCKED_BW, rate);
     }
     
     /**
@@ -214,14 +514,14 @@ public class MyStatistics {
      * @param availableTransponders the atual available transponders in physical topology
      */
     public void addEvent(Event event, int availableSlots, int availableTransponders) {
-        if(!firstTime){
-            MAX_AvailableSlots = availableSlots;
-            MAX_NumTransponders = availableTransponders;
-            firstTime = true;
+        if (MAX_AvailableSlots > 0) {
+            utilization = 1.0 - (double) availableSlots / (double) MAX_AvailableSlots;
         }
         addEvent(event, availableTransponders);
         if (this.numberArrivals > this.minNumberArrivals) {
             this.availableSlots += (long) availableSlots;
+        } else if (warmup < 0) {
+            warmupLog.add(new long[]{LOG_SLOTS, numberArrivals, availableSlots});
         }
     }
 
@@ -233,24 +533,23 @@ public class MyStatistics {
      */
     public void addEvent(Event event, int availableTransponders) {
         try {
-            if (!firstTime) {
-                MAX_NumTransponders = availableTransponders;
-                firstTime = true;
-            }
             times++;
             if (event instanceof FlowArrivalEvent) {
                 this.numberArrivals++;
+                if (warmup < 0) {
+                    this.warmupArrivals++;
+                    if (modulations == null && MAX_NumTransponders > 0) {
+                        // WDM: utilization of the transponders
+                        utilization = 1.0 - (double) availableTransponders / (double) MAX_NumTransponders;
+                    }
+                    this.warmupUtilization += utilization;
+                }
+                Flow flow = ((FlowArrivalEvent) event).getFlow();
                 if (this.numberArrivals > this.minNumberArrivals) {
-                    this.numTransponders += (long) availableTransponders;
-                    int cos = ((FlowArrivalEvent) event).getFlow().getCOS();
-                    this.arrivals++;
-                    this.arrivalsDiff[cos]++;
-                    this.requiredBandwidth += ((FlowArrivalEvent) event).getFlow().getRate();
-                    this.requiredBandwidthDiff[cos] += ((FlowArrivalEvent) event).getFlow().getRate();
-                    this.arrivalsPairs[((FlowArrivalEvent) event).getFlow().getSource()][((FlowArrivalEvent) event).getFlow().getDestination()]++;
-                    this.arrivalsPairsDiff[((FlowArrivalEvent) event).getFlow().getSource()][((FlowArrivalEvent) event).getFlow().getDestination()][cos]++;
-                    this.requiredBandwidthPairs[((FlowArrivalEvent) event).getFlow().getSource()][((FlowArrivalEvent) event).getFlow().getDestination()] += ((FlowArrivalEvent) event).getFlow().getRate();
-                    this.requiredBandwidthPairsDiff[((FlowArrivalEvent) event).getFlow().getSource()][((FlowArrivalEvent) event).getFlow().getDestination()][cos] += ((FlowArrivalEvent) event).getFlow().getRate();
+                    countArrival(flow.getSource(), flow.getDestination(), flow.getCOS(), flow.getRate(), availableTransponders, weight);
+                } else if (warmup < 0) {
+                    warmupLog.add(new long[]{LOG_ARRIVAL, numberArrivals, flow.getSource(), flow.getDestination(),
+                        flow.getCOS(), flow.getRate(), availableTransponders, Double.doubleToRawLongBits(weight)});
                 }
                 //to print the current progress calls
                 if (Simulator.verbose && (numberArrivals ==  10000*verboseCount)) {
@@ -260,6 +559,8 @@ public class MyStatistics {
             } else if (event instanceof FlowDepartureEvent) {
                 if (this.numberArrivals > this.minNumberArrivals) {
                     this.departures++;
+                } else if (warmup < 0) {
+                    warmupLog.add(new long[]{LOG_DEPARTURE, numberArrivals});
                 }
             }
         } catch (Exception e) {
@@ -268,6 +569,18 @@ public class MyStatistics {
         }
     }
 
+    private void countArrival(int src, int dst, int cos, int rate, int availableTransponders, double weight) {
+        this.numTransponders += (long) availableTransponders;
+        this.arrivals++;
+        this.batchArrivals++;
+        this.weightedArrivals += weight;
+        this.arrivalsDiff[cos]++;
+        this.requiredBandwidth += rate;
+        this.requiredBandwidthDiff[cos] += rate;
+        this.pairs.add(src, dst, cos, PairCounters.ARRIVALS, 1);
+        this.pairs.add(src, dst, cos, PairCounters.REQUIRED_BW, rate);
+    }
+
     /**
      * This function is called during the simulation execution, but only if
      * verbose was activated.
@@ -310,6 +623,19 @@ public class MyStatistics {
         stats += "Required BW \t: " + Long.toString(requiredBandwidth) + "\n";
         stats += "Blocked BW \t: " + Long.toString(blockedBandwidth) + "\n";
         stats += "BBR      \t: " + Float.toString(bbr) + "%\n";
+        if (batchSize > 0) {
+            stats += "BP 95% CI \t: +-" + Float.toString((float) (blockingBatches.getHalfWidth() * 100)) + "% (" + Long.toString(blockingBatches.getBatches()) + " batches)\n";
+        }
+        if (warmupBatch > 0) {
+            if (warmup < 0) {
+                stats += "Warm-up \t: not ended\n";
+            } else {
+                stats += "Warm-up \t: " + Integer.toString(warmup) + " arrivals" + (warmup == warmupEnd ? " (maximum)" : " (MSER-5, found after " + Integer.toString(warmupEnd) + ")") + "\n";
+            }
+        }
+        if (splitting) {
+            stats += "BP splitting \t: " + Float.toString((float) (getWeightedBlocking() * 100)) + "%\n";
+        }
         stats += "Called Blocked by COS (%)" + "\n";
         for (int i = 0; i < numClasses; i++) {
             stats += "BP-" + Integer.toString(i) + " " + Float.toString(bpDiff[i]) + "%\n";
@@ -317,7 +643,7 @@ public class MyStatistics {
         stats += "\nNumber of LPs: " + numLightPaths + "\n";
         double freeTransponders = (float) numTransponders/times; //free transponders/times-requests
         double freeTranspondersRatio = (float) ((freeTransponders*100.0)/MAX_NumTransponders);
-        int nodes = blockedPairs[0].length;
+        int nodes = numNodes;
         stats += "Average of free Transponders by node: " +(double) freeTransponders/nodes + " ("+MAX_NumTransponders/nodes+")\n";
         stats += "Available Transponders ratio: " + freeTranspondersRatio + "%\n";
         double used = (double) this.usedTransponders / (double) accepted;
@@ -340,14 +666,16 @@ public class MyStatistics {
         for (int i = 0; i < numNodes; i++) {
             for (int j = 0; j < numNodes; j++) {
                 if (i != j) {
+                    long arrivalsPair = pairs.get(i, j, PairCounters.ARRIVALS);
+                    long blockedPair = pairs.get(i, j, PairCounters.BLOCKED);
                     stats += "Pair (" + Integer.toString(i) + "->" + Integer.toString(j) + ") ";
-                    stats += "Calls (" + Integer.toString(arrivalsPairs[i][j]) + ")";
-                    if (blockedPairs[i][j] == 0) {
+                    stats += "Calls (" + Long.toString(arrivalsPair) + ")";
+                    if (blockedPair == 0) {
                         blockProb = 0;
                         bbr = 0;
                     } else {
-                        blockProb = ((float) blockedPairs[i][j]) / ((float) arrivalsPairs[i][j]) * 100;
-                        bbr = ((float) blockedBandwidthPairs[i][j]) / ((float) requiredBandwidthPairs[i][j]) * 100;
+                        blockProb = ((float) blockedPair) / ((float) arrivalsPair) * 100;
+                        bbr = ((float) pairs.get(i, j, PairCounters.BLOCKED_BW)) / ((float) pairs.get(i, j, PairCounters.REQUIRED_BW)) * 100;
                     }
                     stats += "\tBP (" + Float.toString(blockProb) + "%)";
                     stats += "\tBBR (" + Float.toString(bbr) + "%)\n";
@@ -434,7 +762,27 @@ public class MyStatistics {
             else{
                 stats += "12";
             }
-
+            if (batchSize > 0 || warmupBatch > 0 || splitting) {
+                stats += ", ";
+            }
+        }
+        if (batchSize > 0) {
+            // half-width of the blocking probability interval, and the arrivals it is based on
+            stats += Float.toString((float) (blockingBatches.getHalfWidth() * 100)) + ", " + Integer.toString(arrivals);
+            if (warmupBatch > 0 || splitting) {
+                stats += ", ";
+            }
+        }
+        if (warmupBatch > 0) {
+            // arrivals discarded by the automatic warm-up detection
+            stats += Integer.toString(warmup);
+            if (splitting) {
+                stats += ", ";
+            }
+        }
+        if (splitting) {
+            // blocking probability from the weighted trajectories
+            stats += Float.toString((float) (getWeightedBlocking() * 100));
         }
         System.out.println(stats);
     }
@@ -485,6 +833,121 @@ public class MyStatistics {
         this.physicalHops += (long) physicalHops;
     }
     
+    /**
+     * Writes all counters to a checkpoint. The setup given to
+     * statisticsSetup is not written.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(numberArrivals);
+        out.writeInt(arrivals);
+        out.writeInt(departures);
+        out.writeInt(accepted);
+        out.writeInt(blocked);
+        out.writeInt(SNRblocked);
+        out.writeInt(Spectrumblocked);
+        out.writeLong(requiredBandwidth);
+        out.writeLong(blockedBandwidth);
+        out.writeLong(SNRblockedBandwidth);
+        out.writeLong(SpectrumblockedBandwidth);
+        out.writeLong(numLightPaths);
+        out.writeLong(numTransponders);
+        out.writeInt(MAX_NumTransponders);
+        out.writeLong(usedTransponders);
+        out.writeLong(times);
+        out.writeLong(availableSlots);
+        out.writeInt(MAX_AvailableSlots);
+        out.writeLong(virtualHops);
+        out.writeLong(physicalHops);
+        out.writeInt(verboseCount);
+        out.writeInt(modulations == null ? -1 : modulations.length);
+        if (modulations != null) {
+            for (long m : modulations) {
+                out.writeLong(m);
+            }
+        }
+        out.writeInt(numClasses);
+        for (int i = 0; i < numClasses; i++) {
+            out.writeInt(arrivalsDiff[i]);
+            out.writeInt(blockedDiff[i]);
+            out.writeLong(requiredBandwidthDiff[i]);
+            out.writeLong(blockedBandwidthDiff[i]);
+        }
+        pairs.writeState(out);
+        out.writeInt(batchArrivals);
+        out.writeInt(batchBlocked);
+        out.writeBoolean(blockingBatches != null);
+        if (blockingBatches != null) {
+            blockingBatches.writeState(out);
+        }
+    }
+
+    /**
+     * Replaces all counters by the ones of a checkpoint. Must be called after
+     * statisticsSetup, with the same topology and classes of service as the
+     * simulation that wrote the checkpoint.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read or does not match
+     * the setup
+     */
+    void readState(DataInputStream in) throws IOException {
+        numberArrivals = in.readInt();
+        arrivals = in.readInt();
+        departures = in.readInt();
+        accepted = in.readInt();
+        blocked = in.readInt();
+        SNRblocked = in.readInt();
+        Spectrumblocked = in.readInt();
+        requiredBandwidth = in.readLong();
+        blockedBandwidth = in.readLong();
+        SNRblockedBandwidth = in.readLong();
+        SpectrumblockedBandwidth = in.readLong();
+        numLightPaths = in.readLong();
+        numTransponders = in.readLong();
+        MAX_NumTransponders = in.readInt();
+        usedTransponders = in.readLong();
+        times = in.readLong();
+        availableSlots = in.readLong();
+        MAX_AvailableSlots = in.readInt();
+        virtualHops = in.readLong();
+        physicalHops = in.readLong();
+        verboseCount = in.readInt();
+        if (in.readInt() != (modulations == null ? -1 : modulations.length)) {
+            throw (new IOException("Checkpoint does not match the statistics setup"));
+        }
+        if (modulations != null) {
+            for (int i = 0; i < modulations.length; i++) {
+                modulations[i] = in.readLong();
+            }
+        }
+        if (in.readInt() != numClasses) {
+            throw (new IOException("Checkpoint does not match the statistics setup"));
+        }
+        for (int i = 0; i < numClasses; i++) {
+            arrivalsDiff[i] = in.readInt();
+            blockedDiff[i] = in.readInt();
+            requiredBandwidthDiff[i] = in.readLong();
+            blockedBandwidthDiff[i] = in.readLong();
+        }
+        pairs.readState(in);
+        batchArrivals = in.readInt();
+        batchBlocked = in.readInt();
+        if (in.readBoolean()) {
+            BatchMeans saved = new BatchMeans();
+            saved.readState(in);
+            if (blockingBatches != null) {
+                blockingBatches = saved;
+            }
+        }
+        if (warmup < 0) {
+            // the warm-up is detected again from here
+            warmupSetup(warmupBatch, warmupMinBatches, warmupMax);
+        }
+    }
+
     /**
      * Terminates the singleton object.
      */
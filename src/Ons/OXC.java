@@ -4,7 +4,10 @@ package Ons;/*
  */
 
 
-import java.util.TreeSet;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
 
 /**
  * The Optical Cross-Connects (OXCs) are present in nodes, for route data
@@ -13,6 +16,10 @@ import java.util.TreeSet;
  * so they can be processed as single units. Grooming in OXCs has the 
  * objective of minimizing the cost of the network.
  * 
+ * The free ports are kept in bitsets (a set bit is a free port) with a
+ * counter of free ports alongside, so reserving and releasing ports does
+ * not allocate.
+ * 
  * @author onsteam
  */
 public abstract class OXC {
@@ -20,8 +27,11 @@ public abstract class OXC {
     protected int id;
     protected int groomingInputPorts;
     protected int groomingOutputPorts;
-    protected TreeSet<Integer> freeGroomingInputPorts;
-    protected TreeSet<Integer> freeGroomingOutputPorts; 
+    protected BitSet freeGroomingInputPorts;
+    protected BitSet freeGroomingOutputPorts;
+    protected int numFreeGroomingInputPorts;
+    protected int numFreeGroomingOutputPorts;
+    private PhysicalTopology pt; // notified when the free input ports change
     
     /**
      * Creates a new Ons.OXC object. All its attributes must be given
@@ -37,8 +47,10 @@ public abstract class OXC {
         this.id = id;
         this.groomingInputPorts = groomingInputPorts;
         this.freeGroomingInputPorts = startGroomingPorts(groomingInputPorts);
+        this.numFreeGroomingInputPorts = groomingInputPorts;
         this.groomingOutputPorts = groomingOutputPorts;
         this.freeGroomingOutputPorts = startGroomingPorts(groomingOutputPorts);
+        this.numFreeGroomingOutputPorts = groomingOutputPorts;
     }
     
     /**
@@ -50,6 +62,34 @@ public abstract class OXC {
         return id;
     }
     
+    /**
+     * Sets the physical topology that keeps the total of free grooming
+     * input ports of all nodes.
+     * 
+     * @param pt the physical topology this Ons.OXC belongs to
+     */
+    void setPhysicalTopology(PhysicalTopology pt) {
+        this.pt = pt;
+    }
+    
+    /**
+     * Retrieves the number of free grooming input ports.
+     * 
+     * @return the number of free grooming input ports
+     */
+    public int getFreeGroomingInputPorts() {
+        return numFreeGroomingInputPorts;
+    }
+    
+    /**
+     * Retrieves the number of free grooming output ports.
+     * 
+     * @return the number of free grooming output ports
+     */
+    public int getFreeGroomingOutputPorts() {
+        return numFreeGroomingOutputPorts;
+    }
+    
     /**
      * Says whether or not a given Ons.OXC has free
      * grooming input port(s).
@@ -57,7 +97,7 @@ public abstract class OXC {
      * @return true if the Ons.OXC has free grooming input port(s)
      */
     public boolean hasFreeGroomingInputPort() {
-        return !freeGroomingInputPorts.isEmpty();
+        return numFreeGroomingInputPorts > 0;
     }
     
     /**
@@ -67,7 +107,7 @@ public abstract class OXC {
      * @return true if the Ons.OXC has all free grooming input port(s)
      */
     public boolean allFreeGroomingInputPort() {
-        return freeGroomingInputPorts.size() == groomingInputPorts;
+        return numFreeGroomingInputPorts == groomingInputPorts;
     }
     
     /**
@@ -77,8 +117,14 @@ public abstract class OXC {
      * @return the number of free grooming input port, if the number is -1 is because has some error
      */
     public int reserveGroomingInputPort() {
-        if (!freeGroomingInputPorts.isEmpty()) {
-            return freeGroomingInputPorts.pollFirst();
+        int port = freeGroomingInputPorts.nextSetBit(0);
+        if (port >= 0) {
+            freeGroomingInputPorts.clear(port);
+            numFreeGroomingInputPorts--;
+            if (pt != null) {
+                pt.updateFreeGroomingInputPorts(-1);
+            }
+            return port;
         } else {
             return -1;//if some lightpath has transponder -1 is because has some error in simulator's code
         }
@@ -93,8 +139,14 @@ public abstract class OXC {
      * @return false if there are no grooming input ports to be freed
      */
     public boolean releaseGroomingInputPort(int groomingInputPort) {
-        if ((freeGroomingInputPorts.size() < groomingInputPorts) && (groomingInputPort >= 0)) {
-            freeGroomingInputPorts.add(groomingInputPort);
+        if ((numFreeGroomingInputPorts < groomingInputPorts) && (groomingInputPort >= 0)) {
+            if (!freeGroomingInputPorts.get(groomingInputPort)) {
+                freeGroomingInputPorts.set(groomingInputPort);
+                numFreeGroomingInputPorts++;
+                if (pt != null) {
+                    pt.updateFreeGroomingInputPorts(1);
+                }
+            }
             return true;
         }
         return false;
@@ -107,7 +159,7 @@ public abstract class OXC {
      * @return true if the Ons.OXC has free grooming output port(s)
      */
     public boolean hasFreeGroomingOutputPort() {
-        return !freeGroomingOutputPorts.isEmpty();
+        return numFreeGroomingOutputPorts > 0;
     }
     
     /**
@@ -117,7 +169,7 @@ public abstract class OXC {
      * @return true if the Ons.OXC has all free grooming output port(s)
      */
     public boolean allFreeGroomingOutputPort() {
-        return freeGroomingOutputPorts.size() == groomingOutputPorts;
+        return numFreeGroomingOutputPorts == groomingOutputPorts;
     }
     
     /**
@@ -127,8 +179,11 @@ public abstract class OXC {
      * @return the number of free grooming output port, if the number is -1 is because has some error
      */
     public int reserveGroomingOutputPort() {
-        if (!freeGroomingOutputPorts.isEmpty()) {
-            return freeGroomingOutputPorts.pollFirst();
+        int port = freeGroomingOutputPorts.nextSetBit(0);
+        if (port >= 0) {
+            freeGroomingOutputPorts.clear(port);
+            numFreeGroomingOutputPorts--;
+            return port;
         } else {
             return -1;
         }
@@ -143,23 +198,75 @@ public abstract class OXC {
      * @return false if there are no grooming output ports to be freed
      */
     public boolean releaseGroomingOutputPort(int groomingOutputPort) {
-        if ((freeGroomingOutputPorts.size() < groomingOutputPorts) && (groomingOutputPort >= 0)) {
-            freeGroomingOutputPorts.add(groomingOutputPort);
+        if ((numFreeGroomingOutputPorts < groomingOutputPorts) && (groomingOutputPort >= 0)) {
+            if (!freeGroomingOutputPorts.get(groomingOutputPort)) {
+                freeGroomingOutputPorts.set(groomingOutputPort);
+                numFreeGroomingOutputPorts++;
+            }
             return true;
         }
         return false;
     }
     
+    /**
+     * Writes the free grooming ports of the Ons.OXC to a checkpoint.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(groomingInputPorts);
+        writePorts(out, freeGroomingInputPorts);
+        out.writeInt(groomingOutputPorts);
+        writePorts(out, freeGroomingOutputPorts);
+    }
+
+    /**
+     * Restores the free grooming ports of the Ons.OXC from a checkpoint. The
+     * physical topology is not notified: it recounts its free ports once all
+     * nodes are restored.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read or does not match
+     * the Ons.OXC
+     */
+    void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != groomingInputPorts) {
+            throw (new IOException("Checkpoint does not match node " + id));
+        }
+        freeGroomingInputPorts = readPorts(in);
+        numFreeGroomingInputPorts = freeGroomingInputPorts.cardinality();
+        if (in.readInt() != groomingOutputPorts) {
+            throw (new IOException("Checkpoint does not match node " + id));
+        }
+        freeGroomingOutputPorts = readPorts(in);
+        numFreeGroomingOutputPorts = freeGroomingOutputPorts.cardinality();
+    }
+
+    private static void writePorts(DataOutputStream out, BitSet ports) throws IOException {
+        long[] words = ports.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readPorts(DataInputStream in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
     /**
      * Start grooming ports from the number of groomingPorts provided.
      * @param groomingPorts the groomingPorts provided
-     * @return the TreeSet with the freeGroomingPorts
+     * @return the BitSet with the freeGroomingPorts
      */
-    private TreeSet<Integer> startGroomingPorts(int groomingPorts){
-        TreeSet<Integer> ports = new TreeSet<>();
-        for(int i = 0; i < groomingPorts; i++){
-            ports.add(i);
-        }
+    private BitSet startGroomingPorts(int groomingPorts){
+        BitSet ports = new BitSet(groomingPorts);
+        ports.set(0, groomingPorts);
         return ports;
     }
     
@@ -0,0 +1,554 @@
+package Ons;
+
+import Ons.Util.WeightedGraph;
+import Ons.Util.YenKSP;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs an EON simulation on a physical topology split in regions
+ * (PhysicalTopology.partition), each with its own event scheduler and
+ * control plane, run by its own thread. A region owns its nodes and the
+ * links leaving them, and is the only one to change their spectrum and
+ * ports. It is enabled by the partition tag of the simulation file.
+ *
+ * Lightpaths are set up by signaling along the path, as Ons.RA.KSP would
+ * choose them: the source region takes the k-shortest paths of the flow;
+ * a probe follows the first one, link by link, and gathers the slots free
+ * on all its links; the destination takes the first slot that fits (First
+ * Fit, QPSK) and its output port; the slots are then reserved on the way
+ * back, link by link, and the source accepts the flow with an input port.
+ * If the slots were taken meanwhile, or nothing fits, what was reserved is
+ * released and the next path is tried; the flow is blocked after the last
+ * one. Each signal takes the delay of the links it crosses
+ * (Link.getDelay, in milliseconds, times the delay scale). A flow whose
+ * lightpath is not set up before its departure is blocked. At departure,
+ * the source releases the lightpath the same way.
+ *
+ * A signal for another region crosses at least one link between regions,
+ * so it arrives at least the lookahead after it is sent, the shortest
+ * delay of those links. The regions therefore run in windows, in parallel:
+ * each handles its events up to the lookahead after the first pending
+ * event of all regions, then the signals sent between regions are
+ * delivered, in region order, which keeps the run deterministic.
+ *
+ * The outcomes of the arrivals are added to Ons.MyStatistics between
+ * windows, in arrival order, with the spectrum and ports then available.
+ * With a single region, the windows are as long as the shortest link delay.
+ * The stop rule is checked after each one, and ends the run at the end of
+ * the window.
+ *
+ * @author onsteam
+ */
+public class PartitionedRunner {
+
+    // the paths tried and the modulation used, as in Ons.RA.KSP
+    private static final int KSP = 3;
+    private static final int MODULATION = Modulation._QPSK;
+
+    private static final int ARRIVAL = 0;
+    private static final int DEPARTURE = 1;
+    private static final int PROBE = 2;
+    private static final int DESTINATION = 3;
+    private static final int RESERVE = 4;
+    private static final int REFUSE = 5;
+    private static final int RELEASE_SLOTS = 6;
+    private static final int RELEASE_PORT = 7;
+
+    private static final int PENDING = 0;
+    private static final int ACCEPTED = 1;
+    private static final int BLOCKED = 2;
+
+    private final EONPhysicalTopology pt;
+    private final WeightedGraph graph;
+    private final int[] nodeRegion;
+    private final double[] delay;
+    private final double lookahead;
+    private final Region[] regions;
+    private long windows;
+    private long signals;
+
+    /**
+     * Creates a new Ons.PartitionedRunner object, and runs the simulation.
+     *
+     * @param pt the simulation's physical topology
+     * @param events the simulation's event scheduler
+     * @param numRegions the number of regions
+     * @param delayScale the simulation time of one millisecond of link delay
+     */
+    public PartitionedRunner(EONPhysicalTopology pt, EventScheduler events, int numRegions, double delayScale) {
+        if (numRegions < 1 || numRegions > pt.getNumNodes() || !(delayScale > 0)) {
+            throw (new IllegalArgumentException());
+        }
+        this.pt = pt;
+        this.graph = pt.getWeightedGraph();
+        this.nodeRegion = pt.partition(numRegions);
+        this.delay = new double[pt.getNumLinks()];
+        double shortest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < delay.length; i++) {
+            Link link = pt.getLink(i);
+            delay[i] = link.getDelay() * delayScale;
+            if (nodeRegion[link.getSource()] != nodeRegion[link.getDestination()]) {
+                shortest = Math.min(shortest, delay[i]);
+            }
+        }
+        if (shortest == Double.POSITIVE_INFINITY) {
+            // a single region: the windows only pace the statistics
+            for (double d : delay) {
+                shortest = Math.min(shortest, d);
+            }
+        }
+        if (!(shortest > 0)) {
+            throw (new IllegalArgumentException("the links between regions, or all links with a single region, must have a positive delay"));
+        }
+        this.lookahead = shortest;
+        this.regions = new Region[numRegions];
+        for (int r = 0; r < numRegions; r++) {
+            regions[r] = new Region(r);
+        }
+        // the nodes change the total of free ports of the topology, which is recounted at the end
+        for (int n = 0; n < pt.getNumNodes(); n++) {
+            pt.getNode(n).setPhysicalTopology(null);
+            regions[nodeRegion[n]].freePorts += pt.getNode(n).getFreeGroomingInputPorts();
+        }
+        for (int i = 0; i < delay.length; i++) {
+            regions[owner(i)].freeSlots += ((EONLink) pt.getLink(i)).getAvaiableSlots();
+        }
+        ArrayList<Setup> setups = new ArrayList<>();
+        HashMap<Long, Setup> active = new HashMap<>();
+        Event event;
+        while ((event = events.popEvent()) != null) {
+            if (event instanceof FlowArrivalEvent) {
+                Setup setup = new Setup(setups.size(), (FlowArrivalEvent) event);
+                setups.add(setup);
+                active.put(setup.flow.getID(), setup);
+                schedule(new Signal(ARRIVAL, setup, 0, 0, 0, nodeRegion[setup.flow.getSource()], event.getTime()));
+            } else if (event instanceof FlowDepartureEvent) {
+                Setup setup = active.remove(((FlowDepartureEvent) event).getID());
+                if (setup != null) {
+                    setup.departure = (FlowDepartureEvent) event;
+                    schedule(new Signal(DEPARTURE, setup, 0, 0, 0, nodeRegion[setup.flow.getSource()], event.getTime()));
+                }
+            }
+        }
+        ExecutorService threads = Executors.newFixedThreadPool(numRegions);
+        try {
+            run(threads, setups);
+        } finally {
+            threads.shutdownNow();
+            pt.registerNodes();
+        }
+    }
+
+    private void run(ExecutorService threads, ArrayList<Setup> setups) {
+        MyStatistics st = MyStatistics.getMyStatisticsObject();
+        List<Region> all = Arrays.asList(regions);
+        int next = 0;
+        for (;;) {
+            double start = Double.POSITIVE_INFINITY;
+            for (Region region : regions) {
+                Event first = region.events.peekEvent();
+                if (first != null) {
+                    start = Math.min(start, first.getTime());
+                }
+            }
+            if (start == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            for (Region region : regions) {
+                region.bound = start + lookahead;
+            }
+            try {
+                for (Future<Void> done : threads.invokeAll(all)) {
+                    done.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (new IllegalStateException(e));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw (new IllegalStateException(e.getCause()));
+            }
+            windows++;
+            for (Region region : regions) {
+                for (Signal signal : region.outbox) {
+                    regions[signal.region].events.addEvent(signal);
+                }
+                signals += region.outbox.size();
+                region.outbox.clear();
+            }
+            int availableSlots = 0, availablePorts = 0;
+            for (Region region : regions) {
+                availableSlots += region.freeSlots;
+                availablePorts += region.freePorts;
+            }
+            while (next < setups.size() && setups.get(next).outcome != PENDING) {
+                Setup setup = setups.get(next++);
+                st.addEvent(setup.arrival, availableSlots, availablePorts);
+                if (setup.outcome == ACCEPTED) {
+                    st.createLightpath(setup.lightpath);
+                    st.userTransponder(1);
+                    st.acceptFlow(setup.flow, new LightPath[]{setup.lightpath});
+                } else {
+                    st.blockFlow(setup.flow);
+                }
+                st.arrivalHandled();
+                if (setup.departed) {
+                    depart(st, setup, availableSlots, availablePorts);
+                }
+                if (st.isConverged()) {
+                    return;
+                }
+            }
+            for (Region region : regions) {
+                for (Setup setup : region.departed) {
+                    // the others are added with their arrival
+                    if (setup.seq < next && !setup.departureCounted) {
+                        depart(st, setup, availableSlots, availablePorts);
+                    }
+                }
+                region.departed.clear();
+            }
+        }
+    }
+
+    private void depart(MyStatistics st, Setup setup, int availableSlots, int availablePorts) {
+        st.addEvent(setup.departure, availableSlots, availablePorts);
+        setup.departureCounted = true;
+    }
+
+    // adds a signal of the partitioning to the scheduler of its region
+    private void schedule(Signal signal) {
+        regions[signal.region].events.addEvent(signal);
+    }
+
+    // the region that changes a link
+    private int owner(int link) {
+        return nodeRegion[pt.getLink(link).getSource()];
+    }
+
+    /**
+     * Retrieves the number of windows the regions were run in.
+     *
+     * @return the number of windows
+     */
+    public long getWindows() {
+        return windows;
+    }
+
+    /**
+     * Retrieves the number of signals sent from a region to another.
+     *
+     * @return the number of signals between regions
+     */
+    public long getSignals() {
+        return signals;
+    }
+
+    /**
+     * Retrieves the lookahead of the regions, the shortest delay of the
+     * links between them, or of all links if there is a single region.
+     *
+     * @return the lookahead, in simulation time
+     */
+    public double getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * The setup of a flow: the path tried, the slots still free on the links
+     * probed, and the outcome.
+     */
+    private static class Setup {
+
+        private final int seq;
+        private final FlowArrivalEvent arrival;
+        private final Flow flow;
+        private FlowDepartureEvent departure;
+        private int requiredSlots;
+        private int[][] paths;
+        private int path;
+        private int[] links;
+        private BitSet free;
+        private int firstSlot;
+        private int outputPort;
+        private int inputPort;
+        private EONLightPath lightpath;
+        private int outcome = PENDING;
+        private boolean departed;
+        private boolean departureCounted;
+
+        private Setup(int seq, FlowArrivalEvent arrival) {
+            this.seq = seq;
+            this.arrival = arrival;
+            this.flow = arrival.getFlow();
+        }
+    }
+
+    /**
+     * An event of a region: the arrival or departure of a flow, or a signal
+     * of its setup or release. The slots and port released are carried by
+     * the signal, as the setup may meanwhile try another path.
+     */
+    private static class Signal extends Event {
+
+        private final int kind;
+        private final Setup setup;
+        private final int hop;
+        private final int first;
+        private final int last;
+        private final int region;
+
+        private Signal(int kind, Setup setup, int hop, int first, int last, int region, double time) {
+            this.kind = kind;
+            this.setup = setup;
+            this.hop = hop;
+            this.first = first;
+            this.last = last;
+            this.region = region;
+            setTime(time);
+        }
+    }
+
+    /**
+     * A region: its scheduler, and the control plane that handles the
+     * signals reaching its nodes and links.
+     */
+    private class Region implements Callable<Void> {
+
+        private final int id;
+        private final EventScheduler events = new EventScheduler();
+        private final ArrayList<Signal> outbox = new ArrayList<>();
+        private final ArrayList<Setup> departed = new ArrayList<>();
+        private final HashMap<Integer, int[][]> paths = new HashMap<>();
+        private double bound;
+        private int freeSlots;
+        private int freePorts;
+
+        private Region(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Handles the events before the bound of the window.
+         */
+        @Override
+        public Void call() {
+            Event event;
+            while ((event = events.peekEvent()) != null && event.getTime() < bound) {
+                events.popEvent();
+                handle((Signal) event);
+            }
+            return null;
+        }
+
+        private void handle(Signal signal) {
+            Setup setup = signal.setup;
+            double time = signal.getTime();
+            switch (signal.kind) {
+                case ARRIVAL:
+                    arrival(setup, time);
+                    break;
+                case DEPARTURE:
+                    setup.departed = true;
+                    departed.add(setup);
+                    if (setup.outcome == ACCEPTED) {
+                        pt.getNode(setup.flow.getSource()).releaseGroomingInputPort(setup.inputPort);
+                        freePorts++;
+                        release(setup, time);
+                    }
+                    break;
+                case PROBE:
+                    probe(setup, signal.hop, time);
+                    break;
+                case DESTINATION:
+                    destination(setup, time);
+                    break;
+                case RESERVE:
+                    reserve(setup, signal.hop, time);
+                    break;
+                case REFUSE:
+                    next(setup, time);
+                    break;
+                case RELEASE_SLOTS:
+                    releaseSlots(signal.hop, signal.first, signal.last);
+                    break;
+                default:
+                    pt.getNode(signal.hop).releaseGroomingOutputPort(signal.first);
+                    break;
+            }
+        }
+
+        private void arrival(Setup setup, double time) {
+            Flow flow = setup.flow;
+            EONOXC source = (EONOXC) pt.getNode(flow.getSource());
+            EONOXC destination = (EONOXC) pt.getNode(flow.getDestination());
+            setup.requiredSlots = Modulation.convertRateToSlot(flow.getRate(), EONPhysicalTopology.getSlotSize(), MODULATION);
+            if (!source.hasModulation(MODULATION) || !destination.hasModulation(MODULATION)
+                    || source.getCapacity() < setup.requiredSlots || !source.hasFreeGroomingInputPort()) {
+                // no path would do
+                setup.outcome = BLOCKED;
+                return;
+            }
+            int pair = flow.getSource() * pt.getNumNodes() + flow.getDestination();
+            setup.paths = paths.get(pair);
+            if (setup.paths == null) {
+                setup.paths = paths(flow.getSource(), flow.getDestination());
+                paths.put(pair, setup.paths);
+            }
+            setup.path = -1;
+            next(setup, time);
+        }
+
+        // tries the next path at the source, or blocks the flow
+        private void next(Setup setup, double time) {
+            setup.path++;
+            if (setup.departed || setup.path >= setup.paths.length || setup.paths[setup.path] == null) {
+                setup.outcome = BLOCKED;
+                return;
+            }
+            setup.links = setup.paths[setup.path];
+            probe(setup, 0, time);
+        }
+
+        // gathers the slots free on a link, and sends the probe on
+        private void probe(Setup setup, int hop, double time) {
+            EONLink link = (EONLink) pt.getLink(setup.links[hop]);
+            BitSet free = new BitSet(link.getNumSlots());
+            for (int slot : link.getSlotsAvailableToArray(setup.requiredSlots)) {
+                free.set(slot);
+            }
+            if (hop == 0) {
+                setup.free = free;
+            } else {
+                setup.free.and(free);
+            }
+            if (setup.free.isEmpty()) {
+                send(REFUSE, setup, 0, 0, 0, nodeRegion[setup.flow.getSource()], time + back(setup, hop));
+            } else if (hop + 1 < setup.links.length) {
+                send(PROBE, setup, hop + 1, 0, 0, owner(setup.links[hop + 1]), time + delay[setup.links[hop]]);
+            } else {
+                send(DESTINATION, setup, 0, 0, 0, nodeRegion[setup.flow.getDestination()], time + delay[setup.links[hop]]);
+            }
+        }
+
+        // takes the first slot that fits and the output port, and starts the reservation
+        private void destination(Setup setup, double time) {
+            OXC node = pt.getNode(setup.flow.getDestination());
+            int last = setup.links.length - 1;
+            if (!node.hasFreeGroomingOutputPort()) {
+                send(REFUSE, setup, 0, 0, 0, nodeRegion[setup.flow.getSource()], time + back(setup, setup.links.length));
+                return;
+            }
+            setup.outputPort = node.reserveGroomingOutputPort();
+            setup.firstSlot = setup.free.nextSetBit(0);
+            send(RESERVE, setup, last, 0, 0, owner(setup.links[last]), time + delay[setup.links[last]]);
+        }
+
+        // reserves the slots on a link, on the way back to the source
+        private void reserve(Setup setup, int hop, double time) {
+            EONLink link = (EONLink) pt.getLink(setup.links[hop]);
+            int lastSlot = setup.firstSlot + setup.requiredSlots - 1;
+            if (link.areSlotsAvaiable(setup.firstSlot, lastSlot)) {
+                int before = link.getAvaiableSlots();
+                link.reserveSlots(setup.flow.getID(), setup.firstSlot, lastSlot);
+                freeSlots += link.getAvaiableSlots() - before;
+                if (hop > 0) {
+                    send(RESERVE, setup, hop - 1, 0, 0, owner(setup.links[hop - 1]), time + delay[setup.links[hop - 1]]);
+                } else {
+                    established(setup, time);
+                }
+                return;
+            }
+            // taken since the probe: release the links after this one and the destination port
+            double ahead = 0;
+            for (int j = hop + 1; j < setup.links.length; j++) {
+                ahead += delay[setup.links[j - 1]];
+                send(RELEASE_SLOTS, setup, setup.links[j], setup.firstSlot, lastSlot, owner(setup.links[j]), time + ahead);
+            }
+            ahead += delay[setup.links[setup.links.length - 1]];
+            send(RELEASE_PORT, setup, setup.flow.getDestination(), setup.outputPort, 0, nodeRegion[setup.flow.getDestination()], time + ahead);
+            send(REFUSE, setup, 0, 0, 0, nodeRegion[setup.flow.getSource()], time + back(setup, hop));
+        }
+
+        // the slots are reserved on the whole path: accepts the flow at the source
+        private void established(Setup setup, double time) {
+            OXC node = pt.getNode(setup.flow.getSource());
+            if (setup.departed || !node.hasFreeGroomingInputPort()) {
+                release(setup, time);
+                next(setup, time);
+                return;
+            }
+            setup.inputPort = node.reserveGroomingInputPort();
+            freePorts--;
+            setup.lightpath = new EONLightPath(setup.flow.getID(), setup.flow.getSource(), setup.flow.getDestination(), setup.links,
+                    setup.firstSlot, setup.firstSlot + setup.requiredSlots - 1, MODULATION, EONPhysicalTopology.getSlotSize());
+            setup.outcome = ACCEPTED;
+        }
+
+        // releases the slots of the path and the destination port, from the source
+        private void release(Setup setup, double time) {
+            int lastSlot = setup.firstSlot + setup.requiredSlots - 1;
+            releaseSlots(setup.links[0], setup.firstSlot, lastSlot);
+            double ahead = 0;
+            for (int j = 1; j < setup.links.length; j++) {
+                ahead += delay[setup.links[j - 1]];
+                send(RELEASE_SLOTS, setup, setup.links[j], setup.firstSlot, lastSlot, owner(setup.links[j]), time + ahead);
+            }
+            ahead += delay[setup.links[setup.links.length - 1]];
+            send(RELEASE_PORT, setup, setup.flow.getDestination(), setup.outputPort, 0, nodeRegion[setup.flow.getDestination()], time + ahead);
+        }
+
+        private void releaseSlots(int linkID, int first, int last) {
+            EONLink link = (EONLink) pt.getLink(linkID);
+            int before = link.getAvaiableSlots();
+            link.releaseSlots(first, last);
+            freeSlots += link.getAvaiableSlots() - before;
+        }
+
+        // the delay from the source to a hop of the path
+        private double back(Setup setup, int hop) {
+            double back = 0;
+            for (int j = 0; j < hop; j++) {
+                back += delay[setup.links[j]];
+            }
+            return back;
+        }
+
+        // a signal for this region is handled in this window if it is due, the others wait for its end
+        private void send(int kind, Setup setup, int hop, int first, int last, int region, double time) {
+            Signal signal = new Signal(kind, setup, hop, first, last, region, time);
+            if (region == id) {
+                events.addEvent(signal);
+            } else {
+                outbox.add(signal);
+            }
+        }
+
+        // the links of the k-shortest paths, null for the paths not found
+        private int[][] paths(int source, int destination) {
+            ArrayList<Integer>[] kpaths = YenKSP.kShortestPaths(graph, source, destination, KSP);
+            int[][] links = new int[kpaths.length][];
+            for (int k = 0; k < kpaths.length; k++) {
+                if (kpaths[k] == null || kpaths[k].size() < 2) {
+                    continue;
+                }
+                links[k] = new int[kpaths[k].size() - 1];
+                for (int j = 0; j < links[k].length; j++) {
+                    links[k][j] = pt.getLink(kpaths[k].get(j), kpaths[k].get(j + 1)).getID();
+                }
+            }
+            return links;
+        }
+    }
+}
@@ -7,6 +7,14 @@ package Ons;/*
 import Ons.RA.*;
 import Ons.Util.*;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.w3c.dom.*;
 
 /**
@@ -22,7 +30,12 @@ public abstract class PhysicalTopology {
     protected int links;
     protected OXC[] nodeVector;
     protected Link[] linkVector;
-    protected Link[][] adjMatrix;
+    protected int[] adjOffsets; // out-edges of node i are adjLinks[adjOffsets[i]..adjOffsets[i + 1])
+    protected int[] adjLinks; // link ids grouped by source node, sorted by destination
+    protected int[] adjDst; // destination node of each entry in adjLinks
+    protected int[] inOffsets; // in-edges of node i are inLinks[inOffsets[i]..inOffsets[i + 1])
+    protected int[] inLinks; // link ids grouped by destination node, in id order
+    private int freeGroomingInputPorts; // sum over all nodes, kept up to date by the nodes
 
     /**
      * Creates a new Ons.PhysicalTopology object. Takes the XML file containing all
@@ -75,11 +88,74 @@ public abstract class PhysicalTopology {
      * @return the number of grooming input ports from all nodes
      */
     public int getAllFreeGroomingInputPorts(){
-        int ports = 0;
-        for(int i = 0; i < nodes; i++){
-            ports = ports + this.getNode(i).freeGroomingInputPorts.size();
+        return freeGroomingInputPorts;
+    }
+
+    /**
+     * Updates the total of free grooming input ports. Called by the nodes
+     * whenever they reserve or release an input port.
+     *
+     * @param delta the change in the number of free ports
+     */
+    void updateFreeGroomingInputPorts(int delta) {
+        freeGroomingInputPorts += delta;
+    }
+
+    /**
+     * Attaches the nodes of the nodeVector to this topology and initializes
+     * the total of free grooming input ports. Subclasses must call it once all
+     * nodes have been created.
+     */
+    protected void registerNodes() {
+        freeGroomingInputPorts = 0;
+        for (OXC node : nodeVector) {
+            if (node != null) {
+                node.setPhysicalTopology(this);
+                freeGroomingInputPorts += node.getFreeGroomingInputPorts();
+            }
         }
-        return ports;
+    }
+
+    /**
+     * Writes the occupancy of all nodes and links to a checkpoint.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(nodeVector.length);
+        out.writeInt(linkVector.length);
+        for (OXC node : nodeVector) {
+            if (node != null) {
+                node.writeState(out);
+            }
+        }
+        for (Link link : linkVector) {
+            link.writeState(out);
+        }
+    }
+
+    /**
+     * Restores the occupancy of all nodes and links from a checkpoint taken
+     * on the same topology, and recounts the free grooming input ports.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read or was taken on
+     * another topology
+     */
+    void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != nodeVector.length || in.readInt() != linkVector.length) {
+            throw (new IOException("Checkpoint does not match the physical topology"));
+        }
+        for (OXC node : nodeVector) {
+            if (node != null) {
+                node.readState(in);
+            }
+        }
+        for (Link link : linkVector) {
+            link.readState(in);
+        }
+        registerNodes();
     }
 
     /**
@@ -99,19 +175,31 @@ public abstract class PhysicalTopology {
      *
      * @param src the link's source node
      * @param dst the link's destination node
-     * @return the specified link from the Ons.PhysicalTopology's adjMatrix
+     * @return the specified link, or null if there is no link between the nodes
      */
     public Link getLink(int src, int dst) {
-        return adjMatrix[src][dst];
+        int k = findAdjacency(src, dst);
+        if (k < 0) {
+            return null;
+        }
+        return linkVector[adjLinks[k]];
     }
 
     /**
      * Retrives a given Ons.PhysicalTopology's adjancency matrix, which contains the
      * links between source and destination nodes.
      *
-     * @return the Ons.PhysicalTopology's adjMatrix
+     * The matrix is not kept by the topology; it is materialized from the
+     * compressed adjacency on every call, so it costs O(n^2) memory.
+     *
+     * @return the Ons.PhysicalTopology's adjacency matrix
      */
     public Link[][] getAdjMatrix() {
+        Link[][] adjMatrix = new Link[nodes][nodes];
+        for (int k = 0; k < adjLinks.length; k++) {
+            Link link = linkVector[adjLinks[k]];
+            adjMatrix[link.src][link.dst] = link;
+        }
         return adjMatrix;
     }
 
@@ -120,17 +208,260 @@ public abstract class PhysicalTopology {
      *
      * @param node1 possible link's source node
      * @param node2 possible link's destination node
-     * @return true if the link exists in the Ons.PhysicalTopology's adjMatrix
+     * @return true if the link exists in the Ons.PhysicalTopology
      */
     public boolean hasLink(int node1, int node2) {
-        return adjMatrix[node1][node2] != null;
+        return findAdjacency(node1, node2) >= 0;
+    }
+
+    /**
+     * Retrieves the number of links leaving a given node.
+     *
+     * @param node the node
+     * @return the out-degree of the node
+     */
+    public int getOutDegree(int node) {
+        return adjOffsets[node + 1] - adjOffsets[node];
+    }
+
+    /**
+     * Retrieves one of the links leaving a given node. Links are ordered by
+     * their destination node, so iterating index from 0 to
+     * getOutDegree(node) - 1 visits the neighbors in increasing order.
+     *
+     * @param node the source node
+     * @param index the position of the link among the node's out-links
+     * @return the link
+     */
+    public Link getOutLink(int node, int index) {
+        if (index < 0 || index >= getOutDegree(node)) {
+            throw (new IllegalArgumentException());
+        }
+        return linkVector[adjLinks[adjOffsets[node] + index]];
+    }
+
+    /**
+     * Retrieves the number of links arriving at a given node.
+     *
+     * @param node the node
+     * @return the in-degree of the node
+     */
+    public int getInDegree(int node) {
+        return inOffsets[node + 1] - inOffsets[node];
+    }
+
+    /**
+     * Retrieves one of the links arriving at a given node, in id order.
+     *
+     * @param node the destination node
+     * @param index the position of the link among the node's in-links
+     * @return the link
+     */
+    public Link getInLink(int node, int index) {
+        if (index < 0 || index >= getInDegree(node)) {
+            throw (new IllegalArgumentException());
+        }
+        return linkVector[inLinks[inOffsets[node] + index]];
+    }
+
+    /**
+     * Splits the nodes in regions of neighboring nodes, of about the same
+     * size. The seeds of the regions are node 0, then each time the node the
+     * most hops away from the seeds already chosen; the regions then grow
+     * breadth-first, one node at a time, the smallest one first.
+     *
+     * @param regions the number of regions
+     * @return the region of each node
+     */
+    public int[] partition(int regions) {
+        if (regions < 1 || regions > nodes) {
+            throw (new IllegalArgumentException());
+        }
+        int[] region = new int[nodes];
+        Arrays.fill(region, -1);
+        int[] size = new int[regions];
+        List<ArrayDeque<Integer>> frontier = new ArrayList<>();
+        int[] distance = hops(0);
+        for (int r = 0; r < regions; r++) {
+            int seed = 0;
+            if (r > 0) {
+                for (int n = 0; n < nodes; n++) {
+                    if (region[n] < 0 && (region[seed] >= 0 || distance[n] > distance[seed])) {
+                        seed = n;
+                    }
+                }
+                int[] from = hops(seed);
+                for (int n = 0; n < nodes; n++) {
+                    distance[n] = Math.min(distance[n], from[n]);
+                }
+            }
+            region[seed] = r;
+            size[r] = 1;
+            frontier.add(new ArrayDeque<>());
+            frontier.get(r).add(seed);
+        }
+        for (;;) {
+            int r = -1;
+            for (int i = 0; i < regions; i++) {
+                if (!frontier.get(i).isEmpty() && (r < 0 || size[i] < size[r])) {
+                    r = i;
+                }
+            }
+            if (r < 0) {
+                break;
+            }
+            // the smallest region takes one more node
+            int node = frontier.get(r).peek();
+            int next = -1;
+            for (int i = 0; i < getOutDegree(node) && next < 0; i++) {
+                if (region[getOutLink(node, i).getDestination()] < 0) {
+                    next = getOutLink(node, i).getDestination();
+                }
+            }
+            if (next < 0) {
+                frontier.get(r).poll();
+                continue;
+            }
+            region[next] = r;
+            size[r]++;
+            frontier.get(r).add(next);
+        }
+        // nodes unreachable from the seeds go to the smallest regions
+        for (int n = 0; n < nodes; n++) {
+            if (region[n] < 0) {
+                int r = 0;
+                for (int i = 1; i < regions; i++) {
+                    if (size[i] < size[r]) {
+                        r = i;
+                    }
+                }
+                region[n] = r;
+                size[r]++;
+            }
+        }
+        return region;
+    }
+
+    private int[] hops(int source) {
+        int[] distance = new int[nodes];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        distance[source] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(source);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < getOutDegree(node); i++) {
+                int next = getOutLink(node, i).getDestination();
+                if (distance[next] == Integer.MAX_VALUE) {
+                    distance[next] = distance[node] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Builds the compressed adjacency (out-edge and in-edge arrays per node)
+     * from the linkVector. Subclasses must call it once all links have been created.
+     * If there are parallel links between the same pair of nodes, the one
+     * with the highest id is returned by getLink(src, dst).
+     */
+    protected void buildAdjacency() {
+        int count = 0;
+        adjOffsets = new int[nodes + 1];
+        for (Link link : linkVector) {
+            if (link != null) {
+                adjOffsets[link.src + 1]++;
+                count++;
+            }
+        }
+        for (int i = 0; i < nodes; i++) {
+            adjOffsets[i + 1] += adjOffsets[i];
+        }
+        adjLinks = new int[count];
+        adjDst = new int[count];
+        int[] next = new int[nodes];
+        System.arraycopy(adjOffsets, 0, next, 0, nodes);
+        for (Link link : linkVector) {
+            if (link != null) {
+                adjLinks[next[link.src]++] = link.id;
+            }
+        }
+        // Sort each node's out-links by (destination, id); degrees are small
+        for (int i = 0; i < nodes; i++) {
+            for (int k = adjOffsets[i] + 1; k < adjOffsets[i + 1]; k++) {
+                int id = adjLinks[k];
+                int j = k - 1;
+                while (j >= adjOffsets[i] && compareAdjacency(adjLinks[j], id) > 0) {
+                    adjLinks[j + 1] = adjLinks[j];
+                    j--;
+                }
+                adjLinks[j + 1] = id;
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            adjDst[k] = linkVector[adjLinks[k]].dst;
+        }
+        // In-links, in id order as the linkVector is walked in order
+        inOffsets = new int[nodes + 1];
+        for (Link link : linkVector) {
+            if (link != null) {
+                inOffsets[link.dst + 1]++;
+            }
+        }
+        for (int i = 0; i < nodes; i++) {
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        inLinks = new int[count];
+        System.arraycopy(inOffsets, 0, next, 0, nodes);
+        for (Link link : linkVector) {
+            if (link != null) {
+                inLinks[next[link.dst]++] = link.id;
+            }
+        }
+    }
+
+    /**
+     * Orders two links by destination node and then by id.
+     */
+    private int compareAdjacency(int link1, int link2) {
+        if (linkVector[link1].dst != linkVector[link2].dst) {
+            return linkVector[link1].dst < linkVector[link2].dst ? -1 : 1;
+        }
+        return link1 < link2 ? -1 : (link1 > link2 ? 1 : 0);
+    }
+
+    /**
+     * Binary searches the out-links of src for a link ending in dst.
+     *
+     * @param src the source node
+     * @param dst the destination node
+     * @return the position in adjLinks of the last link src->dst, or -1 if
+     * there is none
+     */
+    private int findAdjacency(int src, int dst) {
+        int lo = adjOffsets[src], hi = adjOffsets[src + 1];
+        // first position with adjDst > dst
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (adjDst[mid] <= dst) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo > adjOffsets[src] && adjDst[lo - 1] == dst) {
+            return lo - 1;
+        }
+        return -1;
     }
 
     /**
      * Checks if a path made of links makes sense by checking its continuity
      *
      * @param links to be checked
-     * @return true if the link exists in the Ons.PhysicalTopology's adjMatrix
+     * @return true if the links form a continuous path
      */
     public boolean checkLinkPath(int links[]) {
         for (int i = 0; i < links.length - 1; i++) {
@@ -150,12 +481,9 @@ public abstract class PhysicalTopology {
      */
     public WeightedGraph getWeightedGraph() {
         WeightedGraph g = new WeightedGraph(nodes);
-        for (int i = 0; i < nodes; i++) {
-            for (int j = 0; j < nodes; j++) {
-                if (hasLink(i, j)) {
-                    g.addEdge(i, j, getLink(i, j).getWeight());
-                }
-            }
+        for (int k = 0; k < adjLinks.length; k++) {
+            Link link = linkVector[adjLinks[k]];
+            g.addEdge(link.src, link.dst, link.getWeight());
         }
         return g;
     }
@@ -197,19 +525,20 @@ public abstract class PhysicalTopology {
     /**
      * Prints all nodes and links between them in the Ons.PhysicalTopology object.
      *
-     * @return string containing the Ons.PhysicalTopology's adjMatrix values
+     * @return string containing the Ons.PhysicalTopology's links
      */
     @Override
     public String toString() {
-        String topo = "";
-        for (int i = 0; i < nodes; i++) {
-            for (int j = 0; j < nodes; j++) {
-                if (adjMatrix[i][j] != null) {
-                    topo += adjMatrix[i][j].toString() + "\n\n";
-                }
+        StringBuilder topo = new StringBuilder();
+        for (int k = 0; k < adjLinks.length; k++) {
+            // parallel links are hidden behind the last one, as getLink(src, dst) does
+            if (k + 1 < adjLinks.length && adjDst[k + 1] == adjDst[k]
+                    && linkVector[adjLinks[k + 1]].src == linkVector[adjLinks[k]].src) {
+                continue;
             }
+            topo.append(linkVector[adjLinks[k]].toString()).append("\n\n");
         }
-        return topo;
+        return topo.toString();
     }
 
     public abstract void createPhysicalLightpath(LightPath lp);
@@ -227,4 +556,12 @@ public abstract class PhysicalTopology {
     public abstract void addFlow(Flow flow, LightPath lightpath);
 
     public abstract void removeFlow(Flow flow, LightPath lightpath);
+
+    /**
+     * Retrieves the fraction of the network capacity in use: reserved
+     * wavelengths in WDM, occupied slots in EON, over all links.
+     *
+     * @return the occupancy, between 0 and 1
+     */
+    public abstract double getOccupancy();
 }
@@ -9,6 +9,8 @@ import Ons.*;
 import Ons.Util.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 /**
  * The proposed Xin Wan.
@@ -18,7 +20,7 @@ import java.util.ArrayList;
  * Aug 2012.
  * @author onsteam
  */
-public class KSP implements RA {
+public class KSP implements SpeculativeRA {
     
     private ControlPlaneForRA cp;
     private WeightedGraph graph;
@@ -34,33 +36,197 @@ public class KSP implements RA {
 
     @Override
     public void flowArrival(Flow flow) {
-        int[] nodes;
-        int[] links;
-        long id;
-        LightPath[] lps = new LightPath[1];
-        
         // Set k=4
         int ksp = 3;
         
         // k-Shortest Paths routing
+        allocate(flow, links(YenKSP.kShortestPaths(graph, flow.getSource(), flow.getDestination(), ksp)));
+    }
+
+    /**
+     * Decides a batch of flows, the largest first, as they are the hardest
+     * to fit once the spectrum is fragmented by the smaller ones. The
+     * k-shortest paths of each pair of nodes are computed once per batch.
+     *
+     * @param flows the flows, in arrival order
+     */
+    @Override
+    public void flowArrivals(Flow[] flows) {
+        int ksp = 3;
+        Flow[] sorted = flows.clone();
+        // stable, so flows of the same rate keep their arrival order
+        Arrays.sort(sorted, (a, b) -> Integer.compare(b.getRate(), a.getRate()));
+        HashMap<Integer, int[][]> paths = new HashMap<>();
+        int numNodes = cp.getPT().getNumNodes();
+        for (Flow flow : sorted) {
+            int pair = flow.getSource() * numNodes + flow.getDestination();
+            int[][] links = paths.get(pair);
+            if (links == null) {
+                links = links(YenKSP.kShortestPaths(graph, flow.getSource(), flow.getDestination(), ksp));
+                paths.put(pair, links);
+            }
+            allocate(flow, links);
+        }
+    }
+
+    /**
+     * Takes the decision of flowArrival without changing the network: the
+     * first path and slot on which a lightpath can be created and the flow
+     * accepted, or blocking.
+     *
+     * @param flow the flow
+     * @return the decision
+     */
+    @Override
+    public Plan plan(Flow flow) {
+        int ksp = 3;
+        int[][] paths = links(YenKSP.kShortestPaths(graph, flow.getSource(), flow.getDestination(), ksp));
+        int requiredSlots = Modulation.convertRateToSlot(flow.getRate(), EONPhysicalTopology.getSlotSize(), modulation);
+        for (int k = 0; k < paths.length; k++) {
+            if (paths[k] == null) {
+                return new Plan(new Choice(paths, k, null, 0));
+            }
+            int firstSlot = firstFit(flow, paths[k], requiredSlots, Integer.MAX_VALUE);
+            if (firstSlot >= 0) {
+                EONLightPath lp = cp.createCandidateEONLightPath(flow.getSource(), flow.getDestination(), paths[k],
+                        firstSlot, (firstSlot + requiredSlots - 1), modulation);
+                if (cp.getPT().canAddFlow(flow, lp)) {
+                    return new Plan(new Choice(paths, k, paths[k], firstSlot));
+                }
+                // accepting would fail: left to allocate
+                return new Plan(new Choice(paths, k, null, -1));
+            }
+        }
+        return new Plan(new Choice(paths, paths.length, null, 0));
+    }
+
+    /**
+     * Checks that First-Fit would still take the planned decision: the
+     * earlier paths are still infeasible, the chosen slots are still free
+     * and no lower slot free on the first link of the chosen path has
+     * become feasible. Only the paths and slots the decision depends on are
+     * read, so changes elsewhere on their links do not discard it.
+     *
+     * @param flow the flow
+     * @param plan the decision
+     * @return true if the decision still holds
+     */
+    @Override
+    public boolean holds(Flow flow, Plan plan) {
+        Choice choice = (Choice) plan.getDecision();
+        if (choice.links == null && choice.firstSlot < 0) {
+            // allocate decides it anyway
+            return true;
+        }
+        int requiredSlots = Modulation.convertRateToSlot(flow.getRate(), EONPhysicalTopology.getSlotSize(), modulation);
+        for (int k = 0; k < choice.path; k++) {
+            if (firstFit(flow, choice.paths[k], requiredSlots, Integer.MAX_VALUE) >= 0) {
+                return false;
+            }
+        }
+        if (choice.links == null) {
+            return true;
+        }
+        EONLightPath lp = cp.createCandidateEONLightPath(flow.getSource(), flow.getDestination(), choice.links,
+                choice.firstSlot, (choice.firstSlot + requiredSlots - 1), modulation);
+        return cp.getPT().canCreatePhysicalLightpath(lp) && firstFit(flow, choice.links, requiredSlots, choice.firstSlot) < 0;
+    }
+
+    /**
+     * Finds the slot First-Fit would take on a path: the first of those
+     * available on its first link on which a lightpath can be created.
+     *
+     * @param flow the flow
+     * @param links the links of the path
+     * @param requiredSlots the number of slots of the lightpath
+     * @param limit the slots tried are below it
+     * @return the first slot, or -1 if there is none below the limit
+     */
+    private int firstFit(Flow flow, int[] links, int requiredSlots, int limit) {
+        int[] firstSlot = ((EONLink) cp.getPT().getLink(links[0])).getSlotsAvailableToArray(requiredSlots);
+        for (int j = 0; j < firstSlot.length && firstSlot[j] < limit; j++) {
+            EONLightPath lp = cp.createCandidateEONLightPath(flow.getSource(), flow.getDestination(), links,
+                    firstSlot[j], (firstSlot[j] + requiredSlots - 1), modulation);
+            if (cp.getPT().canCreatePhysicalLightpath(lp)) {
+                return firstSlot[j];
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void commit(Flow flow, Plan plan) {
+        Choice choice = (Choice) plan.getDecision();
+        if (choice.links == null) {
+            if (choice.firstSlot < 0) {
+                allocate(flow, choice.paths);
+            } else {
+                cp.blockFlow(flow.getID());
+            }
+            return;
+        }
+        int requiredSlots = Modulation.convertRateToSlot(flow.getRate(), EONPhysicalTopology.getSlotSize(), modulation);
+        EONLightPath lp = cp.createCandidateEONLightPath(flow.getSource(), flow.getDestination(), choice.links,
+                choice.firstSlot, (choice.firstSlot + requiredSlots - 1), modulation);
+        long id = cp.getVT().createLightpath(lp);
+        if (id < 0 || !cp.acceptFlow(flow.getID(), new LightPath[]{cp.getVT().getLightpath(id)})) {
+            throw (new IllegalStateException("Plan of flow " + flow.getID() + " no longer holds"));
+        }
+    }
+
+    /**
+     * Decides again a flow whose plan no longer holds, on the paths of the
+     * plan, which do not depend on the state of the network.
+     *
+     * @param flow the flow
+     * @param plan the decision that no longer holds
+     */
+    @Override
+    public void retry(Flow flow, Plan plan) {
+        allocate(flow, ((Choice) plan.getDecision()).paths);
+    }
+
+    /**
+     * A decision of plan: the index of the path taken and the links and
+     * first slot of the lightpath, or no links to block the flow (firstSlot
+     * 0) after the paths before the index, or to run allocate on the paths
+     * (firstSlot -1).
+     */
+    private static class Choice {
+
+        private final int[][] paths;
+        private final int path;
+        private final int[] links;
+        private final int firstSlot;
+
+        private Choice(int[][] paths, int path, int[] links, int firstSlot) {
+            this.paths = paths;
+            this.path = path;
+            this.links = links;
+            this.firstSlot = firstSlot;
+        }
+    }
+
+    /**
+     * Tries the paths in order, with First-Fit spectrum assignment, and
+     * accepts the flow on the first lightpath that can be created, or blocks
+     * it.
+     *
+     * @param flow the flow
+     * @param paths the links of each path; null from the first path not found
+     */
+    private void allocate(Flow flow, int[][] paths) {
+        long id;
+        LightPath[] lps = new LightPath[1];
         
-        ArrayList<Integer>[] kpaths = YenKSP.kShortestPaths(graph, flow.getSource(), flow.getDestination(), ksp);
-        
-        for (int k = 0; k < kpaths.length; k++) {
+        for (int[] links : paths) {
 
-            nodes = route(kpaths,k);
             // If no possible path found, block the call
-            if (nodes.length == 0 || nodes == null) {
+            if (links == null) {
                 cp.blockFlow(flow.getID());
                 return;
             }
 
-            // Create the links vector
-            links = new int[nodes.length - 1];
-            for (int j = 0; j < nodes.length - 1; j++) {
-                links[j] = cp.getPT().getLink(nodes[j], nodes[j + 1]).getID();
-            }
-
             // Calculates the required slots
             int requiredSlots = Modulation.convertRateToSlot(flow.getRate(), EONPhysicalTopology.getSlotSize(), modulation);
             
@@ -92,6 +258,27 @@ public class KSP implements RA {
         cp.blockFlow(flow.getID());
     }
 
+    /**
+     * Creates the links vector of each of the k-shortest paths.
+     *
+     * @param kpaths the k-shortest paths, as lists of nodes
+     * @return the links of each path, null for the paths not found
+     */
+    private int[][] links(ArrayList<Integer>[] kpaths) {
+        int[][] links = new int[kpaths.length][];
+        for (int k = 0; k < kpaths.length; k++) {
+            int[] nodes = route(kpaths, k);
+            if (nodes == null || nodes.length == 0) {
+                continue;
+            }
+            links[k] = new int[nodes.length - 1];
+            for (int j = 0; j < nodes.length - 1; j++) {
+                links[k][j] = cp.getPT().getLink(nodes[j], nodes[j + 1]).getID();
+            }
+        }
+        return links;
+    }
+
     @Override
     public void flowDeparture(long id) {
         // Do anything before flow departure
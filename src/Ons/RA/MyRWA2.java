@@ -64,9 +64,11 @@ public class MyRWA2 implements RA {
             links[j] = cp.getPT().getLink(nodes[j], nodes[j + 1]).getID();
         }
 
-        // First-Fit wavelength assignment
+        // First-Fit wavelength assignment among the wavelengths free on all links
         wvls = new int[links.length];
-        for (int i = 0; i < ((WDMPhysicalTopology) cp.getPT()).getNumWavelengths(); i++) {
+        WDMPhysicalTopology pt = (WDMPhysicalTopology) cp.getPT();
+        long[] mask = pt.getContinuityMask(links);
+        for (int i = pt.firstFitWavelength(mask, 0); i >= 0; i = pt.firstFitWavelength(mask, i + 1)) {
             // Create the wavelengths vector
             for (int j = 0; j < links.length; j++) {
                 wvls[j] = i;
@@ -0,0 +1,63 @@
+package Ons.RA;
+
+import Ons.*;
+import Ons.Util.*;
+
+/**
+ * This is a sample algorithm for the Routing and Wavelength Assignment problem
+ * in networks with wavelength converters.
+ *
+ * Routing and wavelength assignment are done together, by a single search of
+ * the wavelength-layered graph (see Ons.Util.LayeredDijkstra): the lightpath
+ * is the cheapest one that the converters of the network can establish, on
+ * any route. A conversion costs a little, so that of two lightpaths of the
+ * same length the one with fewer conversions is taken; the lowest wavelength
+ * wins the remaining ties, like first-fit.
+ *
+ * @author onsteam
+ */
+public class MyRWA3 implements RA {
+
+    private static final double CONVERSION_COST = 1;
+
+    private ControlPlaneForRA cp;
+
+    @Override
+    public void simulationInterface(ControlPlaneForRA cp) {
+        this.cp = cp;
+    }
+
+    @Override
+    public void flowArrival(Flow flow) {
+        long id;
+        LightPath[] lps = new LightPath[1];
+
+        WDMPhysicalTopology pt = (WDMPhysicalTopology) cp.getPT();
+        WDMLightPath lp = LayeredDijkstra.getShortestLightpath(pt, flow.getSource(), flow.getDestination(), CONVERSION_COST);
+
+        // If no possible lightpath found, block the call
+        if (lp == null) {
+            cp.blockFlow(flow.getID());
+            return;
+        }
+        // Now you try to establish the new lightpath, accept the call
+        if ((id = cp.getVT().createLightpath(lp)) >= 0) {
+            // Single-hop routing (end-to-end lightpath)
+            lps[0] = cp.getVT().getLightpath(id);
+            if (cp.acceptFlow(flow.getID(), lps)) {
+                return;
+            } else {
+                // Something wrong
+                // Dealocates the lightpath in VT
+                cp.getVT().deallocatedLightpath(id);
+            }
+        }
+        // Block the call
+        cp.blockFlow(flow.getID());
+    }
+
+    @Override
+    public void flowDeparture(long id) {
+        // Do anything before flow departure
+    }
+}
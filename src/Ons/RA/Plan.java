@@ -0,0 +1,32 @@
+package Ons.RA;
+
+/**
+ * A decision of an Ons.RA.SpeculativeRA module on a flow, taken ahead of
+ * time. When the flow's turn comes, the module checks that the decision is
+ * still the one it would take (SpeculativeRA.holds); otherwise the flow is
+ * decided again.
+ *
+ * @author onsteam
+ */
+public class Plan {
+
+    private final Object decision;
+
+    /**
+     * Creates a new Ons.RA.Plan object.
+     *
+     * @param decision the decision, as the module represents it
+     */
+    public Plan(Object decision) {
+        this.decision = decision;
+    }
+
+    /**
+     * Retrieves the decision.
+     *
+     * @return the decision
+     */
+    public Object getDecision() {
+        return decision;
+    }
+}
@@ -23,6 +23,20 @@ public interface RA {
     public void simulationInterface(ControlPlaneForRA cp);
 
     public void flowArrival(Flow flow);
+
+    /**
+     * Decides a batch of flows that arrived within the batching window of
+     * the Ons.ControlPlane, in any order and jointly if the module can. By
+     * default, they are handed to flowArrival one at a time, in arrival
+     * order.
+     *
+     * @param flows the flows, in arrival order
+     */
+    public default void flowArrivals(Flow[] flows) {
+        for (Flow flow : flows) {
+            flowArrival(flow);
+        }
+    }
     
     public void flowDeparture(long id);
 
@@ -0,0 +1,59 @@
+package Ons.RA;
+
+import Ons.*;
+
+/**
+ * An Ons.RA module whose decisions on arriving flows can be taken ahead of
+ * time, concurrently, and carried out later, for Ons.SpeculativeRunner.
+ * Before a decision is carried out, the module checks that it is still the
+ * one flowArrival would take on the network as it is then, so that the
+ * outcome is the same as that of a sequential run.
+ *
+ * @author onsteam
+ */
+public interface SpeculativeRA extends RA {
+
+    /**
+     * Decides on a flow, as flowArrival would on the current state of the
+     * network, without changing anything: plans of several flows are taken
+     * concurrently.
+     *
+     * @param flow the flow, not yet known to the control plane
+     * @return the decision
+     */
+    public Plan plan(Flow flow);
+
+    /**
+     * Says whether a decision is still the one flowArrival would take on
+     * the current state of the network, which may have changed since the
+     * decision was planned. It is called once the flow is known to the
+     * control plane, and must not change anything.
+     *
+     * @param flow the flow
+     * @param plan the decision
+     * @return true if the decision can be carried out
+     */
+    public boolean holds(Flow flow, Plan plan);
+
+    /**
+     * Carries out a decision, once the flow is known to the control plane
+     * and the decision holds.
+     *
+     * @param flow the flow
+     * @param plan the decision
+     */
+    public void commit(Flow flow, Plan plan);
+
+    /**
+     * Decides a flow whose plan no longer holds, as flowArrival would, once
+     * the flow is known to the control plane. Modules may reuse the parts
+     * of the plan that do not depend on the state of the network, such as
+     * its routes; by default, the flow is handed to flowArrival.
+     *
+     * @param flow the flow
+     * @param plan the decision that no longer holds
+     */
+    public default void retry(Flow flow, Plan plan) {
+        flowArrival(flow);
+    }
+}
@@ -5,14 +5,22 @@ package Ons;
  */
 
 
+import Ons.RA.Plan;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Simply runs the simulation, as long as there are events
- * scheduled to happen.
+ * scheduled to happen, or until the stop rule of Ons.MyStatistics
+ * is met.
  * 
  * @author onsteam
  */
 public class SimulationRunner {
 
+    private boolean stopped;
+    private double lastArrival;
+
     /**
      * Creates a new Ons.SimulationRunner object.
      *
@@ -20,19 +28,99 @@ public class SimulationRunner {
      * @param events the simulation's event scheduler
      */
     public SimulationRunner(ControlPlane cp, EventScheduler events) {
+        this(cp, events, new Checkpoint[0]);
+    }
+
+    /**
+     * Creates a new Ons.SimulationRunner object that writes checkpoints of
+     * the simulation, each once its number of arrivals has been processed.
+     *
+     * @param cp the the simulation's control plane
+     * @param events the simulation's event scheduler
+     * @param checkpoints the checkpoints to be written; null ones are ignored
+     */
+    public SimulationRunner(ControlPlane cp, EventScheduler events, Checkpoint... checkpoints) {
         Event event;
+        long arrivals = 0;
         Tracer tr = Tracer.getTracerObject();
         MyStatistics st = MyStatistics.getMyStatisticsObject();        
         while ((event = events.popEvent()) != null) {
-            tr.add(event);
-            if(cp.getPT() instanceof EONPhysicalTopology){
-                //to calculate the available spectrum and available transponders statistics
-                st.addEvent(event, ((EONPhysicalTopology) cp.getPT()).getAvailableSlots(), cp.getPT().getAllFreeGroomingInputPorts());
-            } else{
-                //to calculate the available transponders statistics in WDM Ons.Simulator
-                st.addEvent(event, cp.getPT().getAllFreeGroomingInputPorts());
+            handle(cp, event, tr, st);
+            if (event instanceof FlowArrivalEvent) {
+                arrivals++;
+                lastArrival = event.getTime();
+                st.arrivalHandled();
+                for (Checkpoint checkpoint : checkpoints) {
+                    if (checkpoint != null && checkpoint.getArrivals() == arrivals) {
+                        try {
+                            checkpoint.save(cp, events);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+                if (st.isConverged()) {
+                    stopped = true;
+                    break;
+                }
             }
-            cp.newEvent(event);
         }
+        // arrivals still in the batching window
+        cp.flush();
+    }
+
+    /**
+     * Traces an event, adds it to the statistics and hands it to the
+     * control plane.
+     *
+     * @param cp the simulation's control plane
+     * @param event the event
+     * @param tr the tracer
+     * @param st the statistics
+     */
+    static void handle(ControlPlane cp, Event event, Tracer tr, MyStatistics st) {
+        handle(cp, event, null, tr, st);
+    }
+
+    /**
+     * Traces an event, adds it to the statistics and hands it to the
+     * control plane, with the decision planned for it if it is an arrival.
+     *
+     * @param cp the simulation's control plane
+     * @param event the event
+     * @param plan the decision planned for the arrival, or null
+     * @param tr the tracer
+     * @param st the statistics
+     * @return true if the planned decision was carried out
+     */
+    static boolean handle(ControlPlane cp, Event event, Plan plan, Tracer tr, MyStatistics st) {
+        tr.add(event);
+        if(cp.getPT() instanceof EONPhysicalTopology){
+            //to calculate the available spectrum and available transponders statistics
+            st.addEvent(event, ((EONPhysicalTopology) cp.getPT()).getAvailableSlots(), cp.getPT().getAllFreeGroomingInputPorts());
+        } else{
+            //to calculate the available transponders statistics in WDM Ons.Simulator
+            st.addEvent(event, cp.getPT().getAllFreeGroomingInputPorts());
+        }
+        return cp.newEvent(event, plan);
+    }
+
+    /**
+     * Says whether the simulation was stopped by the stop rule, before all
+     * events were processed.
+     *
+     * @return true if events are left in the scheduler
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Retrieves the time of the last arrival processed.
+     *
+     * @return the arrival time
+     */
+    public double getLastArrival() {
+        return lastArrival;
     }
 }
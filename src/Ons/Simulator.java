@@ -7,6 +7,7 @@ package Ons;
 
 
 import java.io.File;
+import java.util.stream.IntStream;
 import org.w3c.dom.*;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -26,6 +27,45 @@ public class Simulator {
     private static final Float simVersion = (float) 1.0;
     public static boolean verbose = false;
     public static boolean trace = false;
+    private double probe = 0; // fraction of the calls of the XML file a probe simulates, 0 if not a probe
+    private double blocking = -1;
+    private double halfWidth = Double.POSITIVE_INFINITY;
+
+    /**
+     * Makes the next execution a probe of a load search: it simulates a
+     * fraction of the calls of the XML file, and always computes the
+     * confidence interval of the blocking probability (in 20 batches, unless
+     * the confidence tag configures it).
+     *
+     * @param fraction the fraction of the calls, in (0,1]
+     */
+    public void setProbe(double fraction) {
+        if (fraction <= 0 || fraction > 1) {
+            throw (new IllegalArgumentException());
+        }
+        probe = fraction;
+    }
+
+    /**
+     * Retrieves the blocking probability of the last execution.
+     *
+     * @return the blocking probability, between 0 and 1, or -1 if the
+     * simulation failed
+     */
+    public double getBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Retrieves the half-width of the 95% confidence interval of the
+     * blocking probability of the last execution.
+     *
+     * @return the half-width, between 0 and 1, or infinity if it was not
+     * computed
+     */
+    public double getHalfWidth() {
+        return halfWidth;
+    }
     
     /**
      * Executes simulation based on the given XML file and the used command line arguments.
@@ -37,6 +77,33 @@ public class Simulator {
      * @param seed a number in the interval [1,25] that defines up to 25 different random simulations
      */
     public void Execute(String simConfigFile, boolean trace, boolean verbose, double forcedLoad, int seed) {
+        Execute(simConfigFile, trace, verbose, forcedLoad, seed, false, null);
+    }
+
+    /**
+     * Executes simulation based on the given XML file and the used command
+     * line arguments, as one point of a load sweep. In a continued sweep,
+     * each load starts from the network left by the previous one at its
+     * last arrival: lightpaths, active flows and their pending departures
+     * are kept, while the arrival rate changes and the statistics start
+     * from zero, after the warm-up given by the "continuedStatisticStart"
+     * attribute of the traffic tag (statisticStart if absent). A continued
+     * load simulates as many calls fewer as its warm-up is shorter, so that
+     * it counts as many arrivals as the first one.
+     * 
+     * @param simConfigFile name of the XML file that contains all information about the simulation
+     * @param trace activates the Ons.Tracer class functionalities
+     * @param verbose activates the printing of information about the simulation, on runtime, for debugging purposes
+     * @param forcedLoad range of loads for which several simulations are automated; if not specified, load is taken from the XML file
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations
+     * @param continuation true to keep the network state for the next load
+     * @param previous the network state left by the previous load, or null
+     * to start from an empty network
+     * @return the network state at the last arrival of this load, in a
+     * continued sweep; null otherwise
+     */
+    public Checkpoint Execute(String simConfigFile, boolean trace, boolean verbose, double forcedLoad, int seed, boolean continuation, Checkpoint previous) {
+        Checkpoint sweep = null;
 
         Simulator.verbose = verbose;
         Simulator.trace = trace;
@@ -141,9 +208,42 @@ public class Simulator {
                 System.out.println("(3) Loading traffic information...");
             }
 
-            EventScheduler events = new EventScheduler();
-            TrafficGenerator traffic = new TrafficGenerator((Element) doc.getElementsByTagName("traffic").item(0), forcedLoad);
-            traffic.generateTraffic(pt, events, seed);
+            EventScheduler events;
+            TrafficGenerator traffic = null;
+            Element replay = (Element) doc.getElementsByTagName("replay").item(0);
+            Element checkpointConfig = (Element) doc.getElementsByTagName("checkpoint").item(0);
+            Element splitting = (Element) doc.getElementsByTagName("splitting").item(0);
+            if (replay != null && (checkpointConfig != null || continuation)) {
+                throw (new IllegalArgumentException("checkpoints can not be used while replaying a trace"));
+            }
+            if (splitting != null && (replay != null || checkpointConfig != null || continuation
+                    || doc.getElementsByTagName("confidence").getLength() > 0)) {
+                throw (new IllegalArgumentException("splitting can not be used with replay, checkpoints, continued sweeps or confidence"));
+            }
+            if (replay != null) {
+                // Flows come from a recorded trace, read as the simulation goes
+                if (Simulator.verbose) {
+                    System.out.println("Replaying trace " + replay.getAttribute("trace"));
+                }
+                events = new TraceReplay(replay.getAttribute("trace"));
+            } else {
+                traffic = new TrafficGenerator((Element) doc.getElementsByTagName("traffic").item(0), forcedLoad);
+                if (probe > 0) {
+                    traffic.setCalls((int) Math.ceil(traffic.getCalls() * probe));
+                }
+                if (traffic.isLazy() && (checkpointConfig != null || continuation)) {
+                    throw (new IllegalArgumentException("checkpoints can not be used with lazily generated traffic"));
+                }
+                if (traffic.isLazy() && splitting == null) {
+                    // Calls are drawn as the simulation goes
+                    events = new LazyTraffic(traffic, pt, seed);
+                } else {
+                    events = new EventScheduler();
+                    if (previous == null && splitting == null && (checkpointConfig == null || !checkpointConfig.hasAttribute("restore"))) {
+                        traffic.generateTraffic(pt, events, seed);
+                    }
+                }
+            }
 
             if (Simulator.verbose) {
                 System.out.println("(3) Done. (" + Float.toString((float) ((float) (System.currentTimeMillis() - begin) / (float) 1000)) + " sec)\n");
@@ -171,16 +271,97 @@ public class Simulator {
             if(((Element) doc.getElementsByTagName("traffic").item(0)).hasAttribute("statisticStart")){
                 statisticStart = Integer.parseInt(((Element) doc.getElementsByTagName("traffic").item(0)).getAttribute("statisticStart"));
             }
+            if (previous != null && ((Element) doc.getElementsByTagName("traffic").item(0)).hasAttribute("continuedStatisticStart")) {
+                int continuedStatisticStart = Integer.parseInt(((Element) doc.getElementsByTagName("traffic").item(0)).getAttribute("continuedStatisticStart"));
+                if (continuedStatisticStart < 0 || continuedStatisticStart > statisticStart) {
+                    throw (new IllegalArgumentException("\"continuedStatisticStart\" in xml must be between 0 and \"statisticStart\""));
+                }
+                // The same number of arrivals is counted, after a shorter warm-up
+                traffic.setCalls(traffic.getCalls() - statisticStart + continuedStatisticStart);
+                statisticStart = continuedStatisticStart;
+            }
             st.statisticsSetup(pt, numberOfCOS, statisticStart);
+            Element warmupConfig = (Element) doc.getElementsByTagName("warmup").item(0);
+            if (warmupConfig != null) {
+                // Detect the end of the transient instead of using statisticStart
+                int batch = 100, minBatches = 20;
+                int max = traffic != null ? traffic.getCalls() / 2 : Integer.MAX_VALUE;
+                if (warmupConfig.hasAttribute("batch")) {
+                    batch = Integer.parseInt(warmupConfig.getAttribute("batch"));
+                }
+                if (warmupConfig.hasAttribute("min-batches")) {
+                    minBatches = Integer.parseInt(warmupConfig.getAttribute("min-batches"));
+                }
+                if (warmupConfig.hasAttribute("max")) {
+                    max = Integer.parseInt(warmupConfig.getAttribute("max"));
+                }
+                st.warmupSetup(batch, minBatches, max);
+            }
+            Element confidence = (Element) doc.getElementsByTagName("confidence").item(0);
+            if (confidence != null) {
+                // Stop once the blocking probability is known well enough; calls is then the maximum
+                int batch = 1000, minBatches = 10;
+                double relativeError = 0, absoluteError = 0;
+                if (confidence.hasAttribute("batch")) {
+                    batch = Integer.parseInt(confidence.getAttribute("batch"));
+                }
+                if (confidence.hasAttribute("min-batches")) {
+                    minBatches = Integer.parseInt(confidence.getAttribute("min-batches"));
+                }
+                if (confidence.hasAttribute("relative-error")) {
+                    relativeError = Double.parseDouble(confidence.getAttribute("relative-error"));
+                }
+                if (confidence.hasAttribute("absolute-error")) {
+                    absoluteError = Double.parseDouble(confidence.getAttribute("absolute-error"));
+                }
+                if (relativeError == 0 && absoluteError == 0) {
+                    throw (new IllegalArgumentException("\"relative-error\" or \"absolute-error\" in confidence must be set"));
+                }
+                st.confidenceSetup(batch, minBatches, relativeError, absoluteError);
+            } else if (probe > 0 && traffic != null) {
+                // The interval of a probe, without stop rule
+                st.confidenceSetup(Math.max((traffic.getCalls() - statisticStart) / 20, 1), 2, 0, 0);
+            }
+            double[] splittingLevels = null;
+            int retrials = 0;
+            long maxRetrial = 0;
+            if (splitting != null) {
+                // Estimate low blocking probabilities by splitting trajectories at occupancy thresholds
+                if (!splitting.hasAttribute("levels") || !splitting.hasAttribute("retrials")) {
+                    throw (new IllegalArgumentException("\"levels\" and \"retrials\" in splitting must be set"));
+                }
+                String[] parts = splitting.getAttribute("levels").trim().split("[ ]*,[ ]*");
+                splittingLevels = new double[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    splittingLevels[i] = Double.parseDouble(parts[i]);
+                }
+                retrials = Integer.parseInt(splitting.getAttribute("retrials"));
+                maxRetrial = Math.max(traffic.getCalls() / 100, 1);
+                if (splitting.hasAttribute("retrial-arrivals")) {
+                    maxRetrial = Long.parseLong(splitting.getAttribute("retrial-arrivals"));
+                }
+                st.splittingSetup();
+            }
+            Element compare = (Element) doc.getElementsByTagName("compare").item(0);
+            if (compare != null && (checkpointConfig != null || continuation || warmupConfig != null
+                    || confidence != null || splitting != null || probe > 0 || Simulator.trace)) {
+                throw (new IllegalArgumentException("comparing RA modules can not be used with checkpoints, continued sweeps, warmup, confidence, splitting, searches or traces"));
+            }
             
             Tracer tr = Tracer.getTracerObject();
             if (Simulator.trace == true)
             {
+                Element traceConfig = (Element) doc.getElementsByTagName("trace").item(0);
+                String traceFile;
             	if (forcedLoad == 0) {
-                	tr.setTraceFile(simConfigFile.substring(0, simConfigFile.length() - 4) + ".trace");
+                	traceFile = simConfigFile.substring(0, simConfigFile.length() - 4) + ".trace";
             	} else {
-                	tr.setTraceFile(simConfigFile.substring(0, simConfigFile.length() - 4) + "_Load_" + Double.toString(forcedLoad) + ".trace");
+                	traceFile = simConfigFile.substring(0, simConfigFile.length() - 4) + "_Load_" + Double.toString(forcedLoad) + ".trace";
             	}
+                if (replay != null && new File(traceFile).getCanonicalPath().equals(new File(replay.getAttribute("trace")).getCanonicalPath())) {
+                    throw (new IllegalArgumentException("the replayed trace would be overwritten by the trace of this simulation"));
+                }
+                tr.setTraceFile(traceFile, traceConfig);
             }
             tr.toogleTraceWriting(Simulator.trace);
             
@@ -189,6 +370,111 @@ public class Simulator {
                 System.out.println("Ons.RA module: " + raModule);
             }
             ControlPlane cp = new ControlPlane(raModule, pt, vt);
+            double batchWindow = 0;
+            if (((Element) doc.getElementsByTagName("ra").item(0)).hasAttribute("batch-window")) {
+                // Arrivals within the window are decided together
+                batchWindow = Double.parseDouble(((Element) doc.getElementsByTagName("ra").item(0)).getAttribute("batch-window"));
+                if (batchWindow > 0 && (checkpointConfig != null || continuation || splitting != null)) {
+                    throw (new IllegalArgumentException("batched arrivals can not be used with checkpoints, continued sweeps or splitting"));
+                }
+                cp.setBatchWindow(batchWindow);
+            }
+            int speculation = 0;
+            if (((Element) doc.getElementsByTagName("ra").item(0)).hasAttribute("speculation")) {
+                // Decisions of several arrivals are planned in parallel
+                speculation = Integer.parseInt(((Element) doc.getElementsByTagName("ra").item(0)).getAttribute("speculation"));
+                if (speculation > 0 && (checkpointConfig != null || continuation || splitting != null || compare != null || batchWindow > 0)) {
+                    throw (new IllegalArgumentException("speculation can not be used with checkpoints, continued sweeps, splitting, comparisons or batched arrivals"));
+                }
+                if (speculation > 0 && !cp.isSpeculative()) {
+                    throw (new IllegalArgumentException("Ons.RA module " + raModule + " can not plan its decisions ahead of time"));
+                }
+            }
+            Element partition = (Element) doc.getElementsByTagName("partition").item(0);
+            int regions = 0;
+            double delayScale = 0.001;
+            if (partition != null) {
+                // Regions of the network run in parallel, lightpaths being set up by signaling
+                regions = Integer.parseInt(partition.getAttribute("regions"));
+                if (partition.hasAttribute("delay-scale")) {
+                    delayScale = Double.parseDouble(partition.getAttribute("delay-scale"));
+                }
+                if (checkpointConfig != null || continuation || splitting != null || compare != null || batchWindow > 0 || speculation > 0 || Simulator.trace) {
+                    throw (new IllegalArgumentException("partitions can not be used with checkpoints, continued sweeps, splitting, comparisons, batched arrivals, speculation or traces"));
+                }
+                if (simType != 1 || !raModule.equals("Ons.RA.KSP")) {
+                    throw (new IllegalArgumentException("partitions set lightpaths up as Ons.RA.KSP, in EON simulations only"));
+                }
+            }
+
+            String[] modules = null;
+            ControlPlane[] cps = null;
+            MyStatistics[] stats = null;
+            if (compare != null) {
+                // One copy of the network per RA module, the first being the one of the ra tag
+                String[] others = compare.getAttribute("modules").trim().split("[ ]*,[ ]*");
+                modules = new String[others.length + 1];
+                cps = new ControlPlane[modules.length];
+                stats = new MyStatistics[modules.length];
+                modules[0] = raModule;
+                cps[0] = cp;
+                stats[0] = st;
+                for (int i = 1; i < modules.length; i++) {
+                    modules[i] = "Ons.RA." + others[i - 1];
+                    stats[i] = MyStatistics.newMyStatisticsObject();
+                    // the topologies and control plane of the copy report to its statistics
+                    MyStatistics.setMyStatisticsObject(stats[i]);
+                    PhysicalTopology copyPT;
+                    if (simType == 0) {
+                        copyPT = new WDMPhysicalTopology((Element) doc.getElementsByTagName("physical-topology").item(0));
+                    } else {
+                        copyPT = new EONPhysicalTopology((Element) doc.getElementsByTagName("physical-topology").item(0));
+                    }
+                    VirtualTopology copyVT = new VirtualTopology((Element) doc.getElementsByTagName("virtual-topology").item(0), copyPT);
+                    stats[i].statisticsSetup(copyPT, numberOfCOS, statisticStart);
+                    cps[i] = new ControlPlane(modules[i], copyPT, copyVT);
+                    cps[i].setBatchWindow(batchWindow);
+                }
+                MyStatistics.setMyStatisticsObject(st);
+            }
+
+            Checkpoint checkpoint = null;
+            long calls = 0;
+            double lastArrival = 0;
+            if (traffic != null) {
+                calls = traffic.getCalls();
+                lastArrival = traffic.getLastArrival();
+            }
+            if (previous != null) {
+                // Continue the load sweep from the network left by the previous load
+                previous.restoreNetwork(cp, events);
+                traffic.generateTraffic(pt, events, seed, previous.getCalls(), 0, previous.getLastArrival());
+                calls += previous.getCalls();
+                lastArrival = traffic.getLastArrival();
+            } else if (checkpointConfig != null && checkpointConfig.hasAttribute("restore")) {
+                // Start from the saved state, and generate only the calls it does not have yet
+                if (Simulator.verbose) {
+                    System.out.println("Restoring checkpoint " + checkpointConfig.getAttribute("restore"));
+                }
+                Checkpoint restored = Checkpoint.restore(checkpointConfig.getAttribute("restore"), cp, events);
+                traffic.generateTraffic(pt, events, seed, 0, restored.getCalls(), restored.getLastArrival());
+                calls = Math.max(calls, restored.getCalls());
+                lastArrival = traffic.getLastArrival();
+            }
+            if (checkpointConfig != null && checkpointConfig.hasAttribute("save")) {
+                long at = statisticStart;
+                if (checkpointConfig.hasAttribute("at")) {
+                    at = Long.parseLong(checkpointConfig.getAttribute("at"));
+                }
+                if (at < 1) {
+                    throw (new IllegalArgumentException("\"at\" in checkpoint must be at least 1"));
+                }
+                checkpoint = new Checkpoint(checkpointConfig.getAttribute("save"), at, calls, lastArrival);
+            }
+            if (continuation) {
+                // Kept in memory, for the next load
+                sweep = new Checkpoint(null, events.numArrivals(), calls, lastArrival);
+            }
 
             if (Simulator.verbose) {
                 System.out.println("(4) Done. (" + Float.toString((float) ((float) (System.currentTimeMillis() - begin) / (float) 1000)) + " sec)\n");
@@ -202,13 +488,62 @@ public class Simulator {
                 System.out.println("(5) Running the simulation...");
             }
 
-            SimulationRunner sim = new SimulationRunner(cp, events);
+            ComparisonRunner comparison = null;
+            if (cps != null) {
+                int batch = 1000;
+                if (compare.hasAttribute("batch")) {
+                    batch = Integer.parseInt(compare.getAttribute("batch"));
+                }
+                comparison = new ComparisonRunner(cps, stats, events, batch);
+            } else if (splittingLevels != null) {
+                SplittingRunner sim = new SplittingRunner(cp, events, traffic, splittingLevels, retrials, maxRetrial, seed);
+                if (Simulator.verbose) {
+                    System.out.println(Long.toString(sim.getSplits()) + " splits");
+                }
+            } else if (regions > 0) {
+                PartitionedRunner sim = new PartitionedRunner((EONPhysicalTopology) pt, events, regions, delayScale);
+                if (Simulator.verbose) {
+                    System.out.println(Integer.toString(regions) + " regions, lookahead " + Double.toString(sim.getLookahead()) + ": "
+                            + Long.toString(sim.getWindows()) + " windows, " + Long.toString(sim.getSignals()) + " signals between regions");
+                }
+            } else if (speculation > 0) {
+                SpeculativeRunner sim = new SpeculativeRunner(cp, events, speculation);
+                if (Simulator.verbose) {
+                    System.out.println(Long.toString(sim.getCommitted()) + " of " + Long.toString(sim.getPlanned()) + " planned decisions carried out");
+                }
+            } else {
+                SimulationRunner sim = new SimulationRunner(cp, events, checkpoint, sweep);
+                if (sim.isStopped() && sweep != null) {
+                // The last arrival of this load is the one the stop rule stopped at
+                    events.removeArrivals();
+                    sweep = new Checkpoint(null, 0, calls, sim.getLastArrival());
+                    sweep.save(cp, events);
+                }
+            }
 
             if (Simulator.verbose) {
                 System.out.println("(5) Done. (" + Float.toString((float) ((float) (System.currentTimeMillis() - begin) / (float) 1000)) + " sec)\n");
             }
 
-            if (Simulator.verbose) {
+            if (comparison != null) {
+                for (int i = 0; i < modules.length; i++) {
+                    System.out.println(modules[i] + ":");
+                    if (Simulator.verbose) {
+                        System.out.println(stats[i].fancyStatistics(simType));
+                    } else {
+                        stats[i].printStatistics(simType);
+                    }
+                }
+                for (int i = 1; i < modules.length; i++) {
+                    // paired difference, and the half-width two independent runs would give
+                    double unpaired = Math.sqrt(Math.pow(comparison.getBlocking(0).getHalfWidth(), 2) + Math.pow(comparison.getBlocking(i).getHalfWidth(), 2));
+                    System.out.println(modules[i] + " - " + modules[0] + ": "
+                            + Float.toString((float) (comparison.getDifference(i).getMean() * 100)) + "% +-"
+                            + Float.toString((float) (comparison.getDifference(i).getHalfWidth() * 100)) + "% (unpaired +-"
+                            + Float.toString((float) (unpaired * 100)) + "%, "
+                            + Long.toString(comparison.getDifference(i).getBatches()) + " batches)");
+                }
+            } else if (Simulator.verbose) {
                 if (forcedLoad == 0) {
                     System.out.println("Statistics (" + simConfigFile + "):\n");
                 } else {
@@ -219,6 +554,9 @@ public class Simulator {
                 st.printStatistics(simType);
             }
             
+            blocking = st.getBlocking();
+            halfWidth = st.getHalfWidth();
+
             // Terminate Ons.MyStatistics singleton
             st.finish();
 
@@ -237,6 +575,81 @@ public class Simulator {
         } catch (Throwable t) {
             t.printStackTrace();
         }
+        return sweep;
+    }
+
+    /**
+     * Estimates the blocking of the network described by the XML file under
+     * several loads, with the Ons.ErlangFixedPoint approximation instead of
+     * simulating. The loads are solved in parallel, and a line in the format
+     * of Ons.MyStatistics.printStatistics is printed for each, in order.
+     *
+     * @param simConfigFile name of the XML file that contains all information about the simulation
+     * @param verbose activates the printing of information about the estimation
+     * @param loads the loads to estimate; 0 stands for the load of the XML file
+     */
+    public void Estimate(String simConfigFile, boolean verbose, double[] loads) {
+        Simulator.verbose = verbose;
+        try {
+            long begin = System.currentTimeMillis();
+            DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            Document doc = docBuilder.parse(new File(simConfigFile));
+            doc.getDocumentElement().normalize();
+            simName = doc.getDocumentElement().getNodeName();
+
+            PhysicalTopology pt;
+            Element physical = (Element) doc.getElementsByTagName("physical-topology").item(0);
+            switch (simName) {
+                case "wdmsim":
+                    pt = new WDMPhysicalTopology(physical);
+                    break;
+                case "eonsim":
+                    pt = new EONPhysicalTopology(physical);
+                    break;
+                default:
+                    System.out.println("Root element of the simulation file is " + simName + ", eonsim or wdmsim is expected!");
+                    return;
+            }
+            Element trafficConfig = (Element) doc.getElementsByTagName("traffic").item(0);
+            TrafficGenerator traffic = new TrafficGenerator(trafficConfig, 0);
+            if (!trafficConfig.hasAttribute("cos") || Integer.parseInt(trafficConfig.getAttribute("cos")) == 0) {
+                throw (new IllegalArgumentException("\"cos\" in xml must be set and not \"0\""));
+            }
+            int numberOfCOS = Integer.parseInt(trafficConfig.getAttribute("cos"));
+
+            int routes = 1, modulation = -1;
+            Element analytical = (Element) doc.getElementsByTagName("analytical").item(0);
+            if (analytical != null && analytical.hasAttribute("routes")) {
+                routes = Integer.parseInt(analytical.getAttribute("routes"));
+            }
+            if (analytical != null && analytical.hasAttribute("modulation")) {
+                modulation = Modulation.convertModulationTypeToInteger(analytical.getAttribute("modulation"));
+            }
+            ErlangFixedPoint model = new ErlangFixedPoint(pt, traffic, numberOfCOS, routes, modulation);
+
+            String[] lines = IntStream.range(0, loads.length).parallel()
+                    .mapToObj(i -> model.estimate(loads[i] == 0 ? traffic.getLoad() : loads[i]))
+                    .toArray(String[]::new);
+            for (int i = 0; i < loads.length; i++) {
+                if (Simulator.verbose) {
+                    System.out.print(Double.toString(loads[i] == 0 ? traffic.getLoad() : loads[i]) + " erlangs: ");
+                }
+                System.out.println(lines[i]);
+            }
+            if (Simulator.verbose) {
+                System.out.println("Estimated in " + Float.toString((float) ((float) (System.currentTimeMillis() - begin) / (float) 1000)) + " sec");
+            }
+
+        } catch (SAXParseException err) {
+            System.out.println("** Parsing error" + ", line " + err.getLineNumber() + ", uri " + err.getSystemId());
+            System.out.println(" " + err.getMessage());
+
+        } catch (SAXException e) {
+            Exception x = e.getException();
+            ((x == null) ? e : x).printStackTrace();
+
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
     }
 }
-  
@@ -0,0 +1,103 @@
+package Ons;
+
+import Ons.RA.Plan;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * Runs the simulation like Ons.SimulationRunner, but takes the Ons.RA
+ * decisions of several arrivals at once, on all cores. It is enabled by the
+ * speculation attribute of the ra tag, the number of arrivals of a window,
+ * for modules that are Ons.RA.SpeculativeRA:
+ *
+ * the events up to the window-th next arrival are taken from the scheduler;
+ * the decisions on all arrivals of the window are planned concurrently, on
+ * the state of the network before the window, which nothing changes
+ * meanwhile;
+ * the events are then handled one by one, in timestamp order, and each
+ * planned decision is carried out if the module finds it is still the one
+ * it would take, after the earlier arrivals and departures of the window
+ * (SpeculativeRA.holds). Otherwise the arrival is decided again, as in a
+ * sequential run, but with the parts of the plan that do not depend on the
+ * network, such as routes (SpeculativeRA.retry).
+ *
+ * Most decisions are thus taken in parallel, and the outcome of the
+ * simulation is the same as that of Ons.SimulationRunner, event for event. The stop rule of Ons.MyStatistics is checked after each arrival;
+ * the rest of the window is then dropped.
+ *
+ * @author onsteam
+ */
+public class SpeculativeRunner {
+
+    private long planned;
+    private long committed;
+
+    /**
+     * Creates a new Ons.SpeculativeRunner object, and runs the simulation.
+     *
+     * @param cp the simulation's control plane, with a speculative Ons.RA module
+     * @param events the simulation's event scheduler
+     * @param window the number of arrivals planned together
+     */
+    public SpeculativeRunner(ControlPlane cp, EventScheduler events, int window) {
+        if (window < 1 || !cp.isSpeculative()) {
+            throw (new IllegalArgumentException());
+        }
+        Tracer tr = Tracer.getTracerObject();
+        MyStatistics st = MyStatistics.getMyStatisticsObject();
+        ArrayList<Event> pending = new ArrayList<>();
+        ArrayList<Flow> flows = new ArrayList<>();
+        boolean stopped = false;
+        while (!stopped) {
+            pending.clear();
+            flows.clear();
+            Event event;
+            while (flows.size() < window && (event = events.popEvent()) != null) {
+                if (event instanceof FlowArrivalEvent) {
+                    flows.add(((FlowArrivalEvent) event).getFlow());
+                }
+                pending.add(event);
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+            Plan[] plans = new Plan[flows.size()];
+            IntStream.range(0, plans.length).parallel().forEach(i -> plans[i] = cp.plan(flows.get(i)));
+            planned += plans.length;
+            int next = 0;
+            for (Event e : pending) {
+                if (e instanceof FlowArrivalEvent) {
+                    if (SimulationRunner.handle(cp, e, plans[next++], tr, st)) {
+                        committed++;
+                    }
+                    st.arrivalHandled();
+                    if (st.isConverged()) {
+                        stopped = true;
+                        break;
+                    }
+                } else {
+                    SimulationRunner.handle(cp, e, tr, st);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of arrivals whose decision was planned.
+     *
+     * @return the number of plans
+     */
+    public long getPlanned() {
+        return planned;
+    }
+
+    /**
+     * Retrieves the number of planned decisions that were carried out, the
+     * others having been taken again.
+     *
+     * @return the number of plans carried out
+     */
+    public long getCommitted() {
+        return committed;
+    }
+}
@@ -0,0 +1,174 @@
+package Ons;
+
+import Ons.Util.Distribution;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Runs the simulation by importance splitting (the RESTART method), to
+ * estimate blocking probabilities too low to be observed in a plain run.
+ * It is configured by the splitting tag of the simulation file:
+ *
+ * levels="0.6,0.7,0.8" are increasing thresholds of the network occupancy
+ * (see Ons.PhysicalTopology.getOccupancy), where blocking becomes likely;
+ * retrials="R" is the number of trajectories followed from each crossing
+ * of a threshold;
+ * retrial-arrivals="N" is the number of arrivals after which a retrial
+ * ends anyway (calls / 100 by default).
+ *
+ * Each time the occupancy rises above a threshold, the state of the network
+ * is saved (as an in-memory Ons.Checkpoint), with the state of the arrival
+ * process (last arrival and MMPP state), and R trajectories are simulated
+ * from it, each with its own random traffic: R - 1 retrials, which end as
+ * soon as the occupancy falls below the threshold, and the continuation of
+ * the trajectory, which goes on below it. Above k thresholds, every part of
+ * the simulation is thus explored R^k times, so blockings are that much more
+ * frequent, and the events there are weighted by 1 / R^k in Ons.MyStatistics.
+ * The weights play the role of the likelihood ratio of importance sampling,
+ * but they stay bounded however long the run is.
+ *
+ * Calls are generated one at a time by the Ons.TrafficGenerator, as
+ * retrials need their own future traffic. The simulation ends after the
+ * given number of arrivals of the main trajectory; statisticStart counts the
+ * arrivals of all trajectories. The thresholds must be above the usual
+ * occupancy of the network: a retrial that does not fall below its
+ * threshold within retrial-arrivals is cut short, which biases the estimate.
+ *
+ * @author onsteam
+ */
+public class SplittingRunner {
+
+    private final ControlPlane cp;
+    private final EventScheduler events;
+    private final TrafficGenerator traffic;
+    private final double[] levels;
+    private final int retrials;
+    private final double[] weights; // by number of thresholds exceeded
+    private final long calls;
+    private final long maxRetrial;
+    private final Distribution seeds;
+    private final Tracer tr;
+    private final MyStatistics st;
+    private long arrivals; // of the main trajectory
+    private long splits;
+
+    /**
+     * Creates a new Ons.SplittingRunner object, and runs the simulation.
+     *
+     * @param cp the simulation's control plane
+     * @param events the simulation's event scheduler, with no traffic yet
+     * @param traffic the traffic generator, which has not generated traffic
+     * @param levels the occupancy thresholds, in increasing order
+     * @param retrials the number of trajectories from each threshold crossing
+     * @param maxRetrial the number of arrivals after which a retrial ends
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations
+     */
+    public SplittingRunner(ControlPlane cp, EventScheduler events, TrafficGenerator traffic, double[] levels, int retrials, long maxRetrial, int seed) {
+        if (levels.length == 0 || retrials < 1 || maxRetrial < 1) {
+            throw (new IllegalArgumentException());
+        }
+        for (int i = 1; i < levels.length; i++) {
+            if (levels[i] <= levels[i - 1]) {
+                throw (new IllegalArgumentException("Splitting levels must be increasing"));
+            }
+        }
+        this.cp = cp;
+        this.events = events;
+        this.traffic = traffic;
+        this.levels = levels;
+        this.retrials = retrials;
+        this.weights = new double[levels.length + 1];
+        for (int i = 0; i <= levels.length; i++) {
+            weights[i] = Math.pow(retrials, -i);
+        }
+        this.calls = traffic.getCalls();
+        this.maxRetrial = maxRetrial;
+        this.seeds = new Distribution(seed);
+        this.tr = Tracer.getTracerObject();
+        this.st = MyStatistics.getMyStatisticsObject();
+        this.arrivals = 0;
+        this.splits = 0;
+        traffic.startTraffic(cp.getPT(), seed);
+        traffic.generateCall(events);
+        run(0, true);
+    }
+
+    /**
+     * Simulates a trajectory above a number of thresholds, until the
+     * occupancy falls below the last of them or the main trajectory ends.
+     *
+     * @param level the number of thresholds the trajectory is above
+     * @param main true if the trajectory is the continuation of the main one
+     */
+    private void run(int level, boolean main) {
+        long own = 0;
+        while (arrivals < calls && (main || own < maxRetrial)) {
+            int current = level(cp.getPT().getOccupancy());
+            if (current < level) {
+                return;
+            }
+            if (current > level) {
+                split(level + 1, main);
+                continue;
+            }
+            Event event = events.popEvent();
+            st.setWeight(weights[level]);
+            SimulationRunner.handle(cp, event, tr, st);
+            if (event instanceof FlowArrivalEvent) {
+                traffic.generateCall(events);
+                st.arrivalHandled();
+                own++;
+                if (main) {
+                    arrivals++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulates the trajectories from the current state, which has just
+     * crossed a threshold: the retrials, then the continuation.
+     *
+     * @param level the number of thresholds exceeded
+     * @param main true if the continuation is that of the main trajectory
+     */
+    private void split(int level, boolean main) {
+        splits++;
+        Checkpoint state = new Checkpoint(null, 0, 0, traffic.getLastArrival());
+        // the arrival process is part of the state: the MMPP too
+        int mmppState = traffic.getMMPPState();
+        double mmppSwitch = traffic.getMMPPSwitch();
+        try {
+            state.save(cp, events);
+            for (int r = 0; r < retrials; r++) {
+                if (r > 0) {
+                    state.restoreNetwork(cp, events);
+                    traffic.setLastArrival(state.getLastArrival());
+                    traffic.setMMPPState(mmppState, mmppSwitch);
+                }
+                traffic.reseed(seeds.nextLong());
+                run(level, main && r == retrials - 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int level(double occupancy) {
+        int level = 0;
+        while (level < levels.length && occupancy >= levels[level]) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Retrieves the number of threshold crossings from which trajectories
+     * were split.
+     *
+     * @return the number of splits
+     */
+    public long getSplits() {
+        return splits;
+    }
+}
@@ -0,0 +1,47 @@
+package Ons;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes trace records as lines of text, in the format of the original
+ * Ons.Tracer: [event] [time] [info].
+ *
+ * @author onsteam
+ */
+class TextTraceOutput implements TraceOutput {
+
+    private final PrintWriter trace;
+    private final StringBuilder line;
+
+    /**
+     * Creates a new Ons.TextTraceOutput object.
+     *
+     * @param filename name of the trace file
+     * @throws IOException if the file cannot be created
+     */
+    TextTraceOutput(String filename) throws IOException {
+        trace = new PrintWriter(new BufferedWriter(new FileWriter(filename), 1 << 16));
+        line = new StringBuilder(256);
+    }
+
+    @Override
+    public void write(long[] rec, int off) {
+        line.setLength(0);
+        TraceRecord.format(rec, off, line);
+        trace.println(line);
+    }
+
+    @Override
+    public void flush() {
+        trace.flush();
+    }
+
+    @Override
+    public void close() {
+        trace.flush();
+        trace.close();
+    }
+}
@@ -0,0 +1,151 @@
+package Ons;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Delta coding of trace record words for the binary trace format. Words
+ * that usually repeat or grow slowly from one record to the next are stored
+ * as the difference to the previous value of the same field:
+ *
+ * - arrival and departure times, either as their raw bits or, when the trace
+ * has a time resolution, as a whole number of ticks of that resolution;
+ * - the fields of a flow (id, src, dst, bw, duration, cos), compared with the
+ * last flow written, so the decision on a flow right after its arrival is
+ * all zeros;
+ * - the flow id of departures and the id of lightpaths.
+ *
+ * The words after the id of a removed lightpath are stored as the
+ * difference to the words of the lightpath created with the same id, which
+ * makes them zeros too.
+ *
+ * All words, difference or not, are then zigzag encoded so that small
+ * negative values also make short varints. The writer and the reader keep
+ * one Ons.TraceCodec each and must see the same records in the same order.
+ *
+ * Raw time bits keep times exact, but consecutive times differ in most of
+ * their mantissa bits, and take 5 to 6 bytes each. Ticks of a resolution
+ * well below the mean interarrival time take 2 to 3 bytes, and times are
+ * read back rounded to the nearest tick.
+ *
+ * @author onsteam
+ */
+final class TraceCodec {
+
+    private static final int NONE = -1;
+    private static final int TIME = 0;
+    private static final int DEPARTURE = 1;
+    private static final int LIGHTPATH = 2;
+    private static final int FLOW = 3;
+
+    private final double resolution; // 0 for raw time bits
+    private final long[] last;
+    private final HashMap<Long, long[]> lightpaths; // payloads of the lightpaths created, by id
+
+    /**
+     * Creates a new Ons.TraceCodec object, with all previous values zero.
+     *
+     * @param resolution the length of a time tick, or 0 to keep times exact
+     */
+    TraceCodec(double resolution) {
+        if (resolution < 0 || Double.isNaN(resolution) || Double.isInfinite(resolution)) {
+            throw (new IllegalArgumentException());
+        }
+        this.resolution = resolution;
+        last = new long[FLOW + TraceRecord.FLOW_WORDS];
+        lightpaths = new HashMap<>();
+    }
+
+    /**
+     * Forgets the previous values, so that the next records can be decoded
+     * without the ones before them.
+     */
+    void reset() {
+        Arrays.fill(last, 0);
+        lightpaths.clear();
+    }
+
+    /**
+     * Encodes the payload of a record.
+     *
+     * @param rec the array holding the record
+     * @param off the position of the record header
+     * @param out where the zigzag encoded words or differences are stored
+     */
+    void encode(long[] rec, int off, long[] out) {
+        int kind = TraceRecord.kind(rec[off]);
+        int words = TraceRecord.length(rec[off]) - 1;
+        long[] reference = null;
+        if (kind == TraceRecord.LIGHTPATH_REMOVED && words > 1) {
+            reference = lightpaths.remove(rec[off + 2]);
+        }
+        for (int i = 0; i < words; i++) {
+            long word = rec[off + 1 + i];
+            int field = field(kind, i);
+            if (field == TIME && resolution > 0) {
+                word = Math.round(Double.longBitsToDouble(word) / resolution);
+            }
+            long value = word;
+            if (field != NONE) {
+                value -= last[field];
+                last[field] = word;
+            } else if (reference != null && i > 1 && i < reference.length) {
+                value -= reference[i];
+            }
+            out[i] = (value << 1) ^ (value >> 63);
+        }
+        if (kind == TraceRecord.LIGHTPATH_CREATED && words > 1) {
+            lightpaths.put(rec[off + 2], Arrays.copyOfRange(rec, off + 1, off + 1 + words));
+        }
+    }
+
+    /**
+     * Decodes the payload of a record, in place.
+     *
+     * @param rec the record, with its header at position 0 and its zigzag
+     * encoded words after it
+     */
+    void decode(long[] rec) {
+        int kind = TraceRecord.kind(rec[0]);
+        int words = TraceRecord.length(rec[0]) - 1;
+        long[] reference = null;
+        for (int i = 0; i < words; i++) {
+            long word = (rec[1 + i] >>> 1) ^ -(rec[1 + i] & 1);
+            int field = field(kind, i);
+            if (field != NONE) {
+                word += last[field];
+                last[field] = word;
+                if (field == TIME && resolution > 0) {
+                    word = Double.doubleToRawLongBits(word * resolution);
+                }
+            } else if (reference != null && i > 1 && i < reference.length) {
+                word += reference[i];
+            }
+            rec[1 + i] = word;
+            if (i == 1 && kind == TraceRecord.LIGHTPATH_REMOVED) {
+                reference = lightpaths.remove(word);
+            }
+        }
+        if (kind == TraceRecord.LIGHTPATH_CREATED && words > 1) {
+            lightpaths.put(rec[2], Arrays.copyOfRange(rec, 1, 1 + words));
+        }
+    }
+
+    private static int field(int kind, int i) {
+        switch (kind) {
+            case TraceRecord.ARRIVAL:
+                return i == 0 ? TIME : (i <= TraceRecord.FLOW_WORDS ? FLOW + i - 1 : NONE);
+            case TraceRecord.DEPARTURE:
+                return i == 0 ? TIME : (i == 1 ? DEPARTURE : NONE);
+            case TraceRecord.ACCEPTED:
+            case TraceRecord.ACCEPTED_MULTIPATH:
+            case TraceRecord.BLOCKED:
+                return i < TraceRecord.FLOW_WORDS ? FLOW + i : NONE;
+            case TraceRecord.LIGHTPATH_CREATED:
+            case TraceRecord.LIGHTPATH_REMOVED:
+                return i == 1 ? LIGHTPATH : NONE;
+            default:
+                return NONE;
+        }
+    }
+}
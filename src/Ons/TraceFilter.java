@@ -0,0 +1,229 @@
+package Ons;
+
+import java.util.Arrays;
+import org.w3c.dom.Element;
+
+/**
+ * Decides which events the Ons.Tracer records, before any record is built.
+ * It is configured by attributes of the trace tag of the simulation file:
+ *
+ * events="flow-blocked,flow-accepted" records only the given kinds of
+ * event: flow-arrived, flow-departed, flow-accepted, flow-blocked,
+ * lightpath-created and lightpath-removed;
+ * pairs="0-5,3-*" records only flows (and lightpaths) between the given
+ * source and destination nodes, where * matches any node;
+ * cos="0,2" records only flows of the given classes of service;
+ * sample="N" records only one flow in N, chosen by flow id;
+ * windows="100:200,500:600" records only events whose simulation time
+ * lies in one of the given intervals.
+ *
+ * Flows are selected as a whole: if a flow passes the pairs, cos and sample
+ * filters, its arrival, decision and departure all do (subject to the events
+ * and windows filters). Departure events only carry the flow id, so the
+ * selected flows are remembered between their arrival and their departure.
+ * The cos and sample filters do not apply to lightpaths.
+ *
+ * @author onsteam
+ */
+class TraceFilter {
+
+    private static final String[] KINDS = {"flow-arrived", "flow-departed", "flow-accepted", "flow-blocked", "lightpath-created", "lightpath-removed"};
+    private static final int[] KIND_RECORDS = {TraceRecord.ARRIVAL, TraceRecord.DEPARTURE, TraceRecord.ACCEPTED, TraceRecord.BLOCKED, TraceRecord.LIGHTPATH_CREATED, TraceRecord.LIGHTPATH_REMOVED};
+
+    private final boolean[] kinds; // indexed by record kind
+    private final int[] pairSrc; // -1 matches any node; null means no pair filter
+    private final int[] pairDst;
+    private final boolean[] classes; // indexed by cos; null means no cos filter
+    private final long sample;
+    private final double[] windows; // from0, to0, from1, to1...; null means no time filter
+    private final FlowTable selected; // selected flows until they depart; null if not needed
+    private double time;
+
+    /**
+     * Creates a new Ons.TraceFilter object from the trace tag.
+     *
+     * @param xml the trace tag
+     */
+    TraceFilter(Element xml) {
+        kinds = new boolean[TraceRecord.TEXT + 1];
+        if (xml.hasAttribute("events")) {
+            for (String part : split(xml.getAttribute("events"))) {
+                int k = Arrays.asList(KINDS).indexOf(part);
+                if (k < 0) {
+                    throw (new IllegalArgumentException("Unknown trace event \"" + part + "\""));
+                }
+                kinds[KIND_RECORDS[k]] = true;
+            }
+            kinds[TraceRecord.ACCEPTED_MULTIPATH] = kinds[TraceRecord.ACCEPTED];
+        } else {
+            Arrays.fill(kinds, true);
+        }
+        kinds[TraceRecord.TEXT] = true;
+        if (xml.hasAttribute("pairs")) {
+            String[] parts = split(xml.getAttribute("pairs"));
+            pairSrc = new int[parts.length];
+            pairDst = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                String[] nodes = parts[i].split("-");
+                if (nodes.length != 2) {
+                    throw (new IllegalArgumentException("\"pairs\" in xml must be a list of src-dst"));
+                }
+                pairSrc[i] = nodes[0].equals("*") ? -1 : Integer.parseInt(nodes[0]);
+                pairDst[i] = nodes[1].equals("*") ? -1 : Integer.parseInt(nodes[1]);
+            }
+        } else {
+            pairSrc = null;
+            pairDst = null;
+        }
+        if (xml.hasAttribute("cos")) {
+            String[] parts = split(xml.getAttribute("cos"));
+            int max = 0;
+            for (String part : parts) {
+                max = Math.max(max, Integer.parseInt(part));
+            }
+            classes = new boolean[max + 1];
+            for (String part : parts) {
+                classes[Integer.parseInt(part)] = true;
+            }
+        } else {
+            classes = null;
+        }
+        if (xml.hasAttribute("sample")) {
+            sample = Long.parseLong(xml.getAttribute("sample"));
+            if (sample < 1) {
+                throw (new IllegalArgumentException("\"sample\" in xml must be at least 1"));
+            }
+        } else {
+            sample = 1;
+        }
+        if (xml.hasAttribute("windows")) {
+            String[] parts = split(xml.getAttribute("windows"));
+            windows = new double[parts.length * 2];
+            for (int i = 0; i < parts.length; i++) {
+                String[] bounds = parts[i].split(":");
+                if (bounds.length != 2) {
+                    throw (new IllegalArgumentException("\"windows\" in xml must be a list of from:to"));
+                }
+                windows[2 * i] = Double.parseDouble(bounds[0]);
+                windows[2 * i + 1] = Double.parseDouble(bounds[1]);
+            }
+        } else {
+            windows = null;
+        }
+        selected = (pairSrc != null || classes != null) ? new FlowTable() : null;
+        time = 0;
+    }
+
+    /**
+     * Says whether the trace tag configures any filter.
+     *
+     * @param xml the trace tag, or null
+     * @return true if there is at least one filter attribute
+     */
+    static boolean isConfigured(Element xml) {
+        return xml != null && (xml.hasAttribute("events") || xml.hasAttribute("pairs") || xml.hasAttribute("cos")
+                || xml.hasAttribute("sample") || xml.hasAttribute("windows"));
+    }
+
+    /**
+     * Sets the current simulation time, used by the time windows.
+     *
+     * @param time the time of the event being processed
+     */
+    void setTime(double time) {
+        this.time = time;
+    }
+
+    /**
+     * Decides on a flow arrival, and remembers the flow until its departure
+     * if it is selected.
+     *
+     * @param flow the arriving flow
+     * @return true if the arrival is to be recorded
+     */
+    boolean arrival(Flow flow) {
+        if (!isSelected(flow)) {
+            return false;
+        }
+        if (selected != null) {
+            selected.add(flow);
+        }
+        return kinds[TraceRecord.ARRIVAL] && inWindow();
+    }
+
+    /**
+     * Decides on a flow departure, and forgets the flow.
+     *
+     * @param id the id of the departing flow
+     * @return true if the departure is to be recorded
+     */
+    boolean departure(long id) {
+        boolean pass;
+        if (selected != null) {
+            int slot = selected.find(id);
+            pass = slot >= 0;
+            if (pass) {
+                selected.remove(slot);
+            }
+        } else {
+            pass = id % sample == 0;
+        }
+        return pass && kinds[TraceRecord.DEPARTURE] && inWindow();
+    }
+
+    /**
+     * Decides on the acceptance or blocking of a flow.
+     *
+     * @param flow the flow
+     * @param kind the record kind
+     * @return true if the event is to be recorded
+     */
+    boolean decision(Flow flow, int kind) {
+        return kinds[kind] && inWindow() && isSelected(flow);
+    }
+
+    /**
+     * Decides on the creation or removal of a lightpath.
+     *
+     * @param lp the lightpath
+     * @param kind the record kind
+     * @return true if the event is to be recorded
+     */
+    boolean lightpath(LightPath lp, int kind) {
+        return kinds[kind] && inWindow() && isPair(lp.getSource(), lp.getDestination());
+    }
+
+    private boolean isSelected(Flow flow) {
+        return flow.getID() % sample == 0
+                && (classes == null || (flow.getCOS() < classes.length && classes[flow.getCOS()]))
+                && isPair(flow.getSource(), flow.getDestination());
+    }
+
+    private boolean isPair(int src, int dst) {
+        if (pairSrc == null) {
+            return true;
+        }
+        for (int i = 0; i < pairSrc.length; i++) {
+            if ((pairSrc[i] < 0 || pairSrc[i] == src) && (pairDst[i] < 0 || pairDst[i] == dst)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inWindow() {
+        if (windows == null) {
+            return true;
+        }
+        for (int i = 0; i < windows.length; i += 2) {
+            if (time >= windows[i] && time <= windows[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] split(String list) {
+        return list.trim().split("[ ]*,[ ]*");
+    }
+}
@@ -0,0 +1,191 @@
+package Ons;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sidecar index of a segmented binary trace, stored next to the trace in a
+ * file with the ".idx" suffix. It has one fixed-width entry per segment:
+ *
+ * offset: file offset of the segment block in the trace
+ * first time, last time: simulation time at the start and at the end of
+ * the segment
+ * min flow, max flow: range of the flow ids the segment's records refer to
+ * records: number of records in the segment
+ *
+ * Segments are in time order, so the segment holding a given time is found
+ * by binary search. The index is memory-mapped, not loaded.
+ *
+ * @author onsteam
+ */
+public class TraceIndex {
+
+    private static final byte[] MAGIC = {'O', 'N', 'S', 'I'};
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int ENTRY = 48;
+
+    private final MappedByteBuffer entries;
+    private final int segments;
+
+    /**
+     * Opens the index of a segmented binary trace.
+     *
+     * @param traceFile name of the trace file (not of the index)
+     * @throws IOException if the index cannot be read
+     */
+    public TraceIndex(String traceFile) throws IOException {
+        String filename = getIndexFile(traceFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER || (channel.size() - HEADER) % ENTRY != 0) {
+                throw (new IOException(filename + " is not a trace index"));
+            }
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (entries.get(i) != MAGIC[i]) {
+                throw (new IOException(filename + " is not a trace index"));
+            }
+        }
+        if (entries.get(MAGIC.length) != VERSION) {
+            throw (new IOException(filename + " has an unsupported index version"));
+        }
+        segments = (entries.capacity() - HEADER) / ENTRY;
+    }
+
+    /**
+     * Retrieves the name of the index file of a trace.
+     *
+     * @param traceFile name of the trace file
+     * @return name of the index file
+     */
+    public static String getIndexFile(String traceFile) {
+        return traceFile + ".idx";
+    }
+
+    /**
+     * Retrieves the number of segments of the trace.
+     *
+     * @return the number of segments
+     */
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Retrieves the file offset of a segment block in the trace.
+     *
+     * @param segment the segment
+     * @return the offset in bytes
+     */
+    public long getOffset(int segment) {
+        return entries.getLong(entry(segment));
+    }
+
+    /**
+     * Retrieves the simulation time at the start of a segment.
+     *
+     * @param segment the segment
+     * @return the time
+     */
+    public double getFirstTime(int segment) {
+        return entries.getDouble(entry(segment) + 8);
+    }
+
+    /**
+     * Retrieves the simulation time at the end of a segment.
+     *
+     * @param segment the segment
+     * @return the time
+     */
+    public double getLastTime(int segment) {
+        return entries.getDouble(entry(segment) + 16);
+    }
+
+    /**
+     * Retrieves the lowest flow id referred to by a segment.
+     *
+     * @param segment the segment
+     * @return the flow id, or Long.MAX_VALUE if no record refers to a flow
+     */
+    public long getMinFlow(int segment) {
+        return entries.getLong(entry(segment) + 24);
+    }
+
+    /**
+     * Retrieves the highest flow id referred to by a segment.
+     *
+     * @param segment the segment
+     * @return the flow id, or -1 if no record refers to a flow
+     */
+    public long getMaxFlow(int segment) {
+        return entries.getLong(entry(segment) + 32);
+    }
+
+    /**
+     * Retrieves the number of records of a segment.
+     *
+     * @param segment the segment
+     * @return the number of records
+     */
+    public long getRecords(int segment) {
+        return entries.getLong(entry(segment) + 40);
+    }
+
+    /**
+     * Finds the first segment that may hold records at or after a given
+     * time.
+     *
+     * @param time the simulation time
+     * @return the segment, or getSegments() if the trace ends before time
+     */
+    public int findTime(double time) {
+        int lo = 0, hi = segments;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getLastTime(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Says whether a segment may hold records of a given flow.
+     *
+     * @param segment the segment
+     * @param flow the flow id
+     * @return true if the flow id is in the segment's range
+     */
+    public boolean mayContainFlow(int segment, long flow) {
+        return getMinFlow(segment) <= flow && flow <= getMaxFlow(segment);
+    }
+
+    private int entry(int segment) {
+        if (segment < 0 || segment >= segments) {
+            throw (new IllegalArgumentException());
+        }
+        return HEADER + segment * ENTRY;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(new byte[HEADER - MAGIC.length - 1]);
+    }
+
+    static void writeEntry(DataOutputStream out, long offset, double firstTime, double lastTime, long minFlow, long maxFlow, long records) throws IOException {
+        out.writeLong(offset);
+        out.writeDouble(firstTime);
+        out.writeDouble(lastTime);
+        out.writeLong(minFlow);
+        out.writeLong(maxFlow);
+        out.writeLong(records);
+    }
+}
@@ -0,0 +1,36 @@
+package Ons;
+
+import java.io.IOException;
+
+/**
+ * Destination of the trace records built by the Ons.Tracer. Records are
+ * laid out as described in Ons.TraceRecord.
+ *
+ * @author onsteam
+ */
+interface TraceOutput {
+
+    /**
+     * Writes one record. The array may be reused by the caller as soon as
+     * this method returns.
+     *
+     * @param rec the array holding the record
+     * @param off the position of the record header
+     * @throws IOException if the record cannot be written
+     */
+    void write(long[] rec, int off) throws IOException;
+
+    /**
+     * Makes sure every record written so far reached the file.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flushes and closes the output.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,92 @@
+package Ons;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Extracts parts of a segmented binary trace, as text, without scanning it
+ * from the start: the Ons.TraceIndex tells which segments to read.
+ *
+ * Usage: TraceQuery trace_file -time from to
+ *        TraceQuery trace_file -flow id
+ *
+ * @author onsteam
+ */
+public class TraceQuery {
+
+    /**
+     * Prints the records between two simulation times. Records without a time
+     * of their own (acceptances, blockings, lightpaths) are dated by the
+     * arrival or departure that precedes them.
+     *
+     * @param filename name of the trace file
+     * @param from the start of the time range
+     * @param to the end of the time range
+     * @param out where the text records are printed
+     * @throws IOException if the trace or its index cannot be read
+     */
+    public static void printTimeRange(String filename, double from, double to, PrintWriter out) throws IOException {
+        TraceIndex index = new TraceIndex(filename);
+        StringBuilder line = new StringBuilder(256);
+        try (TraceReader reader = new TraceReader(filename)) {
+            reader.seekTime(index, from);
+            while (reader.next() && reader.getCurrentTime() <= to) {
+                if (reader.getCurrentTime() >= from) {
+                    line.setLength(0);
+                    reader.format(line);
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the records of one flow: its arrival, the decision on it and its
+     * departure. Only the segments whose flow id range holds the flow are
+     * read.
+     *
+     * @param filename name of the trace file
+     * @param flow the flow id
+     * @param out where the text records are printed
+     * @throws IOException if the trace or its index cannot be read
+     */
+    public static void printFlow(String filename, long flow, PrintWriter out) throws IOException {
+        TraceIndex index = new TraceIndex(filename);
+        StringBuilder line = new StringBuilder(256);
+        try (TraceReader reader = new TraceReader(filename)) {
+            for (int s = 0; s < index.getSegments(); s++) {
+                if (!index.mayContainFlow(s, flow)) {
+                    continue;
+                }
+                reader.seek(index, s);
+                for (long r = 0; r < index.getRecords(s) && reader.next(); r++) {
+                    if (reader.getFlowID() == flow) {
+                        line.setLength(0);
+                        reader.format(line);
+                        out.println(line);
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String usage = "Usage: TraceQuery trace_file -time from to | -flow id";
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try {
+            if (args.length == 4 && args[1].equals("-time")) {
+                printTimeRange(args[0], Double.parseDouble(args[2]), Double.parseDouble(args[3]), out);
+            } else if (args.length == 3 && args[1].equals("-flow")) {
+                printFlow(args[0], Long.parseLong(args[2]), out);
+            } else {
+                System.out.println(usage);
+                System.exit(0);
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,371 @@
+package Ons;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Streams the records of a binary trace file back, one at a time, for
+ * post-processing. The file is read through a FileChannel in fixed-size
+ * chunks (inflated on the fly if it is compressed), so traces of any size can
+ * be processed in constant memory.
+ *
+ * Segmented traces are read one block at a time through memory-mapped
+ * buffers, and the reader can jump to any block with the help of the
+ * Ons.TraceIndex, for instance to the first segment of a time range.
+ *
+ * Records are returned in the Ons.TraceRecord layout:
+ *
+ * <pre>
+ * TraceReader reader = new TraceReader("sim.trace");
+ * while (reader.next()) {
+ *     if (reader.getKind() == TraceRecord.BLOCKED) {
+ *         long flow = reader.getRecord()[1];
+ *     }
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * @author onsteam
+ */
+public class TraceReader implements Closeable {
+
+    private final FileChannel channel;
+    private final InputStream inflater; // null if the file is not compressed or is segmented
+    private final boolean segmented;
+    private final Inflater blockInflater; // segmented and compressed files only
+    private byte[] buffer;
+    private byte[] raw;
+    private long blockOffset; // file offset of the next block of a segmented file
+    private double time;
+    private int position;
+    private int limit;
+    private long[] record;
+    private final TraceCodec codec;
+
+    /**
+     * Opens a binary trace file.
+     *
+     * @param filename name of the trace file
+     * @throws IOException if the file cannot be read or is not a binary trace
+     */
+    public TraceReader(String filename) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BinaryTraceOutput.MAGIC.length + 2);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            byte[] magic = Arrays.copyOf(header.array(), BinaryTraceOutput.MAGIC.length);
+            if (header.hasRemaining() || !Arrays.equals(magic, BinaryTraceOutput.MAGIC)) {
+                throw (new IOException(filename + " is not a binary trace file"));
+            }
+            if (header.get(magic.length) != BinaryTraceOutput.VERSION) {
+                throw (new IOException(filename + " has an unsupported trace version"));
+            }
+            int flags = header.get(magic.length + 1);
+            segmented = (flags & BinaryTraceOutput.SEGMENTED) != 0;
+            double resolution = 0;
+            if ((flags & BinaryTraceOutput.QUANTIZED) != 0) {
+                ByteBuffer tick = ByteBuffer.allocate(8);
+                while (tick.hasRemaining() && channel.read(tick) >= 0) {
+                }
+                resolution = tick.getDouble(0);
+                if (tick.hasRemaining() || !(resolution > 0)) {
+                    throw (new IOException(filename + " is not a binary trace file"));
+                }
+            }
+            codec = new TraceCodec(resolution);
+            boolean compressed = (flags & BinaryTraceOutput.COMPRESSED) != 0;
+            if (compressed && !segmented) {
+                inflater = new InflaterInputStream(Channels.newInputStream(channel), new Inflater(), 1 << 16);
+            } else {
+                inflater = null;
+            }
+            blockInflater = (compressed && segmented) ? new Inflater() : null;
+            blockOffset = channel.position();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        buffer = new byte[1 << 16];
+        position = 0;
+        limit = 0;
+        record = new long[64];
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false if the end of the trace was reached
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public boolean next() throws IOException {
+        if (position == limit && !(segmented ? loadBlock() : fill())) {
+            return false;
+        }
+        long header = getVarint();
+        int kind = (int) (header & 0xF);
+        long words = header >>> 4;
+        if (words >= Integer.MAX_VALUE) {
+            throw (new IOException("Malformed trace record"));
+        }
+        if (words + 1 > record.length) {
+            record = new long[Integer.highestOneBit((int) words + 1) << 1];
+        }
+        record[0] = TraceRecord.header(kind, (int) words + 1);
+        for (int i = 1; i <= words; ) {
+            int b = getByte();
+            long value = (b >>> 1) & 0x3F;
+            if ((b & 0x80) != 0) {
+                value |= getVarint() << 6;
+            }
+            if ((b & 1) == 0) {
+                record[i++] = value;
+            } else if (value >= words - i + 1) {
+                throw (new IOException("Malformed trace record"));
+            } else {
+                for (long run = value; run >= 0; run--) {
+                    record[i++] = 0;
+                }
+            }
+        }
+        codec.decode(record);
+        if (kind == TraceRecord.ARRIVAL || kind == TraceRecord.DEPARTURE) {
+            time = Double.longBitsToDouble(record[1]);
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the kind of the current record.
+     *
+     * @return one of the Ons.TraceRecord kinds
+     */
+    public int getKind() {
+        return TraceRecord.kind(record[0]);
+    }
+
+    /**
+     * Retrieves the current record. The array is reused by the next call to
+     * next, and may be longer than the record.
+     *
+     * @return the record, with its header at position 0
+     */
+    public long[] getRecord() {
+        return record;
+    }
+
+    /**
+     * Retrieves the time of the current record.
+     *
+     * @return the time of an arrival or departure record
+     */
+    public double getTime() {
+        if (getKind() != TraceRecord.ARRIVAL && getKind() != TraceRecord.DEPARTURE) {
+            throw (new IllegalStateException("Trace record has no time"));
+        }
+        return Double.longBitsToDouble(record[1]);
+    }
+
+    /**
+     * Retrieves the simulation time of the current record: its own time for
+     * arrivals and departures, and the time of the last arrival or departure
+     * before it for the other records.
+     *
+     * @return the simulation time
+     */
+    public double getCurrentTime() {
+        return time;
+    }
+
+    /**
+     * Retrieves the id of the flow the current record refers to.
+     *
+     * @return the flow id, or -1 if the record does not refer to a flow
+     */
+    public long getFlowID() {
+        return TraceRecord.getFlowID(record, 0);
+    }
+
+    /**
+     * Continues reading at the start of a segment of a segmented trace.
+     *
+     * @param index the index of the trace
+     * @param segment the segment
+     */
+    public void seek(TraceIndex index, int segment) {
+        if (!segmented) {
+            throw (new IllegalStateException("Trace is not segmented"));
+        }
+        if (segment == index.getSegments()) {
+            blockOffset = Long.MAX_VALUE; // end of the trace
+        } else {
+            blockOffset = index.getOffset(segment);
+            time = index.getFirstTime(segment);
+        }
+        position = 0;
+        limit = 0;
+    }
+
+    /**
+     * Continues reading at the first segment that may hold records at or
+     * after a given time. Records before that time may still follow, up to
+     * the end of that segment.
+     *
+     * @param index the index of the trace
+     * @param time the simulation time
+     */
+    public void seekTime(TraceIndex index, double time) {
+        seek(index, index.findTime(time));
+    }
+
+    /**
+     * Appends the current record as a line of the text trace format.
+     *
+     * @param sb where the text is appended
+     */
+    public void format(StringBuilder sb) {
+        TraceRecord.format(record, 0, sb);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.close();
+        }
+        if (blockInflater != null) {
+            blockInflater.end();
+        }
+        channel.close();
+    }
+
+    private int getByte() throws IOException {
+        if (position == limit && (segmented || !fill())) {
+            throw (new EOFException("Truncated trace record"));
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private long getVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position == limit && (segmented || !fill())) {
+                throw (new EOFException("Truncated trace record"));
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw (new IOException("Malformed trace record"));
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        if (inflater != null) {
+            n = inflater.read(buffer, 0, buffer.length);
+        } else {
+            n = channel.read(ByteBuffer.wrap(buffer));
+        }
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Maps the next block of a segmented file and decodes it into the
+     * buffer.
+     *
+     * @return false at the end of the trace
+     */
+    private boolean loadBlock() throws IOException {
+        if (blockOffset >= channel.size()) {
+            return false;
+        }
+        ByteBuffer size = ByteBuffer.allocate(4);
+        while (size.hasRemaining()) {
+            if (channel.read(size, blockOffset + size.position()) < 0) {
+                throw (new EOFException("Truncated trace block"));
+            }
+        }
+        int length = size.getInt(0);
+        if (length < 0 || blockOffset + 4 + length > channel.size()) {
+            throw (new EOFException("Truncated trace block"));
+        }
+        MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, blockOffset + 4, length);
+        if (blockInflater == null) {
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            block.get(buffer, 0, length);
+            limit = length;
+        } else {
+            if (raw == null || length > raw.length) {
+                raw = new byte[Math.max(length, 1 << 16)];
+            }
+            block.get(raw, 0, length);
+            blockInflater.reset();
+            blockInflater.setInput(raw, 0, length);
+            limit = 0;
+            try {
+                while (!blockInflater.finished()) {
+                    if (limit == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    int n = blockInflater.inflate(buffer, limit, buffer.length - limit);
+                    if (n == 0 && (blockInflater.needsInput() || blockInflater.needsDictionary())) {
+                        throw (new EOFException("Truncated trace block"));
+                    }
+                    limit += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+        position = 0;
+        blockOffset += 4 + length;
+        codec.reset();
+        return limit > 0;
+    }
+
+    /**
+     * Converts a binary trace file to the text trace format.
+     *
+     * Usage: TraceReader trace_file
+     *
+     * @param args the name of the binary trace file
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: TraceReader trace_file");
+            System.exit(0);
+        }
+        try (TraceReader reader = new TraceReader(args[0])) {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+            StringBuilder line = new StringBuilder(256);
+            while (reader.next()) {
+                line.setLength(0);
+                reader.format(line);
+                out.println(line);
+            }
+            out.flush();
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
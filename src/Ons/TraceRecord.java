@@ -0,0 +1,173 @@
+package Ons;
+
+/**
+ * Layout of the primitive trace records produced by the Ons.Tracer. A record
+ * is a run of long words: a header with the record kind and length, followed
+ * by the payload of that kind. Doubles are stored as their raw bits.
+ *
+ * Payloads:
+ * ARRIVAL: time, flow
+ * DEPARTURE: time, flow id
+ * ACCEPTED: flow, number of lightpaths, lightpath ids
+ * ACCEPTED_MULTIPATH: flow, number of paths, then for each path the number
+ * of lightpaths and their ids
+ * BLOCKED: flow
+ * LIGHTPATH_CREATED, LIGHTPATH_REMOVED: lightpath
+ * TEXT: number of chars, chars packed four per word
+ *
+ * where a flow is (id, src, dst, bw, duration, cos) and a lightpath is
+ * (type, id, src, dst, number of links, links) followed by the wavelengths
+ * of each link for WDM lightpaths or by the first and last slots for EON
+ * lightpaths.
+ *
+ * Records read back by the Ons.TraceReader use the same layout.
+ *
+ * @author onsteam
+ */
+public final class TraceRecord {
+
+    public static final int ARRIVAL = 1;
+    public static final int DEPARTURE = 2;
+    public static final int ACCEPTED = 3;
+    public static final int ACCEPTED_MULTIPATH = 4;
+    public static final int BLOCKED = 5;
+    public static final int LIGHTPATH_CREATED = 6;
+    public static final int LIGHTPATH_REMOVED = 7;
+    public static final int TEXT = 8;
+
+    public static final int FLOW_WORDS = 6;
+
+    public static final int LIGHTPATH = 0;
+    public static final int WDM_LIGHTPATH = 1;
+    public static final int EON_LIGHTPATH = 2;
+
+    private TraceRecord() {
+    }
+
+    static long header(int kind, int length) {
+        return ((long) kind << 32) | length;
+    }
+
+    public static int kind(long header) {
+        return (int) (header >>> 32);
+    }
+
+    public static int length(long header) {
+        return (int) header;
+    }
+
+    /**
+     * Appends the text representation of a record, as written in the text
+     * trace file, without the line terminator.
+     *
+     * @param rec the array holding the record
+     * @param off the position of the record header
+     * @param sb where the text is appended
+     */
+    public static void format(long[] rec, int off, StringBuilder sb) {
+        int p = off + 1;
+        switch (kind(rec[off])) {
+            case ARRIVAL:
+                sb.append("flow-arrived ").append(Double.longBitsToDouble(rec[p])).append(' ');
+                formatFlow(rec, p + 1, sb);
+                break;
+            case DEPARTURE:
+                sb.append("flow-departed ").append(Double.longBitsToDouble(rec[p])).append(' ').append(rec[p + 1]).append(" - - - - -");
+                break;
+            case ACCEPTED: {
+                sb.append("flow-accepted - ");
+                formatFlow(rec, p, sb);
+                p += FLOW_WORDS;
+                int n = (int) rec[p++];
+                for (int i = 0; i < n; i++) {
+                    sb.append(' ').append(rec[p++]);
+                }
+                break;
+            }
+            case ACCEPTED_MULTIPATH: {
+                sb.append("flow-accepted in multipath - ");
+                formatFlow(rec, p, sb);
+                p += FLOW_WORDS;
+                int paths = (int) rec[p++];
+                for (int i = 0; i < paths; i++) {
+                    sb.append(" Ons.Path-").append(i).append(": ");
+                    int n = (int) rec[p++];
+                    for (int j = 0; j < n; j++) {
+                        sb.append(" LP-").append(j).append(": ").append(rec[p++]);
+                    }
+                }
+                break;
+            }
+            case BLOCKED:
+                sb.append("flow-blocked - ");
+                formatFlow(rec, p, sb);
+                break;
+            case LIGHTPATH_CREATED:
+                sb.append("lightpath-created ");
+                formatLightpath(rec, p, sb);
+                break;
+            case LIGHTPATH_REMOVED:
+                sb.append("lightpath-removed ");
+                formatLightpath(rec, p, sb);
+                break;
+            case TEXT: {
+                int n = (int) rec[p++];
+                for (int i = 0; i < n; i++) {
+                    sb.append((char) (rec[p + (i >>> 2)] >>> ((i & 3) << 4)));
+                }
+                break;
+            }
+            default:
+                throw (new IllegalArgumentException("Unknown trace record kind " + kind(rec[off])));
+        }
+    }
+
+    /**
+     * Retrieves the id of the flow a record refers to.
+     *
+     * @param rec the array holding the record
+     * @param off the position of the record header
+     * @return the flow id, or -1 if the record does not refer to a flow
+     */
+    public static long getFlowID(long[] rec, int off) {
+        switch (kind(rec[off])) {
+            case ARRIVAL:
+            case DEPARTURE:
+                return rec[off + 2];
+            case ACCEPTED:
+            case ACCEPTED_MULTIPATH:
+            case BLOCKED:
+                return rec[off + 1];
+            default:
+                return -1;
+        }
+    }
+
+    private static void formatFlow(long[] rec, int p, StringBuilder sb) {
+        sb.append(rec[p]).append(' ').append(rec[p + 1]).append(' ').append(rec[p + 2]).append(' ')
+                .append(rec[p + 3]).append(' ').append(rec[p + 4]).append(' ').append(rec[p + 5]);
+    }
+
+    private static void formatLightpath(long[] rec, int p, StringBuilder sb) {
+        int type = (int) rec[p];
+        long id = rec[p + 1];
+        int n = (int) rec[p + 4];
+        int links = p + 5;
+        switch (type) {
+            case WDM_LIGHTPATH:
+                sb.append(id).append(' ').append(rec[p + 2]).append(' ').append(rec[p + 3]).append(' ');
+                for (int i = 0; i < n; i++) {
+                    sb.append(rec[links + i]).append('_').append(rec[links + n + i]).append(' ');
+                }
+                break;
+            case EON_LIGHTPATH:
+                sb.append(id).append("; ").append(rec[p + 2]).append(' ').append(rec[p + 3]).append(' ');
+                for (int i = 0; i < n; i++) {
+                    sb.append(rec[links + i]).append('_').append(rec[links + n]).append("->").append(rec[links + n + 1]).append(") ");
+                }
+                break;
+            default:
+                sb.append(id).append(' ').append(rec[p + 2]).append(' ').append(rec[p + 3]);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package Ons;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Replays the flow arrivals and departures recorded in a trace file, text or
+ * binary, instead of generating traffic. The trace is read as the simulation
+ * goes, so only one pending event is kept in memory no matter how long the
+ * trace is; all other records (acceptances, blockings, lightpaths) are
+ * skipped, since they are decided again by the Ons.RA module under test.
+ * 
+ * Replaying a trace recorded by the simulator feeds the Ons.ControlPlane with
+ * exactly the same flows in the same order, so different Ons.RA modules can be
+ * compared without relying on the Ons.TrafficGenerator. Traces captured
+ * elsewhere only need the text lines:
+ * 
+ * flow-arrived [time] [id] [src] [dst] [bw] [duration] [cos]
+ * flow-departed [time] [id]
+ * 
+ * in nondecreasing time order. Events added with addEvent are merged with
+ * the replayed ones by time.
+ * 
+ * @author onsteam
+ */
+public class TraceReplay extends EventScheduler {
+
+    private final String filename;
+    private TraceReader binary; // null for text traces
+    private BufferedReader text; // null for binary traces
+    private Event next; // next replayed event, null at the end of the trace
+    private double lastTime;
+    private long line;
+
+    /**
+     * Creates a new Ons.TraceReplay object and reads its first event.
+     * 
+     * @param filename name of the trace file
+     * @throws IOException if the file cannot be read
+     */
+    public TraceReplay(String filename) throws IOException {
+        super();
+        this.filename = filename;
+        if (isBinary(filename)) {
+            binary = new TraceReader(filename);
+        } else {
+            text = new BufferedReader(new FileReader(filename), 1 << 16);
+        }
+        lastTime = 0;
+        line = 0;
+        next = read();
+    }
+
+    /**
+     * Retrieves and removes the next event, either from the trace or from the
+     * events added to the queue.
+     * 
+     * @return the next event, or null if there are no more events
+     */
+    @Override
+    public Event popEvent() {
+        Event queued = super.peekEvent();
+        if (queued != null && (next == null || queued.getTime() < next.getTime())) {
+            return super.popEvent();
+        }
+        Event event = next;
+        if (event != null) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Retrieves the number of events known to the scheduler: those in the
+     * queue plus the pending replayed event. The rest of the trace is not
+     * counted, as it has not been read yet.
+     * 
+     * @return number of known events
+     */
+    @Override
+    public int numEvents() {
+        return super.numEvents() + (next == null ? 0 : 1);
+    }
+
+    /**
+     * Reads records until the next arrival or departure.
+     * 
+     * @return the event, or null at the end of the trace
+     */
+    private Event read() throws IOException {
+        Event event = (binary != null) ? readBinary() : readText();
+        if (event == null) {
+            close();
+            return null;
+        }
+        if (event.getTime() < lastTime) {
+            close();
+            throw (new IllegalArgumentException(filename + ": events out of time order at " + Double.toString(event.getTime())));
+        }
+        lastTime = event.getTime();
+        return event;
+    }
+
+    private Event readBinary() throws IOException {
+        while (binary.next()) {
+            long[] rec = binary.getRecord();
+            Event event;
+            if (binary.getKind() == TraceRecord.ARRIVAL) {
+                event = new FlowArrivalEvent(new Flow(rec[2], (int) rec[3], (int) rec[4], (int) rec[5], (int) rec[6], (int) rec[7]));
+            } else if (binary.getKind() == TraceRecord.DEPARTURE) {
+                event = new FlowDepartureEvent(rec[2]);
+            } else {
+                continue;
+            }
+            event.setTime(Double.longBitsToDouble(rec[1]));
+            return event;
+        }
+        return null;
+    }
+
+    private Event readText() throws IOException {
+        String str;
+        while ((str = text.readLine()) != null) {
+            line++;
+            Event event;
+            if (str.startsWith("flow-arrived ")) {
+                String[] parts = str.split(" ");
+                if (parts.length < 8) {
+                    throw (new IllegalArgumentException(filename + ":" + Long.toString(line) + ": malformed flow-arrived"));
+                }
+                event = new FlowArrivalEvent(new Flow(Long.parseLong(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                        Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), Integer.parseInt(parts[7])));
+            } else if (str.startsWith("flow-departed ")) {
+                String[] parts = str.split(" ");
+                if (parts.length < 3) {
+                    throw (new IllegalArgumentException(filename + ":" + Long.toString(line) + ": malformed flow-departed"));
+                }
+                event = new FlowDepartureEvent(Long.parseLong(parts[2]));
+            } else {
+                continue;
+            }
+            event.setTime(Double.parseDouble(str.substring(str.indexOf(' ') + 1, str.indexOf(' ', str.indexOf(' ') + 1))));
+            return event;
+        }
+        return null;
+    }
+
+    private void close() throws IOException {
+        if (binary != null) {
+            binary.close();
+        }
+        if (text != null) {
+            text.close();
+        }
+    }
+
+    /**
+     * Says whether a file starts with the binary trace magic bytes.
+     */
+    private static boolean isBinary(String filename) throws IOException {
+        byte[] magic = new byte[BinaryTraceOutput.MAGIC.length];
+        try (FileInputStream in = new FileInputStream(filename)) {
+            int n = 0;
+            while (n < magic.length) {
+                int r = in.read(magic, n, magic.length - n);
+                if (r < 0) {
+                    return false;
+                }
+                n += r;
+            }
+        }
+        return Arrays.equals(magic, BinaryTraceOutput.MAGIC);
+    }
+}
@@ -1,9 +1,8 @@
 package Ons;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.util.Arrays;
+import org.w3c.dom.Element;
 
 /**
  * Generates a trace file that contains information about what happened during
@@ -20,18 +19,28 @@ import java.io.PrintWriter;
  * n = flow accepted into the network
  * b = flow blocked
  * 
+ * The simulation thread never builds strings: each event becomes a compact
+ * record of primitive words (see Ons.TraceRecord) handed to a Ons.TraceOutput.
+ * By default the records are formatted and written right away; with
+ * asynchronous tracing they go through a ring buffer and a background writer
+ * thread does the formatting and the I/O.
+ * 
  */
 public class Tracer {
 
-    private PrintWriter trace;
+    private TraceOutput output;
+    private TraceFilter filter; // null records everything
     private static Tracer singletonObject;
     private boolean writeTrace;
+    private long[] record;
+    private int length;
 
     /**
      * A private Constructor prevents any other class from instantiating.
      */
     private Tracer() {
     	writeTrace = true;
+        record = new long[64];
     }
     
     /**
@@ -47,7 +56,13 @@ public class Tracer {
     }
     
     public void flushTrace() {
-        trace.flush();
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
     
     /**
@@ -66,7 +81,85 @@ public class Tracer {
      * @throws IOException exception thrown in case something goes wrong
      */
     public void setTraceFile(String filename) throws IOException {
-        trace = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+        setTraceFile(filename, null);
+    }
+    
+    /**
+     * Opens the trace file, configured by the optional trace tag of the
+     * simulation file:
+     * 
+     * <trace format="text" async="true" buffer="1048576" batch="4096" backpressure="block"/>
+     * 
+     * format is "text" or "binary", the compact format read back by the
+     * Ons.TraceReader; compress="true" deflates a binary trace; segment="N"
+     * splits a binary trace into segments of N records, indexed in a sidecar
+     * file (see Ons.TraceIndex); resolution="1e-6" stores the times of a
+     * binary trace as ticks of that length, much shorter than exact times,
+     * which are then read back rounded to the nearest tick. async moves
+     * formatting and writing to a background thread; buffer is the size of
+     * its ring buffer in 8-byte words; batch is the number of
+     * records the writer handles before releasing ring space; backpressure
+     * says what happens when the ring is full: "block" waits for the writer
+     * and "drop" discards the record. The events, pairs, cos, sample and
+     * windows attributes restrict what is recorded (see Ons.TraceFilter).
+     * 
+     * @param filename name of the file where the output will go
+     * @param xml the trace tag, or null for the defaults
+     * @throws IOException exception thrown in case something goes wrong
+     */
+    public void setTraceFile(String filename, Element xml) throws IOException {
+        TraceOutput out;
+        String format = (xml != null && xml.hasAttribute("format")) ? xml.getAttribute("format") : "text";
+        switch (format) {
+            case "text":
+                out = new TextTraceOutput(filename);
+                break;
+            case "binary":
+                int segment = 0;
+                if (xml.hasAttribute("segment")) {
+                    segment = Integer.parseInt(xml.getAttribute("segment"));
+                }
+                double resolution = 0;
+                if (xml.hasAttribute("resolution")) {
+                    resolution = Double.parseDouble(xml.getAttribute("resolution"));
+                    if (!(resolution > 0) || Double.isInfinite(resolution)) {
+                        throw (new IllegalArgumentException("\"resolution\" in xml must be a positive time"));
+                    }
+                }
+                out = new BinaryTraceOutput(filename, Boolean.parseBoolean(xml.getAttribute("compress")), segment, resolution);
+                break;
+            default:
+                throw (new IllegalArgumentException("\"format\" in xml must be \"text\" or \"binary\""));
+        }
+        if (format.equals("text") && xml != null && (xml.hasAttribute("segment") || xml.hasAttribute("resolution"))) {
+            out.close();
+            throw (new IllegalArgumentException("\"segment\" and \"resolution\" in xml require format=\"binary\""));
+        }
+        if (xml != null && Boolean.parseBoolean(xml.getAttribute("async"))) {
+            int buffer = 1 << 20, batch = 4096, backpressure = AsyncTraceOutput.BLOCK;
+            if (xml.hasAttribute("buffer")) {
+                buffer = Integer.parseInt(xml.getAttribute("buffer"));
+            }
+            if (xml.hasAttribute("batch")) {
+                batch = Integer.parseInt(xml.getAttribute("batch"));
+            }
+            if (xml.hasAttribute("backpressure")) {
+                switch (xml.getAttribute("backpressure")) {
+                    case "block":
+                        backpressure = AsyncTraceOutput.BLOCK;
+                        break;
+                    case "drop":
+                        backpressure = AsyncTraceOutput.DROP;
+                        break;
+                    default:
+                        out.close();
+                        throw (new IllegalArgumentException("\"backpressure\" in xml must be \"block\" or \"drop\""));
+                }
+            }
+            out = new AsyncTraceOutput(out, buffer, batch, backpressure);
+        }
+        output = out;
+        filter = TraceFilter.isConfigured(xml) ? new TraceFilter(xml) : null;
     }
     
     /**
@@ -89,7 +182,17 @@ public class Tracer {
         try {
             if (o instanceof String) {
                 if (writeTrace) {
-                    trace.println((String) o);
+                    String str = (String) o;
+                    begin();
+                    put(str.length());
+                    for (int i = 0; i < str.length(); i += 4) {
+                        long word = 0;
+                        for (int j = Math.min(3, str.length() - i - 1); j >= 0; j--) {
+                            word = (word << 16) | str.charAt(i + j);
+                        }
+                        put(word);
+                    }
+                    emit(TraceRecord.TEXT);
                 }
             } else if (o instanceof Event) {
                 addEvent((Event) o);
@@ -108,15 +211,14 @@ public class Tracer {
      * @param lightpaths the lightpaths that belong to the flow
      */
     public void acceptFlow(Flow flow, LightPath[] lightpaths) {
-        
-    	String str;
-
-        str = "flow-accepted " + "- " + flow.toTrace();
-        for (LightPath lightpath : lightpaths) {
-            str += " " + Long.toString(lightpath.getID());
-        }
-        if (writeTrace) {
-            trace.println(str);
+        if (writeTrace && (filter == null || filter.decision(flow, TraceRecord.ACCEPTED))) {
+            begin();
+            putFlow(flow);
+            put(lightpaths.length);
+            for (LightPath lightpath : lightpaths) {
+                put(lightpath.getID());
+            }
+            emit(TraceRecord.ACCEPTED);
         }
     }
     
@@ -127,13 +229,18 @@ public class Tracer {
      * @param paths the paths that belong to the flow
      */
     void acceptFlow(Flow flow, Path[] paths) {
-        String str;
-        str = "flow-accepted in multipath " + "- " + flow.toTrace();
-        for (int i = 0; i < paths.length; i++) {
-            str += " Ons.Path-" + i + ": " + paths[i].toTrace();
-        }
-        if (writeTrace) {
-            trace.println(str);
+        if (writeTrace && (filter == null || filter.decision(flow, TraceRecord.ACCEPTED_MULTIPATH))) {
+            begin();
+            putFlow(flow);
+            put(paths.length);
+            for (Path path : paths) {
+                LightPath[] lightpaths = path.getLightpaths();
+                put(lightpaths.length);
+                for (LightPath lightpath : lightpaths) {
+                    put(lightpath.getID());
+                }
+            }
+            emit(TraceRecord.ACCEPTED_MULTIPATH);
         }
     }
     
@@ -143,8 +250,10 @@ public class Tracer {
      * @param flow the blocked flow
      */
     public void blockFlow(Flow flow) {
-        if (writeTrace) {
-            trace.println("flow-blocked " + "- " + flow.toTrace());
+        if (writeTrace && (filter == null || filter.decision(flow, TraceRecord.BLOCKED))) {
+            begin();
+            putFlow(flow);
+            emit(TraceRecord.BLOCKED);
         }
     }
     
@@ -154,8 +263,10 @@ public class Tracer {
      * @param lp the Ons.LightPath object that was created
      */
     public void createLightpath(LightPath lp) {
-        if (writeTrace) {
-            trace.println("lightpath-created " + lp.toTrace());
+        if (writeTrace && (filter == null || filter.lightpath(lp, TraceRecord.LIGHTPATH_CREATED))) {
+            begin();
+            putLightpath(lp);
+            emit(TraceRecord.LIGHTPATH_CREATED);
         }
     }
     
@@ -165,8 +276,10 @@ public class Tracer {
      * @param lp    Ons.LightPath object that was removed
      */
     public void removeLightpath(LightPath lp) {
-        if (writeTrace) {
-            trace.println("lightpath-removed " + lp.toTrace());
+        if (writeTrace && (filter == null || filter.lightpath(lp, TraceRecord.LIGHTPATH_REMOVED))) {
+            begin();
+            putLightpath(lp);
+            emit(TraceRecord.LIGHTPATH_REMOVED);
         }
     }
     
@@ -180,18 +293,27 @@ public class Tracer {
     {
         try
         {
+            if (filter != null) {
+                filter.setTime(event.getTime());
+            }
         	if (event instanceof FlowArrivalEvent)
         	{
-                if (writeTrace)
+                if (writeTrace && (filter == null || filter.arrival(((FlowArrivalEvent) event).getFlow())))
                 {
-                    trace.println("flow-arrived " + Double.toString(event.getTime()) + " " + ((FlowArrivalEvent) event).getFlow().toTrace());
+                    begin();
+                    put(Double.doubleToRawLongBits(event.getTime()));
+                    putFlow(((FlowArrivalEvent) event).getFlow());
+                    emit(TraceRecord.ARRIVAL);
                 }
             }
         	else if (event instanceof FlowDepartureEvent)
         	{
-                if (writeTrace)
+                if (writeTrace && (filter == null || filter.departure(((FlowDepartureEvent) event).getID())))
                 {
-                    trace.println("flow-departed " + Double.toString(event.getTime()) + " " + Long.toString(((FlowDepartureEvent) event).getID()) + " - - - - -");
+                    begin();
+                    put(Double.doubleToRawLongBits(event.getTime()));
+                    put(((FlowDepartureEvent) event).getID());
+                    emit(TraceRecord.DEPARTURE);
                 }
             }
         }
@@ -202,14 +324,87 @@ public class Tracer {
         }
     }
     
+    /**
+     * Starts a new record, leaving room for its header.
+     */
+    private void begin() {
+        length = 1;
+    }
+    
+    private void put(long word) {
+        if (length == record.length) {
+            record = Arrays.copyOf(record, length * 2);
+        }
+        record[length++] = word;
+    }
+    
+    private void putFlow(Flow flow) {
+        put(flow.getID());
+        put(flow.getSource());
+        put(flow.getDestination());
+        put(flow.getRate());
+        put(flow.getDuration());
+        put(flow.getCOS());
+    }
+    
+    private void putLightpath(LightPath lp) {
+        int[] links = lp.getLinks();
+        if (lp instanceof WDMLightPath) {
+            put(TraceRecord.WDM_LIGHTPATH);
+        } else if (lp instanceof EONLightPath) {
+            put(TraceRecord.EON_LIGHTPATH);
+        } else {
+            put(TraceRecord.LIGHTPATH);
+        }
+        put(lp.getID());
+        put(lp.getSource());
+        put(lp.getDestination());
+        put(links.length);
+        for (int link : links) {
+            put(link);
+        }
+        if (lp instanceof WDMLightPath) {
+            for (int wavelength : ((WDMLightPath) lp).getWavelengths()) {
+                put(wavelength);
+            }
+        } else if (lp instanceof EONLightPath) {
+            put(((EONLightPath) lp).getFirstSlot());
+            put(((EONLightPath) lp).getLastSlot());
+        }
+    }
+    
+    /**
+     * Completes the record with its header and hands it to the output.
+     * 
+     * @param kind the record kind, one of the Ons.TraceRecord constants
+     */
+    private void emit(int kind) {
+        if (output == null) {
+            return;
+        }
+        record[0] = TraceRecord.header(kind, length);
+        try {
+            output.write(record, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
     /**
      * Finalizes the tracing actions by attributing the singletonObject to null
      * and closing/flushing the object that generates the output.
      */
     public void finish()
     {
-        trace.flush();
-        trace.close();
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        output = null;
+        filter = null;
         singletonObject = null;
     }
 }
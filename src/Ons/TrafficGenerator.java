@@ -12,6 +12,25 @@ import org.w3c.dom.*;
  * Generates the network's traffic based on the information passed through the
  * command line arguments and the XML simulation file.
  * 
+ * By default, calls arrive as a Poisson process at the load of the traffic
+ * tag, with exponential holding times. Optional tags of the traffic tag
+ * change that, to stress RA modules with peaks and bursts:
+ * 
+ * rate-profile period="T" multipliers="m1,m2,..." multiplies the load by
+ * m1, m2... in successive equal parts of each period T (seconds);
+ * rate-profile period="T" amplitude="a" peak="p" multiplies it by
+ * 1 + a cos(2 pi (t - p) / T), a diurnal cycle peaking at time p;
+ * mmpp multipliers="m1,m2,..." sojourns="s1,s2,..." multiplies it by the
+ * multiplier of the state of a Markov chain, which stays in state i for an
+ * exponential time of mean si, then moves to another state at random;
+ * holding-time distribution="pareto" shape="a", or distribution="lognormal"
+ * sigma="s", gives heavy-tailed holding times, of the means of the calls
+ * tags.
+ * 
+ * Multipliers of mean 1 keep the mean load. With any of these tags, the
+ * calls are generated as the simulation goes (see Ons.LazyTraffic), so
+ * only the pending ones are in memory.
+ * 
  * @author onsteam
  */
 public class TrafficGenerator {
@@ -24,6 +43,31 @@ public class TrafficGenerator {
     private double meanHoldingTime;
     private int TotalWeight;
     private int numberCallsTypes;
+    private double lastArrival;
+    private boolean xoroshiro;
+    private int[] cumulativeWeight; // of the types up to each one
+    private int[] guide; // first type of each of numberCallsTypes equal parts of the weights
+    private int[] pairSource, pairDestination; // of the traffic matrix
+    private AliasTable pairs; // null if calls go uniformly between all nodes
+    // Traffic models
+    private boolean lazy;
+    private double period; // of the rate profile, 0 if none
+    private double[] multipliers; // of the load in each part of the period, null for a diurnal profile
+    private double amplitude, peak; // of the diurnal profile
+    private double profileMax;
+    private double[] mmppRates; // multipliers of the load in each state of the MMPP, null if none
+    private double[] mmppSojourns; // mean time in each state
+    private double mmppMax;
+    private int mmppState;
+    private double mmppSwitch; // time the MMPP leaves its state
+    private int holdingDistribution;
+    private double holdingShape; // Pareto shape or lognormal sigma
+    private static final int EXPONENTIAL = 0, PARETO = 1, LOGNORMAL = 2;
+    // State of the calls generated one at a time (startTraffic)
+    private double meanArrivalTime;
+    private int numNodes;
+    private long nextID;
+    private Distribution dist1, dist2, dist3, dist4;
 
     /**
      * Creates a new Ons.TrafficGenerator object.
@@ -47,6 +91,15 @@ public class TrafficGenerator {
         } else {
             maxRate = 0;
         }
+        // random streams: the table of 25 seeds, or xoroshiro128++ with any seed
+        xoroshiro = false;
+        if (xml.hasAttribute("generator")) {
+            if (xml.getAttribute("generator").equals("xoroshiro")) {
+                xoroshiro = true;
+            } else if (!xml.getAttribute("generator").equals("table")) {
+                throw (new IllegalArgumentException("Unknown random generator: " + xml.getAttribute("generator")));
+            }
+        }
 
         if (Simulator.verbose) {
             System.out.println(xml.getAttribute("calls") + " calls, " + xml.getAttribute("load") + " erlangs.");
@@ -85,6 +138,107 @@ public class TrafficGenerator {
                 System.out.println("Mean holding time: " + Double.toString(holdingTime) + " seconds.");
             }
         }
+        guide();
+
+        // Process the traffic matrix, if any
+        NodeList pairlist = xml.getElementsByTagName("pair");
+        if (pairlist.getLength() > 0) {
+            pairSource = new int[pairlist.getLength()];
+            pairDestination = new int[pairlist.getLength()];
+            double[] pairWeights = new double[pairlist.getLength()];
+            for (int i = 0; i < pairlist.getLength(); i++) {
+                Element pair = (Element) pairlist.item(i);
+                pairSource[i] = Integer.parseInt(pair.getAttribute("src"));
+                pairDestination[i] = Integer.parseInt(pair.getAttribute("dst"));
+                pairWeights[i] = Double.parseDouble(pair.getAttribute("weight"));
+                if (pairSource[i] < 0 || pairDestination[i] < 0 || pairSource[i] == pairDestination[i]) {
+                    throw (new IllegalArgumentException("Invalid pair in the traffic matrix: " + pairSource[i] + "-" + pairDestination[i]));
+                }
+            }
+            pairs = new AliasTable(pairWeights);
+            if (Simulator.verbose) {
+                System.out.println(Integer.toString(pairlist.getLength()) + " node pair(s) in the traffic matrix.");
+            }
+        }
+
+        // Process the traffic models, if any
+        lazy = xml.hasAttribute("lazy") && Boolean.parseBoolean(xml.getAttribute("lazy"));
+        profileMax = 1;
+        Element profile = (Element) xml.getElementsByTagName("rate-profile").item(0);
+        if (profile != null) {
+            period = Double.parseDouble(profile.getAttribute("period"));
+            if (profile.hasAttribute("multipliers")) {
+                multipliers = parseList(profile.getAttribute("multipliers"));
+                profileMax = 0;
+                for (double multiplier : multipliers) {
+                    if (multiplier < 0) {
+                        throw (new IllegalArgumentException("\"multipliers\" in rate-profile can not be negative"));
+                    }
+                    profileMax = Math.max(profileMax, multiplier);
+                }
+            } else {
+                amplitude = Double.parseDouble(profile.getAttribute("amplitude"));
+                peak = profile.hasAttribute("peak") ? Double.parseDouble(profile.getAttribute("peak")) : 0;
+                if (amplitude < 0 || amplitude > 1) {
+                    throw (new IllegalArgumentException("\"amplitude\" in rate-profile must be in [0,1]"));
+                }
+                profileMax = 1 + amplitude;
+            }
+            if (period <= 0 || profileMax <= 0) {
+                throw (new IllegalArgumentException("Invalid rate-profile"));
+            }
+            lazy = true;
+            if (Simulator.verbose) {
+                System.out.println("Rate profile of period " + Double.toString(period) + " seconds.");
+            }
+        }
+        mmppMax = 1;
+        Element mmpp = (Element) xml.getElementsByTagName("mmpp").item(0);
+        if (mmpp != null) {
+            mmppRates = parseList(mmpp.getAttribute("multipliers"));
+            mmppSojourns = parseList(mmpp.getAttribute("sojourns"));
+            if (mmppRates.length != mmppSojourns.length) {
+                throw (new IllegalArgumentException("\"multipliers\" and \"sojourns\" in mmpp must have the same length"));
+            }
+            mmppMax = 0;
+            for (int i = 0; i < mmppRates.length; i++) {
+                if (mmppSojourns[i] <= 0) {
+                    throw (new IllegalArgumentException("\"sojourns\" in mmpp must be positive"));
+                }
+                mmppMax = Math.max(mmppMax, mmppRates[i]);
+            }
+            if (mmppMax <= 0) {
+                throw (new IllegalArgumentException("Invalid mmpp"));
+            }
+            lazy = true;
+            if (Simulator.verbose) {
+                System.out.println(Integer.toString(mmppRates.length) + "-state MMPP arrivals.");
+            }
+        }
+        holdingDistribution = EXPONENTIAL;
+        Element holding = (Element) xml.getElementsByTagName("holding-time").item(0);
+        if (holding != null) {
+            String distribution = holding.getAttribute("distribution");
+            if (distribution.equals("pareto")) {
+                holdingDistribution = PARETO;
+                holdingShape = Double.parseDouble(holding.getAttribute("shape"));
+                if (holdingShape <= 1) {
+                    throw (new IllegalArgumentException("\"shape\" in holding-time must be greater than 1"));
+                }
+            } else if (distribution.equals("lognormal")) {
+                holdingDistribution = LOGNORMAL;
+                holdingShape = Double.parseDouble(holding.getAttribute("sigma"));
+                if (holdingShape <= 0) {
+                    throw (new IllegalArgumentException("\"sigma\" in holding-time must be positive"));
+                }
+            } else if (!distribution.equals("exponential")) {
+                throw (new IllegalArgumentException("Unknown holding-time distribution: " + distribution));
+            }
+            lazy = true;
+            if (Simulator.verbose) {
+                System.out.println("Holding times: " + distribution + ".");
+            }
+        }
     }
 
     /**
@@ -92,60 +246,442 @@ public class TrafficGenerator {
      *
      * @param events Ons.EventScheduler object that will contain the simulation events
      * @param pt the network's Physical Topology
-     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations (any positive number with the xoroshiro generator)
      */
     public void generateTraffic(PhysicalTopology pt, EventScheduler events, int seed) {
+        generateTraffic(pt, events, seed, 0, 0, 0.0);
+    }
 
-        // Compute the weight vector
-        int[] weightVector = new int[TotalWeight];
-        int aux = 0;
-        for (int i = 0; i < numberCallsTypes; i++) {
-            for (int j = 0; j < callsTypesInfo[i].getWeight(); j++) {
-                weightVector[aux] = i;
-                aux++;
-            }
-        }
-        
-        /* Compute the arrival time
-         *
-         * load = meanArrivalRate x holdingTime x bw/maxRate
-         * 1/meanArrivalRate = (holdingTime x bw/maxRate)/load
-         * meanArrivalTime = (holdingTime x bw/maxRate)/load
-         */
-        double meanArrivalTime;
-        if (pt instanceof EONPhysicalTopology){
-            //Because the EON architecture is not possible to obtain a maxRate... So:
-            meanArrivalTime = meanHoldingTime/load;
-        } else {
-            meanArrivalTime = (meanHoldingTime * (meanRate / (double) maxRate)) / load;
-        }
+    /**
+     * Generates part of the network's traffic, or traffic that follows
+     * other traffic, for instance to continue a simulation restored from an
+     * Ons.Checkpoint. The first calls are drawn but not scheduled, so the
+     * random streams are where they would be in a simulation generating all
+     * calls from the start.
+     *
+     * @param events Ons.EventScheduler object that will contain the simulation events
+     * @param pt the network's Physical Topology
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations (any positive number with the xoroshiro generator)
+     * @param idOffset added to the ids of the calls, which otherwise go from 1 to calls
+     * @param skip number of calls drawn but not scheduled
+     * @param startTime time after which the first scheduled call arrives
+     */
+    public void generateTraffic(PhysicalTopology pt, EventScheduler events, int seed, long idOffset, long skip, double startTime) {
+
+        double meanArrivalTime = meanArrivalTime(pt, load);
 
         // Generate events
-        int type, src, dst;
-        double time = 0.0;
-        long id = 1;
+        int type, pair, src, dst;
+        double time = startTime;
+        double interArrival, holdingTime;
+        long id = idOffset + 1;
         int numNodes = pt.getNumNodes();
         Distribution dist1, dist2, dist3, dist4;
         Event event;
 
-        dist1 = new Distribution(1, seed);
-        dist2 = new Distribution(2, seed);
-        dist3 = new Distribution(3, seed);
-        dist4 = new Distribution(4, seed);
+        checkPairs(numNodes);
+        mmppSwitch = -1;
+        dist1 = stream(1, seed);
+        dist2 = stream(2, seed);
+        dist3 = stream(3, seed);
+        dist4 = stream(4, seed);
         for (int j = 0; j < calls; j++) {
-            type = weightVector[dist1.nextInt(TotalWeight)];
-            src = dst = dist2.nextInt(numNodes);
-            while (src == dst) {
-                dst = dist2.nextInt(numNodes);
-            }
-            event = new FlowArrivalEvent(new Flow(id, src, dst, callsTypesInfo[type].getRate(), 0, callsTypesInfo[type].getCOS()));
-            time += dist3.nextExponential(meanArrivalTime);
-            event.setTime(time);
-            events.addEvent(event);
-            event = new FlowDepartureEvent(id);
-            event.setTime(time + dist4.nextExponential(callsTypesInfo[type].getHoldingTime()));
-            events.addEvent(event);
+            type = callType(dist1.nextInt(TotalWeight));
+            pair = pair(dist2, numNodes);
+            src = pair / numNodes;
+            dst = pair % numNodes;
+            interArrival = interArrival(dist3, meanArrivalTime, time);
+            holdingTime = holdingTime(dist4, callsTypesInfo[type].getHoldingTime());
+            if (j >= skip) {
+                event = new FlowArrivalEvent(new Flow(id, src, dst, callsTypesInfo[type].getRate(), 0, callsTypesInfo[type].getCOS()));
+                time += interArrival;
+                event.setTime(time);
+                events.addEvent(event);
+                event = new FlowDepartureEvent(id);
+                event.setTime(time + holdingTime);
+                events.addEvent(event);
+            }
             id++;
         }
+        lastArrival = time;
+    }
+
+    /**
+     * Prepares the generation of the network's traffic one call at a time,
+     * as the simulation goes, instead of all calls at once. The calls are
+     * drawn from the same random streams and in the same order as by
+     * generateTraffic, so both give the same traffic until the streams are
+     * reseeded.
+     *
+     * @param pt the network's Physical Topology
+     * @param seed a number in the interval [1,25] that defines up to 25 different random simulations (any positive number with the xoroshiro generator)
+     */
+    public void startTraffic(PhysicalTopology pt, int seed) {
+        meanArrivalTime = meanArrivalTime(pt, load);
+        numNodes = pt.getNumNodes();
+        checkPairs(numNodes);
+        nextID = 1;
+        lastArrival = 0;
+        mmppSwitch = -1;
+        dist1 = stream(1, seed);
+        dist2 = stream(2, seed);
+        dist3 = stream(3, seed);
+        dist4 = stream(4, seed);
+    }
+
+    /**
+     * Schedules the next call prepared by startTraffic: its arrival, after
+     * the last one, and its departure.
+     *
+     * @param events Ons.EventScheduler object that will contain the call's events
+     */
+    public void generateCall(EventScheduler events) {
+        int type = callType(dist1.nextInt(TotalWeight));
+        int pair = pair(dist2, numNodes);
+        int src = pair / numNodes;
+        int dst = pair % numNodes;
+        double interArrival = interArrival(dist3, meanArrivalTime, lastArrival);
+        double holdingTime = holdingTime(dist4, callsTypesInfo[type].getHoldingTime());
+        Event event = new FlowArrivalEvent(new Flow(nextID, src, dst, callsTypesInfo[type].getRate(), 0, callsTypesInfo[type].getCOS()));
+        lastArrival += interArrival;
+        event.setTime(lastArrival);
+        events.addEvent(event);
+        event = new FlowDepartureEvent(nextID);
+        event.setTime(lastArrival + holdingTime);
+        events.addEvent(event);
+        nextID++;
+    }
+
+    /**
+     * Gives new seeds to the random streams used by generateCall, so that
+     * the following calls differ from those of another run from the same
+     * state.
+     *
+     * @param seed the seed from which the seeds of the streams are drawn
+     */
+    public void reseed(long seed) {
+        Distribution seeds = xoroshiro ? new Xoroshiro(seed) : new Distribution(seed);
+        dist1.setSeed(seeds.nextLong());
+        dist2.setSeed(seeds.nextLong());
+        dist3.setSeed(seeds.nextLong());
+        dist4.setSeed(seeds.nextLong());
+    }
+
+    /**
+     * Creates one of the random streams of the traffic: by default, from the
+     * seed table of Ons.Util.Distribution; if the generator attribute of the
+     * traffic tag is "xoroshiro", a stream of Ons.Util.Xoroshiro.
+     *
+     * @param stream the stream, in the interval [1,4]
+     * @param seed the seed, in the interval [1,25] for the table
+     * @return the random stream
+     */
+    private Distribution stream(int stream, int seed) {
+        return xoroshiro ? new Xoroshiro(stream, seed) : new Distribution(stream, seed);
+    }
+
+    /**
+     * Sets the time after which generateCall schedules the next arrival,
+     * for instance when the simulation goes back to a saved state.
+     *
+     * @param time the time of the last scheduled arrival
+     */
+    public void setLastArrival(double time) {
+        lastArrival = time;
+    }
+
+    /**
+     * Retrieves the state of the MMPP that modulates the arrivals.
+     *
+     * @return the state, or -1 if it has not been drawn yet
+     */
+    public int getMMPPState() {
+        return mmppSwitch < 0 ? -1 : mmppState;
+    }
+
+    /**
+     * Retrieves the time the MMPP that modulates the arrivals leaves its
+     * state.
+     *
+     * @return the time, or -1 if the state has not been drawn yet
+     */
+    public double getMMPPSwitch() {
+        return mmppSwitch;
+    }
+
+    /**
+     * Puts the MMPP that modulates the arrivals back in a saved state, along
+     * with setLastArrival, when the simulation goes back to a saved state.
+     *
+     * @param state the state, as returned by getMMPPState
+     * @param switchTime the time the MMPP leaves it, as returned by
+     * getMMPPSwitch
+     */
+    public void setMMPPState(int state, double switchTime) {
+        if (state < -1 || (mmppRates == null ? state >= 1 : state >= mmppRates.length)) {
+            throw (new IllegalArgumentException());
+        }
+        mmppState = Math.max(state, 0);
+        mmppSwitch = state < 0 ? -1 : switchTime;
+    }
+
+    /* Types are drawn as numbers in [0, TotalWeight), each type taking as
+     * many consecutive numbers as its weight. The guide table splits the
+     * numbers in numberCallsTypes equal parts and keeps the first type of
+     * each, so a draw only walks over the few types of its part: constant
+     * expected time, and memory by number of types instead of by weight.
+     */
+    private void guide() {
+        cumulativeWeight = new int[numberCallsTypes];
+        guide = new int[numberCallsTypes];
+        int sum = 0;
+        for (int i = 0; i < numberCallsTypes; i++) {
+            sum += callsTypesInfo[i].getWeight();
+            cumulativeWeight[i] = sum;
+        }
+        int type = 0;
+        for (int k = 0; k < numberCallsTypes; k++) {
+            // the smallest number of part k
+            long first = ((long) k * TotalWeight + numberCallsTypes - 1) / numberCallsTypes;
+            while (type < numberCallsTypes - 1 && cumulativeWeight[type] <= first) {
+                type++;
+            }
+            guide[k] = type;
+        }
+    }
+
+    private int callType(int number) {
+        int type = guide[(int) ((long) number * numberCallsTypes / TotalWeight)];
+        while (cumulativeWeight[type] <= number) {
+            type++;
+        }
+        return type;
+    }
+
+    /* Draws the source and destination of a call, as src * numNodes + dst:
+     * from the traffic matrix, or uniformly between all distinct nodes.
+     */
+    private int pair(Distribution dist, int numNodes) {
+        if (pairs != null) {
+            int pair = pairs.sample(dist);
+            return pairSource[pair] * numNodes + pairDestination[pair];
+        }
+        int src, dst;
+        src = dst = dist.nextInt(numNodes);
+        while (src == dst) {
+            dst = dist.nextInt(numNodes);
+        }
+        return src * numNodes + dst;
+    }
+
+    private void checkPairs(int numNodes) {
+        if (pairs != null) {
+            for (int i = 0; i < pairSource.length; i++) {
+                if (pairSource[i] >= numNodes || pairDestination[i] >= numNodes) {
+                    throw (new IllegalArgumentException("Invalid pair in the traffic matrix: " + pairSource[i] + "-" + pairDestination[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the probability of each pair of nodes being the source and
+     * destination of a call.
+     *
+     * @param numNodes the number of nodes of the network
+     * @return the probabilities, indexed by src * numNodes + dst
+     */
+    double[] getPairProbabilities(int numNodes) {
+        checkPairs(numNodes);
+        double[] probabilities = new double[numNodes * numNodes];
+        if (pairs == null) {
+            for (int src = 0; src < numNodes; src++) {
+                for (int dst = 0; dst < numNodes; dst++) {
+                    if (src != dst) {
+                        probabilities[src * numNodes + dst] = 1.0 / ((double) numNodes * (numNodes - 1));
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < pairSource.length; i++) {
+                probabilities[pairSource[i] * numNodes + pairDestination[i]] += pairs.getProbability(i);
+            }
+        }
+        return probabilities;
+    }
+
+    /* Draws the time from an arrival to the next one. Under a rate profile
+     * or an MMPP, arrivals are a Poisson process of rate
+     * profile(t) x state(t) / meanArrivalTime, drawn by thinning: candidates
+     * come at the highest rate, and each is kept with probability
+     * rate(t) / highest rate. The MMPP is advanced to each candidate on the
+     * same stream.
+     */
+    private double interArrival(Distribution dist, double meanArrivalTime, double time) {
+        if (period == 0 && mmppRates == null) {
+            return dist.nextExponential(meanArrivalTime);
+        }
+        double bound = profileMax * mmppMax;
+        double gap = 0;
+        for (;;) {
+            gap += dist.nextExponential(meanArrivalTime / bound);
+            double rate = profile(time + gap) * mmppState(dist, time + gap);
+            if (dist.nextDouble() * bound < rate) {
+                return gap;
+            }
+        }
+    }
+
+    private double profile(double time) {
+        if (period == 0) {
+            return 1;
+        }
+        if (multipliers != null) {
+            double phase = (time % period) / period;
+            return multipliers[Math.min((int) (phase * multipliers.length), multipliers.length - 1)];
+        }
+        return 1 + amplitude * Math.cos(2 * Math.PI * (time - peak) / period);
+    }
+
+    /* The MMPP starts in a state drawn in proportion to the mean sojourns,
+     * its long-run distribution, and leaves each state for another one
+     * drawn uniformly.
+     */
+    private double mmppState(Distribution dist, double time) {
+        if (mmppRates == null) {
+            return 1;
+        }
+        if (mmppSwitch < 0) {
+            double total = 0;
+            for (double sojourn : mmppSojourns) {
+                total += sojourn;
+            }
+            double u = dist.nextDouble() * total;
+            mmppState = 0;
+            while (mmppState < mmppSojourns.length - 1 && u >= mmppSojourns[mmppState]) {
+                u -= mmppSojourns[mmppState];
+                mmppState++;
+            }
+            mmppSwitch = dist.nextExponential(mmppSojourns[mmppState]);
+        }
+        while (mmppSwitch <= time) {
+            if (mmppRates.length > 1) {
+                int next = dist.nextInt(mmppRates.length - 1);
+                mmppState = next >= mmppState ? next + 1 : next;
+            }
+            mmppSwitch += dist.nextExponential(mmppSojourns[mmppState]);
+        }
+        return mmppRates[mmppState];
+    }
+
+    /* Draws a holding time of the given mean: exponential, Pareto of shape
+     * a (scale mean (a - 1) / a), or lognormal of sigma s (mu ln(mean) - s^2 / 2).
+     */
+    private double holdingTime(Distribution dist, double mean) {
+        switch (holdingDistribution) {
+            case PARETO:
+                return mean * (holdingShape - 1) / holdingShape / Math.pow(1 - dist.nextDouble(), 1 / holdingShape);
+            case LOGNORMAL:
+                return Math.exp(Math.log(mean) - holdingShape * holdingShape / 2 + holdingShape * dist.nextGaussian());
+            default:
+                return dist.nextExponential(mean);
+        }
+    }
+
+    private static double[] parseList(String list) {
+        String[] parts = list.trim().split("[ ]*,[ ]*");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i]);
+        }
+        return values;
+    }
+
+    /* Compute the arrival time
+     *
+     * load = meanArrivalRate x holdingTime x bw/maxRate
+     * 1/meanArrivalRate = (holdingTime x bw/maxRate)/load
+     * meanArrivalTime = (holdingTime x bw/maxRate)/load
+     */
+    private double meanArrivalTime(PhysicalTopology pt, double load) {
+        if (pt instanceof EONPhysicalTopology){
+            //Because the EON architecture is not possible to obtain a maxRate... So:
+            return meanHoldingTime/load;
+        } else {
+            return (meanHoldingTime * (meanRate / (double) maxRate)) / load;
+        }
+    }
+
+    /**
+     * Retrieves the mean arrival rate of calls, in calls per second, under a
+     * given load.
+     *
+     * @param pt the network's Physical Topology
+     * @param load the offered load, in erlangs
+     * @return the arrival rate
+     */
+    public double getArrivalRate(PhysicalTopology pt, double load) {
+        return 1.0 / meanArrivalTime(pt, load);
+    }
+
+    /**
+     * Says whether the calls are to be generated as the simulation goes (by
+     * Ons.LazyTraffic) rather than all at once: if the traffic tag has
+     * lazy="true", a rate-profile, an mmpp or a holding-time tag.
+     *
+     * @return true if the calls are generated lazily
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Retrieves the offered load of the Ons.TrafficGenerator.
+     *
+     * @return the load, in erlangs
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * Retrieves the types of calls the Ons.TrafficGenerator draws from.
+     *
+     * @return the types of calls
+     */
+    TrafficInfo[] getCallsTypesInfo() {
+        return callsTypesInfo;
+    }
+
+    /**
+     * Changes the number of calls the Ons.TrafficGenerator generates, given
+     * by the traffic tag.
+     *
+     * @param calls the number of calls
+     */
+    public void setCalls(int calls) {
+        if (calls < 1) {
+            throw (new IllegalArgumentException());
+        }
+        this.calls = calls;
+    }
+
+    /**
+     * Retrieves the number of calls the Ons.TrafficGenerator generates.
+     *
+     * @return the number of calls
+     */
+    public int getCalls() {
+        return calls;
+    }
+
+    /**
+     * Retrieves the time of the last arrival scheduled by generateTraffic or
+     * generateCall.
+     *
+     * @return the arrival time
+     */
+    public double getLastArrival() {
+        return lastArrival;
     }
 }
@@ -0,0 +1,108 @@
+package Ons.Util;
+
+import java.util.Random;
+
+/**
+ * Samples from a discrete distribution in constant time, by the alias
+ * method (Vose's construction). The n outcomes are spread over n columns
+ * of equal probability; column i holds outcome i with probability prob[i]
+ * and outcome alias[i] otherwise, so a sample takes one uniform column and
+ * one uniform number, whatever n is. The table takes O(n) memory and O(n)
+ * time to build.
+ *
+ * @author onsteam
+ */
+public class AliasTable {
+
+    private final double[] prob;
+    private final int[] alias;
+    private final double[] probability; // of each outcome
+
+    /**
+     * Creates a new Ons.Util.AliasTable object.
+     *
+     * @param weights the weights of the outcomes, not negative and not all 0
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+                throw (new IllegalArgumentException());
+            }
+            total += weight;
+        }
+        if (n == 0 || total <= 0) {
+            throw (new IllegalArgumentException());
+        }
+        prob = new double[n];
+        alias = new int[n];
+        probability = new double[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0, numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            probability[i] = weights[i] / total;
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1;
+            if (scaled[l] < 1) {
+                small[numSmall++] = l;
+            } else {
+                large[numLarge++] = l;
+            }
+        }
+        // what is left is 1 up to rounding errors
+        while (numLarge > 0) {
+            int l = large[--numLarge];
+            prob[l] = 1;
+            alias[l] = l;
+        }
+        while (numSmall > 0) {
+            int s = small[--numSmall];
+            prob[s] = 1;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * Draws an outcome.
+     *
+     * @param random the random number generator
+     * @return the index of the outcome
+     */
+    public int sample(Random random) {
+        int column = random.nextInt(prob.length);
+        return random.nextDouble() < prob[column] ? column : alias[column];
+    }
+
+    /**
+     * Retrieves the probability of an outcome.
+     *
+     * @param outcome the index of the outcome
+     * @return the probability
+     */
+    public double getProbability(int outcome) {
+        return probability[outcome];
+    }
+
+    /**
+     * Retrieves the number of outcomes.
+     *
+     * @return the number of outcomes
+     */
+    public int size() {
+        return prob.length;
+    }
+}
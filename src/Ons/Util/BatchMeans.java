@@ -0,0 +1,124 @@
+package Ons.Util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Confidence interval by the method of batch means. The output of a run is
+ * cut into batches of consecutive observations, and the batch averages are
+ * treated as independent samples: long enough batches are nearly
+ * uncorrelated even if the observations inside them are not.
+ *
+ * The batch averages are accumulated with Welford's algorithm, so no batch
+ * is kept in memory.
+ *
+ * @author onsteam
+ */
+public class BatchMeans {
+
+    // Student's t quantiles for a 95% two-sided interval, by degrees of freedom
+    private static final double[] T975 = {
+        12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+        2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+        2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    private static final double Z975 = 1.959964;
+
+    private long batches;
+    private double mean;
+    private double m2; // sum of squared deviations from the mean
+
+    /**
+     * Creates an empty Ons.Util.BatchMeans object.
+     */
+    public BatchMeans() {
+        batches = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    /**
+     * Adds the average of a complete batch.
+     *
+     * @param value the batch average
+     */
+    public void add(double value) {
+        batches++;
+        double delta = value - mean;
+        mean += delta / batches;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Retrieves the number of batches added.
+     *
+     * @return the number of batches
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Retrieves the average of the batch averages.
+     *
+     * @return the point estimate
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Retrieves the half-width of the 95% confidence interval of the mean.
+     *
+     * @return the half-width, or infinity with fewer than two batches
+     */
+    public double getHalfWidth() {
+        if (batches < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return studentT975(batches - 1) * Math.sqrt(m2 / (batches - 1) / batches);
+    }
+
+    /**
+     * Retrieves the 0.975 quantile of Student's t distribution, from a table
+     * up to 30 degrees of freedom and from its Cornish-Fisher expansion
+     * beyond.
+     *
+     * @param df the degrees of freedom
+     * @return the quantile
+     */
+    public static double studentT975(long df) {
+        if (df < 1) {
+            throw (new IllegalArgumentException());
+        }
+        if (df <= T975.length) {
+            return T975[(int) df - 1];
+        }
+        double z = Z975, z3 = z * z * z, z5 = z3 * z * z;
+        return z + (z3 + z) / (4.0 * df) + (5 * z5 + 16 * z3 + 3 * z) / (96.0 * df * df);
+    }
+
+    /**
+     * Writes the accumulated batches to a stream.
+     *
+     * @param out the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState(DataOutputStream out) throws IOException {
+        out.writeLong(batches);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+    }
+
+    /**
+     * Replaces the accumulated batches by the ones written by writeState.
+     *
+     * @param in the stream
+     * @throws IOException if the stream cannot be read
+     */
+    public void readState(DataInputStream in) throws IOException {
+        batches = in.readLong();
+        mean = in.readDouble();
+        m2 = in.readDouble();
+    }
+}
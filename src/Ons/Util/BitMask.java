@@ -0,0 +1,167 @@
+package Ons.Util;
+
+import java.util.Random;
+
+/**
+ * Helpers for bit masks stored in long[] words, where bit i of the mask is
+ * bit (i mod 64) of word i / 64. They are used for the wavelength masks of
+ * WDM links, where a set bit means a free wavelength.
+ *
+ * @author onsteam
+ */
+public class BitMask {
+
+    /**
+     * Retrieves how many words are needed to hold a given number of bits.
+     *
+     * @param bits the number of bits
+     * @return the number of long words
+     */
+    public static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Creates a mask with the first bits set.
+     *
+     * @param bits the number of bits to be set
+     * @return the new mask
+     */
+    public static long[] full(int bits) {
+        long[] mask = new long[words(bits)];
+        for (int i = 0; i < bits >>> 6; i++) {
+            mask[i] = -1L;
+        }
+        if ((bits & 63) != 0) {
+            mask[bits >>> 6] = (1L << (bits & 63)) - 1;
+        }
+        return mask;
+    }
+
+    /**
+     * Says whether or not a bit is set.
+     *
+     * @param mask the mask
+     * @param bit the bit index
+     * @return true if the bit is set
+     */
+    public static boolean get(long[] mask, int bit) {
+        return (mask[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     *
+     * @param mask the mask
+     * @param bit the bit index
+     */
+    public static void set(long[] mask, int bit) {
+        mask[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Clears a bit.
+     *
+     * @param mask the mask
+     * @param bit the bit index
+     */
+    public static void clear(long[] mask, int bit) {
+        mask[bit >>> 6] &= ~(1L << bit);
+    }
+
+    /**
+     * Intersects a mask with another one, in place.
+     *
+     * @param mask the mask that receives the result
+     * @param other the mask to intersect with
+     * @return true if the result has at least one bit set
+     */
+    public static boolean and(long[] mask, long[] other) {
+        long any = 0;
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] &= other[i];
+            any |= mask[i];
+        }
+        return any != 0;
+    }
+
+    /**
+     * Retrieves the index of the first set bit at or after a given one.
+     *
+     * @param mask the mask
+     * @param from the first bit index to be examined
+     * @return the index of the set bit, or -1 if there is none
+     */
+    public static int nextSetBit(long[] mask, int from) {
+        int w = from >>> 6;
+        if (w >= mask.length) {
+            return -1;
+        }
+        long word = mask[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == mask.length) {
+                return -1;
+            }
+            word = mask[w];
+        }
+    }
+
+    /**
+     * Retrieves the number of set bits.
+     *
+     * @param mask the mask
+     * @return the number of set bits
+     */
+    public static int cardinality(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the set bits in increasing order.
+     *
+     * @param mask the mask
+     * @return the indexes of the set bits
+     */
+    public static int[] toArray(long[] mask) {
+        int[] bits = new int[cardinality(mask)];
+        int k = 0;
+        for (int i = nextSetBit(mask, 0); i >= 0; i = nextSetBit(mask, i + 1)) {
+            bits[k++] = i;
+        }
+        return bits;
+    }
+
+    /**
+     * Picks one of the set bits uniformly at random.
+     *
+     * @param mask the mask
+     * @param rng the random number generator
+     * @return the index of the chosen bit, or -1 if no bit is set
+     */
+    public static int randomSetBit(long[] mask, Random rng) {
+        int count = cardinality(mask);
+        if (count == 0) {
+            return -1;
+        }
+        int n = rng.nextInt(count);
+        for (int w = 0; w < mask.length; w++) {
+            int c = Long.bitCount(mask[w]);
+            if (n < c) {
+                long word = mask[w];
+                for (int j = 0; j < n; j++) {
+                    word &= word - 1;
+                }
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            n -= c;
+        }
+        return -1;
+    }
+}
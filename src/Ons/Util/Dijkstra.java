@@ -26,6 +26,9 @@ import java.util.ArrayList;
  * the smallest distance (from the initial node) as the next "current node" and
  * continue from step 3.
  * 
+ * The unvisited nodes are kept in a binary heap, so a query costs
+ * O((nodes + edges) log nodes).
+ * 
  * @author onsteam
  */
 public class Dijkstra {
@@ -34,28 +37,39 @@ public class Dijkstra {
         final double[] dist = new double[G.size()];  // shortest known distance from "s"
         final int[] pred = new int[G.size()];  // preceding node in path
         final boolean[] visited = new boolean[G.size()]; // all false initially
+        final int[] heap = new int[G.size()];  // unvisited nodes, ordered by (dist, id)
+        final int[] position = new int[G.size()];  // index of each node in heap
 
         for (int i = 0; i < dist.length; i++) {
             pred[i] = -1;
             dist[i] = Integer.MAX_VALUE;
         }
         dist[s] = 0;
+        for (int i = 0; i < heap.length; i++) {
+            heap[i] = i;
+            position[i] = i;
+        }
+        siftUp(heap, position, dist, position[s]);
+        int heapSize = heap.length;
 
-        for (int i = 0; i < dist.length; i++) {
-            final int next = minVertex(dist, visited);
-
-            if (next >= 0) {
-                visited[next] = true;
+        while (heapSize > 0) {
+            final int next = heap[0];
+            heapSize--;
+            swap(heap, position, 0, heapSize);
+            siftDown(heap, position, dist, 0, heapSize);
+            visited[next] = true;
 
-                // The shortest path to next is dist[next] and via pred[next].
+            // The shortest path to next is dist[next] and via pred[next].
 
-                final int[] n = G.neighbors(next);
-                for (int j = 0; j < n.length; j++) {
-                    final int v = n[j];
-                    final double d = dist[next] + G.getWeight(next, v);
-                    if (dist[v] > d) {
-                        dist[v] = d;
-                        pred[v] = next;
+            final int[] n = G.neighbors(next);
+            for (int j = 0; j < n.length; j++) {
+                final int v = n[j];
+                final double d = dist[next] + G.getWeight(next, v);
+                if (dist[v] > d) {
+                    dist[v] = d;
+                    pred[v] = next;
+                    if (!visited[v]) {
+                        siftUp(heap, position, dist, position[v]);
                     }
                 }
             }
@@ -64,24 +78,53 @@ public class Dijkstra {
     }
     
     /**
-     * Finds, from the list of unvisited vertexes, the one with the lowest
-     * distance from the initial node.
+     * Compares two vertexes by their distance from the initial node; ties are
+     * broken by the lowest vertex index, which is the order in which a linear
+     * scan over the unvisited vertexes would pick them.
      * 
      * @param dist vector with shortest known distance from the initial node
-     * @param v vector indicating the visited nodes
-     * @return vertex with minimum distance from initial node,
-     * 			or -1 if the graph is unconnected or if no vertexes were visited yet
+     * @param a the first vertex
+     * @param b the second vertex
+     * @return true if a must be visited before b
      */
-    private static int minVertex(double[] dist, boolean[] v) {
-        double x = Double.MAX_VALUE;
-        int y = -1;   // graph not connected, or no unvisited vertices
-        for (int i = 0; i < dist.length; i++) {
-            if (!v[i] && dist[i] < x) {
-                y = i;
-                x = dist[i];
+    private static boolean before(double[] dist, int a, int b) {
+        return dist[a] < dist[b] || (dist[a] == dist[b] && a < b);
+    }
+    
+    private static void siftUp(int[] heap, int[] position, double[] dist, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(dist, heap[i], heap[parent])) {
+                break;
             }
+            swap(heap, position, i, parent);
+            i = parent;
         }
-        return y;
+    }
+    
+    private static void siftDown(int[] heap, int[] position, double[] dist, int i, int size) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(dist, heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(dist, heap[child], heap[i])) {
+                break;
+            }
+            swap(heap, position, i, child);
+            i = child;
+        }
+    }
+    
+    private static void swap(int[] heap, int[] position, int i, int j) {
+        int aux = heap[i];
+        heap[i] = heap[j];
+        heap[j] = aux;
+        position[heap[i]] = i;
+        position[heap[j]] = j;
     }
     
     /**
@@ -0,0 +1,396 @@
+package Ons.Util;
+
+import Ons.Link;
+import Ons.WDMLightPath;
+import Ons.WDMLink;
+import Ons.WDMOXC;
+import Ons.WDMPhysicalTopology;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra's algorithm over the wavelength-layered graph of a WDM network.
+ * 
+ * Each vertex of the layered graph is a pair (node, wavelength), meaning "the
+ * lightpath arrives at node on wavelength". The graph is never materialized:
+ * the edges leaving a vertex are generated on the fly from the node's
+ * out-links, the links' free wavelength masks and the state of the wavelength
+ * converters. So one query finds the cheapest lightpath, with wavelength
+ * conversion where it pays off, at a cost of O(nodes x wavelengths) memory.
+ * 
+ * The conversion rules are the ones checked by
+ * WDMPhysicalTopology.canCreatePhysicalLightpath: changing from wavelength w1
+ * to w2 when entering link i needs a free converter with range of at least
+ * |w1 - w2| at the source of link i and, unless link i is the last one, also
+ * at its destination.
+ * 
+ * @author onsteam
+ */
+public class LayeredDijkstra {
+
+    /**
+     * Finds the cheapest lightpath between two nodes. The cost of a lightpath
+     * is the sum of the weights of its links plus conversionCost for every
+     * wavelength change. Ties are broken in favor of the lowest node and
+     * then the lowest wavelength, like first-fit.
+     *
+     * If the cheapest layered path crosses a node twice, the cheapest simple
+     * one is searched instead, within a bounded number of node expansions:
+     * on very large networks it may then not be the cheapest, or a feasible
+     * lightpath may be missed.
+     *
+     * @param pt the WDM physical topology
+     * @param src the source node
+     * @param dst the destination node
+     * @param conversionCost the extra cost of each wavelength conversion
+     * @return the candidate lightpath (with id 1, not yet created), or null if
+     * there is no feasible lightpath
+     */
+    public static WDMLightPath getShortestLightpath(WDMPhysicalTopology pt, int src, int dst, double conversionCost) {
+        if (src == dst || !pt.getNode(src).hasFreeGroomingInputPort() || !pt.getNode(dst).hasFreeGroomingOutputPort()) {
+            return null;
+        }
+        final int W = pt.getNumWavelengths();
+        final int states = pt.getNumNodes() * W;
+        final double[] dist = new double[states];
+        final int[] predState = new int[states]; // -1 for the first link
+        final int[] predLink = new int[states];
+        final boolean[] visited = new boolean[states];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Heap heap = new Heap();
+
+        // The first link can use any free wavelength, without conversion
+        for (int k = 0; k < pt.getOutDegree(src); k++) {
+            WDMLink link = (WDMLink) pt.getOutLink(src, k);
+            for (int w = link.nextWLAvailable(0); w >= 0; w = link.nextWLAvailable(w + 1)) {
+                relax(link.getDestination() * W + w, link.getWeight(), -1, link.getID(), dist, predState, predLink, heap);
+            }
+        }
+
+        int target = -1;
+        while (!heap.isEmpty()) {
+            final int state = heap.pollState();
+            if (visited[state]) {
+                continue;
+            }
+            visited[state] = true;
+            final int u = state / W;
+            final int w = state % W;
+            if (u == dst) {
+                target = state;
+                break;
+            }
+            if (u == src) {
+                continue;
+            }
+            final WDMOXC oxc = (WDMOXC) pt.getNode(u);
+            final boolean canConvert = oxc.hasFreeWvlConverters();
+            final int range = oxc.getWvlConversionRange();
+            for (int k = 0; k < pt.getOutDegree(u); k++) {
+                WDMLink link = (WDMLink) pt.getOutLink(u, k);
+                int v = link.getDestination();
+                // Same wavelength, no conversion
+                if (link.isWLAvailable(w)) {
+                    relax(v * W + w, dist[state] + link.getWeight(), state, link.getID(), dist, predState, predLink, heap);
+                }
+                if (!canConvert) {
+                    continue;
+                }
+                WDMOXC next = (WDMOXC) pt.getNode(v);
+                int reach = range;
+                if (v != dst) {
+                    if (!next.hasFreeWvlConverters()) {
+                        continue;
+                    }
+                    reach = Math.min(reach, next.getWvlConversionRange());
+                }
+                // Converted wavelengths within the conversion range
+                int from = Math.max(0, w - reach);
+                int to = Math.min(W - 1, w + reach);
+                for (int w2 = link.nextWLAvailable(from); w2 >= 0 && w2 <= to; w2 = link.nextWLAvailable(w2 + 1)) {
+                    if (w2 != w) {
+                        relax(v * W + w2, dist[state] + link.getWeight() + conversionCost, state, link.getID(), dist, predState, predLink, heap);
+                    }
+                }
+            }
+        }
+        if (target < 0) {
+            return null;
+        }
+
+        int hops = 0;
+        for (int state = target; state >= 0; state = predState[state]) {
+            hops++;
+        }
+        int[] links = new int[hops];
+        int[] wvls = new int[hops];
+        for (int state = target, i = hops - 1; state >= 0; state = predState[state], i--) {
+            links[i] = predLink[state];
+            wvls[i] = state % W;
+        }
+        if (!isLoopless(pt, links)) {
+            // The cheapest layered path is a lower bound; search the simple
+            // paths for the cheapest feasible one
+            return new SimpleSearch(pt, src, dst, conversionCost, dist[target]).run();
+        }
+        return new WDMLightPath(1, src, dst, links, wvls);
+    }
+
+    private static void relax(int state, double d, int pred, int link, double[] dist, int[] predState, int[] predLink, Heap heap) {
+        if (d < dist[state]) {
+            dist[state] = d;
+            predState[state] = pred;
+            predLink[state] = link;
+            heap.add(d, state);
+        }
+    }
+
+    /**
+     * Says whether or not a sequence of links visits each node at most once.
+     * Different layers of the same node are different vertexes, so the
+     * layered search may return a path that crosses a node twice on
+     * different wavelengths, which is not a lightpath.
+     */
+    private static boolean isLoopless(WDMPhysicalTopology pt, int[] links) {
+        for (int i = 0; i < links.length; i++) {
+            Link li = pt.getLink(links[i]);
+            for (int j = 0; j < i; j++) {
+                if (pt.getLink(links[j]).getSource() == li.getDestination()
+                        || pt.getLink(links[j]).getSource() == li.getSource()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Depth-first branch and bound over the simple paths from the source, for
+     * when the cheapest layered path crosses a node twice. Along a path, the
+     * cheapest cost of arriving at its last node on each wavelength is kept
+     * (the layered search restricted to that path), so every simple path is
+     * priced exactly. A branch is cut when its cheapest cost plus the
+     * shortest distance left to the destination, by link weight alone, is
+     * not below the best lightpath found. The search ends as soon as a
+     * lightpath as cheap as the layered path is found. Ties are broken in
+     * favor of the path found first, in the order of the out-links, and
+     * then of the lowest wavelength.
+     *
+     * The number of simple paths can grow exponentially with the size of
+     * the network, so the search also ends after MAX_EXPANSIONS nodes have
+     * been expanded, with the best lightpath found so far, if any.
+     */
+    private static class SimpleSearch {
+
+        private static final int MAX_EXPANSIONS = 100000;
+
+        private final WDMPhysicalTopology pt;
+        private final int src;
+        private final int dst;
+        private final int W;
+        private final double conversionCost;
+        private final double floor;
+        private final double[] toDst;
+        private final boolean[] onPath;
+        private final double[][] cost; // [hops][wavelength]
+        private final int[][] back; // wavelength on the previous link
+        private final int[] path;
+        private double best = Double.POSITIVE_INFINITY;
+        private int expansions;
+        private int[] bestLinks;
+        private int[] bestWvls;
+
+        SimpleSearch(WDMPhysicalTopology pt, int src, int dst, double conversionCost, double floor) {
+            this.pt = pt;
+            this.src = src;
+            this.dst = dst;
+            this.W = pt.getNumWavelengths();
+            this.conversionCost = conversionCost;
+            this.floor = floor;
+            int n = pt.getNumNodes();
+            this.toDst = distancesTo(pt, dst);
+            this.onPath = new boolean[n];
+            this.cost = new double[n][W];
+            this.back = new int[n][W];
+            this.path = new int[n];
+            onPath[src] = true;
+        }
+
+        WDMLightPath run() {
+            // Any wavelength can be taken at the source, without conversion
+            Arrays.fill(cost[0], 0);
+            search(src, 0);
+            if (bestLinks == null) {
+                return null;
+            }
+            return new WDMLightPath(1, src, dst, bestLinks, bestWvls);
+        }
+
+        private void search(int u, int hops) {
+            final double[] c = cost[hops];
+            if (u == dst) {
+                int wBest = -1;
+                for (int w = 0; w < W; w++) {
+                    if (c[w] < best && (wBest < 0 || c[w] < c[wBest])) {
+                        wBest = w;
+                    }
+                }
+                if (wBest >= 0) {
+                    best = c[wBest];
+                    bestLinks = Arrays.copyOf(path, hops);
+                    bestWvls = new int[hops];
+                    for (int i = hops, w = wBest; i > 0; w = back[i][w], i--) {
+                        bestWvls[i - 1] = w;
+                    }
+                }
+                return;
+            }
+            double min = Double.POSITIVE_INFINITY;
+            for (int w = 0; w < W; w++) {
+                min = Math.min(min, c[w]);
+            }
+            if (min + toDst[u] >= best || best <= floor || ++expansions > MAX_EXPANSIONS) {
+                return;
+            }
+            final WDMOXC oxc = (WDMOXC) pt.getNode(u);
+            final boolean canConvert = hops > 0 && oxc.hasFreeWvlConverters();
+            for (int k = 0; k < pt.getOutDegree(u) && best > floor && expansions <= MAX_EXPANSIONS; k++) {
+                WDMLink link = (WDMLink) pt.getOutLink(u, k);
+                int v = link.getDestination();
+                if (onPath[v]) {
+                    continue;
+                }
+                int reach = 0;
+                if (canConvert) {
+                    WDMOXC next = (WDMOXC) pt.getNode(v);
+                    if (v == dst) {
+                        reach = oxc.getWvlConversionRange();
+                    } else if (next.hasFreeWvlConverters()) {
+                        reach = Math.min(oxc.getWvlConversionRange(), next.getWvlConversionRange());
+                    }
+                }
+                final double[] d = cost[hops + 1];
+                final int[] pred = back[hops + 1];
+                Arrays.fill(d, Double.POSITIVE_INFINITY);
+                boolean reached = false;
+                for (int w2 = link.nextWLAvailable(0); w2 >= 0; w2 = link.nextWLAvailable(w2 + 1)) {
+                    // Same wavelength first, then the converted ones
+                    if (c[w2] < Double.POSITIVE_INFINITY) {
+                        d[w2] = c[w2] + link.getWeight();
+                        pred[w2] = w2;
+                    }
+                    for (int w = Math.max(0, w2 - reach); w <= Math.min(W - 1, w2 + reach); w++) {
+                        double dw = c[w] + link.getWeight() + conversionCost;
+                        if (w != w2 && dw < d[w2]) {
+                            d[w2] = dw;
+                            pred[w2] = w;
+                        }
+                    }
+                    reached |= d[w2] < Double.POSITIVE_INFINITY;
+                }
+                if (reached) {
+                    onPath[v] = true;
+                    path[hops] = link.getID();
+                    search(v, hops + 1);
+                    onPath[v] = false;
+                }
+            }
+        }
+
+        /**
+         * Shortest distances to a node by link weight, over the links that
+         * have a free wavelength.
+         */
+        private static double[] distancesTo(WDMPhysicalTopology pt, int dst) {
+            int n = pt.getNumNodes();
+            double[] dist = new double[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            dist[dst] = 0;
+            boolean[] done = new boolean[n];
+            Heap heap = new Heap();
+            heap.add(0, dst);
+            while (!heap.isEmpty()) {
+                int v = heap.pollState();
+                if (done[v]) {
+                    continue;
+                }
+                done[v] = true;
+                for (int k = 0; k < pt.getInDegree(v); k++) {
+                    WDMLink link = (WDMLink) pt.getInLink(v, k);
+                    int u = link.getSource();
+                    if (!done[u] && link.firstWLAvailable() >= 0
+                            && dist[v] + link.getWeight() < dist[u]) {
+                        dist[u] = dist[v] + link.getWeight();
+                        heap.add(dist[u], u);
+                    }
+                }
+            }
+            return dist;
+        }
+    }
+
+    /**
+     * Binary min-heap of (distance, state) entries with lazy deletion:
+     * stale entries are skipped when polled. Ties are broken by the lowest
+     * state.
+     */
+    private static class Heap {
+
+        private double[] keys = new double[64];
+        private int[] states = new int[64];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double key, int state) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(key, state, keys[parent], states[parent])) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                states[i] = states[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            states[i] = state;
+        }
+
+        int pollState() {
+            int top = states[0];
+            size--;
+            double key = keys[size];
+            int state = states[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(keys[child + 1], states[child + 1], keys[child], states[child])) {
+                    child++;
+                }
+                if (!less(keys[child], states[child], key, state)) {
+                    break;
+                }
+                keys[i] = keys[child];
+                states[i] = states[child];
+                i = child;
+            }
+            keys[i] = key;
+            states[i] = state;
+            return top;
+        }
+
+        private static boolean less(double k1, int s1, double k2, int s2) {
+            return k1 < k2 || (k1 == k2 && s1 < s2);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package Ons.Util;
+
+import java.util.Arrays;
+
+/**
+ * Warm-up detection by the MSER-5 rule (Marginal Standard Error Rule, on
+ * batches of 5 observations). The observations are averaged in groups of 5,
+ * and the truncation point is the number of leading groups d whose removal
+ * minimizes the marginal standard error of the remaining ones:
+ *
+ * MSER(d) = sum over i &gt; d of (Z_i - mean(d))^2 / (k - d)^2
+ *
+ * where Z_1..Z_k are the group averages and mean(d) is the average of the
+ * groups after d. The truncation point is only trusted when it lies in the
+ * first half of the series; otherwise the series is still too short.
+ *
+ * @author onsteam
+ */
+public class MSER {
+
+    private static final int GROUP = 5;
+
+    private double[] groups;
+    private int numGroups;
+    private double groupSum;
+    private int groupCount;
+
+    /**
+     * Creates an empty Ons.Util.MSER object.
+     */
+    public MSER() {
+        groups = new double[64];
+        numGroups = 0;
+        groupSum = 0;
+        groupCount = 0;
+    }
+
+    /**
+     * Adds an observation to the series.
+     *
+     * @param value the observation
+     */
+    public void add(double value) {
+        groupSum += value;
+        if (++groupCount == GROUP) {
+            if (numGroups == groups.length) {
+                groups = Arrays.copyOf(groups, groups.length * 2);
+            }
+            groups[numGroups++] = groupSum / GROUP;
+            groupSum = 0;
+            groupCount = 0;
+        }
+    }
+
+    /**
+     * Retrieves the number of observations in complete groups.
+     *
+     * @return the number of observations
+     */
+    public int getObservations() {
+        return numGroups * GROUP;
+    }
+
+    /**
+     * Finds the MSER-5 truncation point of the series.
+     *
+     * @return the number of leading observations to discard, or -1 if the
+     * series is too short for the truncation point to be trusted
+     */
+    public int getTruncation() {
+        if (numGroups < 4) {
+            return -1;
+        }
+        // suffix sums of the group averages and of their squares
+        double sum = 0, squares = 0;
+        double best = Double.POSITIVE_INFINITY;
+        int truncation = 0;
+        for (int d = numGroups - 1; d >= 0; d--) {
+            sum += groups[d];
+            squares += groups[d] * groups[d];
+            int n = numGroups - d;
+            if (n < 2) {
+                continue;
+            }
+            double mser = Math.max(squares - sum * sum / n, 0) / ((double) n * n);
+            if (mser <= best) {
+                best = mser;
+                truncation = d;
+            }
+        }
+        return truncation < numGroups / 2 ? truncation * GROUP : -1;
+    }
+}
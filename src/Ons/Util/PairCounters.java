@@ -0,0 +1,219 @@
+package Ons.Util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sparse store of per source-destination pair counters, split by class of
+ * service. Only the pairs that actually see traffic get memory, so the store
+ * grows with the number of active pairs instead of nodes x nodes x classes.
+ *
+ * Each pair owns a block of long counters: one row with the pair totals,
+ * followed by one row per class. Rows hold the ARRIVALS, BLOCKED,
+ * REQUIRED_BW and BLOCKED_BW counters. Pairs are located through an
+ * open-addressing hash table keyed by src * numNodes + dst.
+ *
+ * @author onsteam
+ */
+public class PairCounters {
+
+    public static final int ARRIVALS = 0;
+    public static final int BLOCKED = 1;
+    public static final int REQUIRED_BW = 2;
+    public static final int BLOCKED_BW = 3;
+    private static final int COUNTERS = 4;
+
+    private final int numNodes;
+    private final int numClasses;
+    private final int stride; // longs per pair
+    private long[] keys; // pair key + 1, 0 means empty
+    private int[] blocks; // block index of each key
+    private long[] counters;
+    private int size;
+
+    /**
+     * Creates an empty PairCounters object.
+     *
+     * @param numNodes number of nodes in the topology
+     * @param numClasses number of classes of service
+     */
+    public PairCounters(int numNodes, int numClasses) {
+        if (numNodes < 1 || numClasses < 1) {
+            throw (new IllegalArgumentException());
+        }
+        this.numNodes = numNodes;
+        this.numClasses = numClasses;
+        this.stride = COUNTERS * (numClasses + 1);
+        this.keys = new long[64];
+        this.blocks = new int[64];
+        this.counters = new long[16 * stride];
+        this.size = 0;
+    }
+
+    /**
+     * Adds a value to one counter of a pair, both in the pair totals and in
+     * the given class of service.
+     *
+     * @param src the source node
+     * @param dst the destination node
+     * @param cos the class of service
+     * @param counter ARRIVALS, BLOCKED, REQUIRED_BW or BLOCKED_BW
+     * @param value the amount to be added
+     */
+    public void add(int src, int dst, int cos, int counter, long value) {
+        if (cos < 0 || cos >= numClasses) {
+            throw (new IllegalArgumentException());
+        }
+        int base = block(src, dst, true) * stride;
+        counters[base + counter] += value;
+        counters[base + COUNTERS * (cos + 1) + counter] += value;
+    }
+
+    /**
+     * Retrieves a counter of a pair, summed over all classes of service.
+     *
+     * @param src the source node
+     * @param dst the destination node
+     * @param counter ARRIVALS, BLOCKED, REQUIRED_BW or BLOCKED_BW
+     * @return the counter value, zero if the pair has seen no traffic
+     */
+    public long get(int src, int dst, int counter) {
+        int b = block(src, dst, false);
+        return b < 0 ? 0 : counters[b * stride + counter];
+    }
+
+    /**
+     * Retrieves a counter of a pair for one class of service.
+     *
+     * @param src the source node
+     * @param dst the destination node
+     * @param cos the class of service
+     * @param counter ARRIVALS, BLOCKED, REQUIRED_BW or BLOCKED_BW
+     * @return the counter value, zero if the pair has seen no traffic
+     */
+    public long get(int src, int dst, int cos, int counter) {
+        int b = block(src, dst, false);
+        return b < 0 ? 0 : counters[b * stride + COUNTERS * (cos + 1) + counter];
+    }
+
+    /**
+     * Retrieves the number of pairs that have counters allocated.
+     *
+     * @return the number of active pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes all counters to a stream, pair by pair in allocation order.
+     *
+     * @param out the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeState(DataOutputStream out) throws IOException {
+        long[] blockKeys = new long[size];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                blockKeys[blocks[i]] = keys[i];
+            }
+        }
+        out.writeInt(numNodes);
+        out.writeInt(numClasses);
+        out.writeInt(size);
+        for (int b = 0; b < size; b++) {
+            out.writeLong(blockKeys[b]);
+            for (int c = 0; c < stride; c++) {
+                out.writeLong(counters[b * stride + c]);
+            }
+        }
+    }
+
+    /**
+     * Replaces all counters by the ones written by writeState.
+     *
+     * @param in the stream
+     * @throws IOException if the stream cannot be read or holds counters
+     * for another number of nodes or classes
+     */
+    public void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != numNodes || in.readInt() != numClasses) {
+            throw (new IOException("Pair counters do not match the topology"));
+        }
+        int pairs = in.readInt();
+        Arrays.fill(keys, 0);
+        Arrays.fill(counters, 0);
+        size = 0;
+        for (int p = 0; p < pairs; p++) {
+            long key = in.readLong() - 1;
+            int base = block((int) (key / numNodes), (int) (key % numNodes), true) * stride;
+            for (int c = 0; c < stride; c++) {
+                counters[base + c] = in.readLong();
+            }
+        }
+    }
+
+    /**
+     * Finds the block of a pair in the hash table, optionally allocating it.
+     *
+     * @param src the source node
+     * @param dst the destination node
+     * @param create true to allocate the block if the pair is new
+     * @return the block index, or -1 if absent and create is false
+     */
+    private int block(int src, int dst, boolean create) {
+        if (src < 0 || src >= numNodes || dst < 0 || dst >= numNodes) {
+            throw (new IllegalArgumentException());
+        }
+        long key = (long) src * numNodes + dst + 1;
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return blocks[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (!create) {
+            return -1;
+        }
+        if ((size + 1) * stride > counters.length) {
+            counters = Arrays.copyOf(counters, counters.length * 2);
+        }
+        keys[i] = key;
+        blocks[i] = size;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * Doubles the hash table, keeping the load factor under one half.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldBlocks = blocks;
+        keys = new long[oldKeys.length * 2];
+        blocks = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = mix(oldKeys[j]) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                blocks[i] = oldBlocks[j];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -5,6 +5,7 @@
 package Ons.Util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.TreeSet;
 
 /**
@@ -12,12 +13,21 @@ import java.util.TreeSet;
  * If a pair of nodes has weight equal to zero, it means the edge between them
  * doesn't exist.
  * 
+ * The edges are kept as sparse adjacency lists (targets sorted by node id), so
+ * memory and neighbor iteration scale with the number of edges instead of the
+ * square of the number of nodes.
+ * 
  * @author onsteam
  */
 public class WeightedGraph {
 
+    private static final int[] NO_TARGETS = new int[0];
+    private static final double[] NO_WEIGHTS = new double[0];
+
     private int numNodes;
-    private double[][] edges;  // adjacency matrix
+    private int[] degree; // number of stored edges per node
+    private int[][] targets; // sorted target nodes per node
+    private double[][] weights; // weights aligned with targets
     
     /**
      * Creates a new WeightedGraph object with no edges,
@@ -25,8 +35,14 @@ public class WeightedGraph {
      * @param n number of nodes the new graph will have
      */
     public WeightedGraph(int n) {
-        edges = new double[n][n];
         numNodes = n;
+        degree = new int[n];
+        targets = new int[n][];
+        weights = new double[n][];
+        for (int i = 0; i < n; i++) {
+            targets[i] = NO_TARGETS;
+            weights[i] = NO_WEIGHTS;
+        }
     }
     
     /**
@@ -37,11 +53,12 @@ public class WeightedGraph {
      */
     public WeightedGraph(WeightedGraph g) {
         numNodes = g.numNodes;
-        edges = new double[numNodes][numNodes];
+        degree = Arrays.copyOf(g.degree, numNodes);
+        targets = new int[numNodes][];
+        weights = new double[numNodes][];
         for (int i = 0; i < numNodes; i++) {
-            for (int j = 0; j < numNodes; j++) {
-                edges[i][j] = g.getWeight(i, j);
-            }
+            targets[i] = Arrays.copyOf(g.targets[i], degree[i]);
+            weights[i] = Arrays.copyOf(g.weights[i], degree[i]);
         }
     }
     
@@ -63,7 +80,7 @@ public class WeightedGraph {
      * @param w the value of the edge's weight
      */
     public void addEdge(int source, int target, double w) {
-        edges[source][target] = w;
+        setWeight(source, target, w);
     }
     
     /**
@@ -74,18 +91,23 @@ public class WeightedGraph {
      * @return true if the edge exists, or false otherwise
      */
     public boolean isEdge(int source, int target) {
-        return edges[source][target] > 0;
+        return getWeight(source, target) > 0;
     }
     
     /**
-     * Removes a given edge from the graph by simply attributing
-     * zero to its source and target coordinates within the matrix of edges.
+     * Removes a given edge from the graph.
      * 
      * @param source the edge's source node
      * @param target the edge's destination node
      */
     public void removeEdge(int source, int target) {
-        edges[source][target] = 0;
+        int k = indexOf(source, target);
+        if (k >= 0) {
+            int tail = degree[source] - k - 1;
+            System.arraycopy(targets[source], k + 1, targets[source], k, tail);
+            System.arraycopy(weights[source], k + 1, weights[source], k, tail);
+            degree[source]--;
+        }
     }
     
     /**
@@ -93,41 +115,64 @@ public class WeightedGraph {
      * 
      * @param source the edge's source node
      * @param target the edge's destination node
-     * @return the value of the edge's weight
+     * @return the value of the edge's weight, or zero if there is no edge
      */
     public double getWeight(int source, int target) {
-        return edges[source][target];
+        int k = indexOf(source, target);
+        return k >= 0 ? weights[source][k] : 0;
     }
     
     /**
      * Sets a determined weight to a given edge on the graph.
+     * A weight equal to zero removes the edge.
      * 
      * @param source the edge's source node
      * @param target the edge's destination node
      * @param w the value of the weight
      */
     public void setWeight(int source, int target, double w) {
-        edges[source][target] = w;
+        if (target < 0 || target >= numNodes) {
+            throw (new ArrayIndexOutOfBoundsException(target));
+        }
+        int k = indexOf(source, target);
+        if (w == 0) {
+            removeEdge(source, target);
+        } else if (k >= 0) {
+            weights[source][k] = w;
+        } else {
+            k = -k - 1;
+            if (degree[source] == targets[source].length) {
+                int capacity = Math.max(4, degree[source] * 2);
+                targets[source] = Arrays.copyOf(targets[source], capacity);
+                weights[source] = Arrays.copyOf(weights[source], capacity);
+            }
+            int tail = degree[source] - k;
+            System.arraycopy(targets[source], k, targets[source], k + 1, tail);
+            System.arraycopy(weights[source], k, weights[source], k + 1, tail);
+            targets[source][k] = target;
+            weights[source][k] = w;
+            degree[source]++;
+        }
     }
     
     /**
      * Retrieves the neighbors of a given vertex. 
      * 
-     * @param vertex index of the vertex within the matrix of edges
-     * @return list with indexes of the vertex's neighbors
+     * @param vertex index of the vertex
+     * @return list with indexes of the vertex's neighbors, in increasing order
      */
     public int[] neighbors(int vertex) {
         int count = 0;
-        for (int i = 0; i < edges[vertex].length; i++) {
-            if (edges[vertex][i] > 0) {
+        for (int i = 0; i < degree[vertex]; i++) {
+            if (weights[vertex][i] > 0) {
                 count++;
             }
         }
         final int[] answer = new int[count];
         count = 0;
-        for (int i = 0; i < edges[vertex].length; i++) {
-            if (edges[vertex][i] > 0) {
-                answer[count++] = i;
+        for (int i = 0; i < degree[vertex]; i++) {
+            if (weights[vertex][i] > 0) {
+                answer[count++] = targets[vertex][i];
             }
         }
         return answer;
@@ -140,13 +185,9 @@ public class WeightedGraph {
      */
     public void removeNodeEdge(int node) {
         //removing edges from this node
+        degree[node] = 0;
         for(int i = 0; i < numNodes; i++){
-            if(isEdge(node, i)){
-                removeEdge(node, i);
-            }
-            if(isEdge(i, node)){
-                removeEdge(i, node);
-            }
+            removeEdge(i, node);
         }
     }
     
@@ -158,35 +199,51 @@ public class WeightedGraph {
     public void removeNode(int node) {
         //removing edges from this node
         removeNodeEdge(node);
-        //remove node from the graph
-        double[][] newedges = new double[numNodes-1][numNodes-1];
-        int k = 0, l = 0;
-        for(int i = 0; i< numNodes; i++){
-            if(i != node){
-                l = 0;
-                for(int j = 0; j< numNodes; j++){
-                    if(j != node){
-                        newedges[k][l] = edges[i][j];
-                        l++;
+        //remove node from the graph, renumbering the nodes after it
+        int[] newdegree = new int[numNodes - 1];
+        int[][] newtargets = new int[numNodes - 1][];
+        double[][] newweights = new double[numNodes - 1][];
+        int k = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (i != node) {
+                newdegree[k] = degree[i];
+                newtargets[k] = targets[i];
+                newweights[k] = weights[i];
+                for (int j = 0; j < degree[i]; j++) {
+                    if (targets[i][j] > node) {
+                        targets[i][j]--;
                     }
                 }
-                k++;   
+                k++;
             }
         }
         numNodes--;
-        edges = newedges;
+        degree = newdegree;
+        targets = newtargets;
+        weights = newweights;
     }
     
     /**
      * Creates a new node in graph.
      */
     public void addNode(){
-        double[][] newedges = new double[numNodes+1][numNodes+1];
-        for(int i = 0; i < numNodes; i++){
-            System.arraycopy(edges[i], 0, newedges[i], 0, numNodes);
-        }
+        degree = Arrays.copyOf(degree, numNodes + 1);
+        targets = Arrays.copyOf(targets, numNodes + 1);
+        weights = Arrays.copyOf(weights, numNodes + 1);
+        targets[numNodes] = NO_TARGETS;
+        weights[numNodes] = NO_WEIGHTS;
         numNodes++;
-        edges = newedges;
+    }
+    
+    /**
+     * Binary searches the adjacency list of source for target.
+     * 
+     * @param source the edge's source node
+     * @param target the edge's destination node
+     * @return the position of target, or (-(insertion point) - 1) if absent
+     */
+    private int indexOf(int source, int target) {
+        return Arrays.binarySearch(targets[source], 0, degree[source], target);
     }
     
     /**
@@ -375,11 +432,11 @@ public class WeightedGraph {
     @Override
     public String toString() {
         String s = "";
-        for (int j = 0; j < edges.length; j++) {
+        for (int j = 0; j < numNodes; j++) {
             s += Integer.toString(j) + ": ";
-            for (int i = 0; i < edges[j].length; i++) {
-                if (edges[j][i] > 0) {
-                    s += Integer.toString(i) + ":" + Double.toString(edges[j][i]) + " ";
+            for (int i = 0; i < degree[j]; i++) {
+                if (weights[j][i] > 0) {
+                    s += Integer.toString(targets[j][i]) + ":" + Double.toString(weights[j][i]) + " ";
                 }
             }
             s += "\n";
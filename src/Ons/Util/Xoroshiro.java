@@ -0,0 +1,207 @@
+package Ons.Util;
+
+/**
+ * Random number generator of the xoroshiro128++ family (Blackman and Vigna),
+ * behind the Distribution interface. It keeps 128 bits of state in two
+ * plain longs, so it is faster than java.util.Random, which updates an
+ * AtomicLong, and it has a period of 2^128 - 1 with jump functions that
+ * split it into independent streams:
+ *
+ * each replication (seed) starts at its own point of the period, given by
+ * SplitMix64; the streams of a replication start 2^64 numbers apart from
+ * there, by jumps.
+ *
+ * Streams of a replication never overlap. Replications start at random
+ * points, so that R replications of a few streams overlap with probability
+ * below R^2 / 2^60: any seed can be used, and creating a generator takes a
+ * number of jumps proportional to its stream only.
+ *
+ * Exponential numbers are drawn by the ziggurat method of Marsaglia and
+ * Tsang, with 256 layers: most draws take one random number and one
+ * multiplication, and no logarithm.
+ *
+ * @author onsteam
+ */
+public class Xoroshiro extends Distribution {
+
+    private static final long serialVersionUID = 1L;
+    private static final long[] JUMP = {0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L};
+    private static final long[] LONG_JUMP = {0x360fd5f2cf8d5d99L, 0x9c6e6877736c46e3L};
+    private static final long ORIGIN = 0x4f4e532d5349474dL;
+
+    // Ziggurat tables of the exponential distribution
+    private static final double R = 7.69711747013104972;
+    private static final double AREA = 3.949659822581572e-3;
+    private static final long[] K = new long[256];
+    private static final double[] W = new double[256];
+    private static final double[] F = new double[256];
+
+    static {
+        double m = 4294967296.0; // 2^32
+        double d = R, t = R;
+        double q = AREA / Math.exp(-d);
+        K[0] = (long) ((d / q) * m);
+        K[1] = 0;
+        W[0] = q / m;
+        W[255] = d / m;
+        F[0] = 1.0;
+        F[255] = Math.exp(-d);
+        for (int i = 254; i >= 1; i--) {
+            d = -Math.log(AREA / d + Math.exp(-d));
+            K[i + 1] = (long) ((d / t) * m);
+            t = d;
+            F[i] = Math.exp(-d);
+            W[i] = d / m;
+        }
+    }
+
+    private long s0;
+    private long s1;
+
+    /**
+     * Creates a new Xoroshiro object, seeded by SplitMix64.
+     *
+     * @param seed the seed
+     */
+    public Xoroshiro(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Creates a new Xoroshiro object on a stream of a replication.
+     *
+     * @param stream the stream, from 1
+     * @param seed the replication, from 1
+     */
+    public Xoroshiro(int stream, long seed) {
+        // apart from the generators seeded directly
+        super(ORIGIN ^ seed);
+        if (stream < 1 || seed < 1) {
+            throw (new IllegalArgumentException());
+        }
+        for (int i = 1; i < stream; i++) {
+            jump();
+        }
+    }
+
+    /**
+     * Sets the state from a seed, by SplitMix64.
+     *
+     * @param seed the seed
+     */
+    @Override
+    public void setSeed(long seed) {
+        s0 = splitMix(seed += 0x9e3779b97f4a7c15L);
+        s1 = splitMix(seed + 0x9e3779b97f4a7c15L);
+    }
+
+    @Override
+    public long nextLong() {
+        long a = s0;
+        long b = s1;
+        long result = Long.rotateLeft(a + b, 17) + a;
+        b ^= a;
+        s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+        s1 = Long.rotateLeft(b, 28);
+        return result;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Returns a uniform number in [0, bound), without bias, by Lemire's
+     * multiply and reject method.
+     *
+     * @param bound the bound, positive
+     * @return the number
+     */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw (new IllegalArgumentException());
+        }
+        long m = (nextLong() >>> 32) * bound;
+        if ((m & 0xffffffffL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while ((m & 0xffffffffL) < threshold) {
+                m = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns an exponential number, by the ziggurat method.
+     *
+     * @param b the mean
+     * @return the number
+     */
+    @Override
+    public double nextExponential(double b) {
+        for (;;) {
+            long bits = nextLong();
+            int i = (int) bits & 0xff;
+            long j = bits >>> 32;
+            if (j < K[i]) {
+                return b * j * W[i];
+            }
+            if (i == 0) {
+                // the tail, beyond R, is exponential again
+                return b * (R - Math.log(1.0 - nextDouble()));
+            }
+            double x = j * W[i];
+            if (F[i] + nextDouble() * (F[i - 1] - F[i]) < Math.exp(-x)) {
+                return b * x;
+            }
+        }
+    }
+
+    /**
+     * Advances the generator by 2^64 numbers, to the start of the next
+     * stream.
+     */
+    public void jump() {
+        jump(JUMP);
+    }
+
+    /**
+     * Advances the generator by 2^96 numbers.
+     */
+    public void longJump() {
+        jump(LONG_JUMP);
+    }
+
+    private void jump(long[] polynomial) {
+        long a = 0, b = 0;
+        for (long word : polynomial) {
+            for (int bit = 0; bit < 64; bit++) {
+                if ((word & (1L << bit)) != 0) {
+                    a ^= s0;
+                    b ^= s1;
+                }
+                nextLong();
+            }
+        }
+        s0 = a;
+        s1 = b;
+    }
+
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,5 +1,8 @@
 package Ons;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import Ons.RA.*;
 import Ons.Util.*;
@@ -21,7 +24,7 @@ import org.w3c.dom.*;
 public class VirtualTopology {
 
     protected long nextLightpathID = 1;
-    protected TreeSet<LightPath>[][] adjMatrix;
+    protected Map<Long, TreeSet<LightPath>> adjMatrix; // by src * adjMatrixSize + dst, only the pairs with lightpaths
     protected int adjMatrixSize;
     protected Map<Long, LightPath> lightPaths;
     protected PhysicalTopology pt;
@@ -48,7 +51,6 @@ public class VirtualTopology {
      * @param xml file that contains all simulation information
      * @param pt Physical Topology of the network
      */
-    @SuppressWarnings("unchecked")
     public VirtualTopology(Element xml, PhysicalTopology pt) {
         int nodes, lightpaths;
 
@@ -63,14 +65,7 @@ public class VirtualTopology {
             adjMatrixSize = nodes = pt.getNumNodes();
 
             // Process lightpaths
-            adjMatrix = new TreeSet[nodes][nodes];
-            for (int i = 0; i < nodes; i++) {
-                for (int j = 0; j < nodes; j++) {
-                    if (i != j) {
-                        adjMatrix[i][j] = new TreeSet<>(new LightPathSort());
-                    }
-                }
-            }
+            adjMatrix = new HashMap<>();
             NodeList lightpathlist = xml.getElementsByTagName("lightpath");
             lightpaths = lightpathlist.getLength();
             if (Simulator.verbose) {
@@ -107,7 +102,7 @@ public class VirtualTopology {
             id = this.nextLightpathID;
             lp.setId(id);
             pt.createPhysicalLightpath(lp);
-            adjMatrix[lp.getSource()][lp.getDestination()].add(lp);
+            addToAdjMatrix(lp);
             lightPaths.put(nextLightpathID, lp);
             tr.createLightpath(lp);
             st.createLightpath(lp);
@@ -138,7 +133,7 @@ public class VirtualTopology {
             pt.removePhysicalLightpath(lp);
 
             lightPaths.remove(id);
-            adjMatrix[lp.getSource()][lp.getDestination()].remove(lp);
+            removeFromAdjMatrix(lp);
             tr.removeLightpath(lp);
 
             return true;
@@ -194,10 +189,10 @@ public class VirtualTopology {
             }
             pt.removePhysicalLightpath(old);
             lightPaths.remove(id);
-            adjMatrix[old.getSource()][old.getDestination()].remove(old);
+            removeFromAdjMatrix(old);
             tr.removeLightpath(old);
             pt.createPhysicalLightpath(lp);
-            adjMatrix[lp.getSource()][lp.getDestination()].add(lp);
+            addToAdjMatrix(lp);
             lightPaths.put(id, lp);
             tr.createLightpath(lp);
         }
@@ -320,7 +315,12 @@ public class VirtualTopology {
      * @return the TreeSet with all of the lightpaths
      */
     public TreeSet<LightPath> getLightpaths(int src, int dst) {
-        return new TreeSet<>(adjMatrix[src][dst]);
+        TreeSet<LightPath> lps = new TreeSet<>(new LightPathSort());
+        TreeSet<LightPath> pair = adjMatrix.get(key(src, dst));
+        if (pair != null) {
+            lps.addAll(pair);
+        }
+        return lps;
     }
     
     /**
@@ -402,10 +402,37 @@ public class VirtualTopology {
     /**
      * Retrieves the adjacency matrix of the Virtual Topology.
      *
+     * The matrix is not kept by the topology, which only holds the pairs of
+     * nodes that have lightpaths; it is materialized on every call, so it
+     * costs O(n^2) memory. Pairs without lightpaths are null.
+     *
      * @return the Ons.VirtualTopology object's adjMatrix
      */
+    @SuppressWarnings("unchecked")
     public TreeSet<LightPath>[][] getAdjMatrix() {
-        return adjMatrix;
+        TreeSet<LightPath>[][] matrix = new TreeSet[adjMatrixSize][adjMatrixSize];
+        for (Map.Entry<Long, TreeSet<LightPath>> pair : adjMatrix.entrySet()) {
+            matrix[(int) (pair.getKey() / adjMatrixSize)][(int) (pair.getKey() % adjMatrixSize)] = pair.getValue();
+        }
+        return matrix;
+    }
+
+    // key of a pair of nodes in adjMatrix
+    private long key(int src, int dst) {
+        return (long) src * adjMatrixSize + dst;
+    }
+
+    private void addToAdjMatrix(LightPath lp) {
+        adjMatrix.computeIfAbsent(key(lp.getSource(), lp.getDestination()), k -> new TreeSet<>(new LightPathSort())).add(lp);
+    }
+
+    // the set of a pair is dropped with its last lightpath
+    private void removeFromAdjMatrix(LightPath lp) {
+        long key = key(lp.getSource(), lp.getDestination());
+        TreeSet<LightPath> pair = adjMatrix.get(key);
+        if (pair != null && pair.remove(lp) && pair.isEmpty()) {
+            adjMatrix.remove(key);
+        }
     }
     
     /**
@@ -417,12 +444,7 @@ public class VirtualTopology {
      * @return true if the lightpath exists, or false otherwise
      */
     public boolean hasLightpath(int src, int dst) {
-        if (adjMatrix[src][dst] != null) {
-            if (!adjMatrix[src][dst].isEmpty()) {
-                return true;
-            }
-        }
-        return false;
+        return adjMatrix.containsKey(key(src, dst));
     }
 
     /**
@@ -516,14 +538,8 @@ public class VirtualTopology {
     @Override
     public String toString() {
         String vtopo = "";
-        for (int i = 0; i < adjMatrixSize; i++) {
-            for (int j = 0; j < adjMatrixSize; j++) {
-                if (adjMatrix[i][j] != null) {
-                    if (!adjMatrix[i][j].isEmpty()) {
-                        vtopo += adjMatrix[i][j].toString() + "\n\n";
-                    }
-                }
-            }
+        for (long key : new TreeSet<>(adjMatrix.keySet())) {
+            vtopo += adjMatrix.get(key).toString() + "\n\n";
         }
         return vtopo;
     }
@@ -531,6 +547,92 @@ public class VirtualTopology {
         return nextLightpathID;
     }
     
+    /**
+     * Writes all lightpaths to a checkpoint, in id order, with the resources
+     * they hold in the physical topology and, for EON lightpaths, their
+     * available bandwidth.
+     *
+     * @param out the checkpoint stream
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        ArrayList<LightPath> lps = new ArrayList<>(lightPaths.values());
+        lps.sort(new LightPathSort());
+        out.writeLong(nextLightpathID);
+        out.writeInt(lps.size());
+        for (LightPath lp : lps) {
+            out.writeByte(lp instanceof EONLightPath ? 1 : 0);
+            out.writeLong(lp.getID());
+            out.writeInt(lp.getSource());
+            out.writeInt(lp.getDestination());
+            out.writeInt(lp.getTx());
+            out.writeInt(lp.getRx());
+            out.writeInt(lp.getLinks().length);
+            for (int link : lp.getLinks()) {
+                out.writeInt(link);
+            }
+            if (lp instanceof EONLightPath) {
+                EONLightPath eon = (EONLightPath) lp;
+                out.writeInt(eon.getFirstSlot());
+                out.writeInt(eon.getLastSlot());
+                out.writeInt(eon.getModulation());
+                out.writeInt(eon.getBwAvailable());
+            } else {
+                for (int wvl : ((WDMLightPath) lp).getWavelengths()) {
+                    out.writeInt(wvl);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces all lightpaths by the ones of a checkpoint. The physical
+     * topology is not touched: its occupancy is restored on its own.
+     *
+     * @param in the checkpoint stream
+     * @throws IOException if the checkpoint cannot be read
+     */
+    void readState(DataInputStream in) throws IOException {
+        lightPaths.clear();
+        adjMatrix.clear();
+        nextLightpathID = in.readLong();
+        int count = in.readInt();
+        for (int k = 0; k < count; k++) {
+            boolean eon = in.readByte() == 1;
+            long id = in.readLong();
+            int src = in.readInt();
+            int dst = in.readInt();
+            int tx = in.readInt();
+            int rx = in.readInt();
+            int[] links = new int[in.readInt()];
+            for (int i = 0; i < links.length; i++) {
+                links[i] = in.readInt();
+            }
+            LightPath lp;
+            if (eon) {
+                int firstSlot = in.readInt();
+                int lastSlot = in.readInt();
+                int modulation = in.readInt();
+                EONLightPath eonLp = new EONLightPath(id, src, dst, links, firstSlot, lastSlot, modulation, EONPhysicalTopology.getSlotSize());
+                eonLp.addFlowOnLightPath(eonLp.getBw() - in.readInt());
+                lp = eonLp;
+            } else {
+                int[] wavelengths = new int[links.length];
+                for (int i = 0; i < links.length; i++) {
+                    wavelengths[i] = in.readInt();
+                }
+                lp = new WDMLightPath(id, src, dst, links, wavelengths);
+            }
+            if (src < 0 || dst < 0 || src >= adjMatrixSize || dst >= adjMatrixSize || src == dst) {
+                throw (new IOException("Checkpoint does not match the virtual topology"));
+            }
+            lp.setTx(tx);
+            lp.setRx(rx);
+            addToAdjMatrix(lp);
+            lightPaths.put(id, lp);
+        }
+    }
+    
     /**
      * Retrieves the weight of this lightpath's links
      * @param lp yhe lightpath
@@ -4,18 +4,25 @@ package Ons;/*
  */
 
 
-import java.util.ArrayList;
+import Ons.Util.BitMask;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * The Wavelength Division Multiplexing (WDM) Ons.Link represents a Fiberlink in an
  * optical network.
  *
+ * The free wavelengths are kept in a long[] bit mask (a set bit is a free
+ * wavelength), so the wavelengths free along a whole path can be found by
+ * AND-ing the masks of its links.
+ *
  * @author onsteam
  */
 public class WDMLink extends Link {
 
     private int wavelengths;
-    private boolean[] freeWavelengths;
+    private long[] freeWavelengths;
     private int[] availableBandwidth;
     private int bw;
 
@@ -26,10 +33,7 @@ public class WDMLink extends Link {
         } else {
             this.wavelengths = wavelengths;
             this.bw = bw;
-            this.freeWavelengths = new boolean[wavelengths];
-            for (int i = 0; i < wavelengths; i++) {
-                this.freeWavelengths[i] = true;
-            }
+            this.freeWavelengths = BitMask.full(wavelengths);
             this.availableBandwidth = new int[wavelengths];
             for (int i = 0; i < wavelengths; i++) {
                 this.availableBandwidth[i] = bw;
@@ -54,14 +58,14 @@ public class WDMLink extends Link {
      * Says whether or not a determined wavelength is available.
      *
      * @param wavelength the index number of the wavelength that will be checked
-     * for availability in the Ons.WDMLink's freeWavelengths vector
+     * for availability in the Ons.WDMLink's freeWavelengths mask
      * @return true if the wavelength is available
      */
     public Boolean isWLAvailable(int wavelength) {
         if (wavelength < 0 || wavelength >= this.wavelengths) {
             throw (new IllegalArgumentException());
         } else {
-            return freeWavelengths[wavelength];
+            return BitMask.get(freeWavelengths, wavelength);
         }
     }
     
@@ -71,31 +75,38 @@ public class WDMLink extends Link {
      * @return list of available wavelengths
      */
     public int[] hasWLAvailable() {
-        ArrayList<Integer> wls = new ArrayList<Integer>();
-        for (int i = 0; i < this.wavelengths; i++) {
-            if (this.isWLAvailable(i)) {
-                wls.add(i);
-            }
-        }
-        int[] a = new int[wls.size()];
-        for (int i = 0; i < wls.size(); i++) {
-            a[i] = wls.get(i);
-        }
-        return a;
+        return BitMask.toArray(freeWavelengths);
     }
     
     /**
      * Retrieves the lowest available wavelength in a given Ons.WDMLink.
      *
-     * @return first true item in the freeWavelengths vector
+     * @return first set bit in the freeWavelengths mask, or -1 if there is none
      */
     public int firstWLAvailable() {
-        for (int i = 0; i < this.wavelengths; i++) {
-            if (this.isWLAvailable(i)) {
-                return i;
-            }
-        }
-        return -1;
+        return BitMask.nextSetBit(freeWavelengths, 0);
+    }
+    
+    /**
+     * Retrieves the lowest available wavelength at or above a given one.
+     *
+     * @param from the lowest wavelength to be examined
+     * @return the wavelength, or -1 if there is none
+     */
+    public int nextWLAvailable(int from) {
+        return BitMask.nextSetBit(freeWavelengths, from);
+    }
+    
+    /**
+     * Intersects a wavelength mask with the free wavelengths of this link.
+     * Calling it for every link of a path leaves in the mask only the
+     * wavelengths that satisfy the continuity constraint.
+     *
+     * @param mask the mask to be intersected, in place
+     * @return true if at least one wavelength is left in the mask
+     */
+    public boolean andFreeWavelengths(long[] mask) {
+        return BitMask.and(mask, freeWavelengths);
     }
     
     /**
@@ -121,22 +132,25 @@ public class WDMLink extends Link {
      * @return vector of integers with the retrieved wavelengths
      */
     public int[] hasBWAvailable(int bw) {
-        ArrayList<Integer> bws = new ArrayList<Integer>();
+        int count = 0;
         for (int i = 0; i < this.wavelengths; i++) {
-            if (this.amountBWAvailable(i) >= bw) {
-                bws.add(i);
+            if (availableBandwidth[i] >= bw) {
+                count++;
             }
         }
-        int[] a = new int[bws.size()];
-        for (int i = 0; i < bws.size(); i++) {
-            a[i] = bws.get(i);
+        int[] a = new int[count];
+        count = 0;
+        for (int i = 0; i < this.wavelengths; i++) {
+            if (availableBandwidth[i] >= bw) {
+                a[count++] = i;
+            }
         }
         return a;
     }
     
     /**
-     * By attributing false to a given wavelength inside the freeWavelengths
-     * vector, this function "reserves" a wavelength.
+     * By clearing a given wavelength inside the freeWavelengths
+     * mask, this function "reserves" a wavelength.
      *
      * @param wavelength value of the wavelength to be reserved
      * @return true if operation was successful, or false otherwise
@@ -145,8 +159,8 @@ public class WDMLink extends Link {
         if (wavelength < 0 || wavelength >= this.wavelengths) {
             throw (new IllegalArgumentException());
         } else {
-            if (freeWavelengths[wavelength]) {
-                freeWavelengths[wavelength] = false;
+            if (BitMask.get(freeWavelengths, wavelength)) {
+                BitMask.clear(freeWavelengths, wavelength);
                 return true;
             } else {
                 return false;
@@ -155,8 +169,8 @@ public class WDMLink extends Link {
     }
     
     /**
-     * By attributing true to a given wavelength inside the freeWavelengths
-     * vector, this function "releases" a wavelength.
+     * By setting a given wavelength inside the freeWavelengths
+     * mask, this function "releases" a wavelength.
      *
      * @param wavelength value of the wavelength to be released
      */
@@ -164,7 +178,7 @@ public class WDMLink extends Link {
         if (wavelength < 0 || wavelength >= this.wavelengths) {
             throw (new IllegalArgumentException());
         } else {
-            freeWavelengths[wavelength] = true;
+            BitMask.set(freeWavelengths, wavelength);
         }
     }
     
@@ -222,13 +236,31 @@ public class WDMLink extends Link {
      * @return the number of avaiable free wavelengths
      */
     public int getFreeWavelengths() {
-        int cont = 0;
-        for (int i = 0; i < this.wavelengths; i++) {
-            if (freeWavelengths[i]) {
-                cont++;
-            }
+        return BitMask.cardinality(freeWavelengths);
+    }
+    
+    @Override
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(wavelengths);
+        for (long word : freeWavelengths) {
+            out.writeLong(word);
+        }
+        for (int i = 0; i < wavelengths; i++) {
+            out.writeInt(availableBandwidth[i]);
+        }
+    }
+
+    @Override
+    void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != wavelengths) {
+            throw (new IOException("Checkpoint does not match link " + id));
+        }
+        for (int i = 0; i < freeWavelengths.length; i++) {
+            freeWavelengths[i] = in.readLong();
+        }
+        for (int i = 0; i < wavelengths; i++) {
+            availableBandwidth[i] = in.readInt();
         }
-        return cont;
     }
     
     @Override
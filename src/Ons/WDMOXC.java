@@ -1,5 +1,9 @@
 package Ons;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 /**
  * The WDM Optical Cross-Connects (EDMOXCs) can switch the optical signal 
  * coming in on a wavelenght of an input fiber link to the same wavelength
@@ -81,4 +85,19 @@ public class WDMOXC extends OXC {
     public int getWvlConversionRange() {
         return wvlConversionRange;
     }
+
+    @Override
+    void writeState(DataOutputStream out) throws IOException {
+        super.writeState(out);
+        out.writeInt(freeWvlConverters);
+    }
+
+    @Override
+    void readState(DataInputStream in) throws IOException {
+        super.readState(in);
+        freeWvlConverters = in.readInt();
+        if (freeWvlConverters < 0 || freeWvlConverters > wvlConverters) {
+            throw (new IOException("Checkpoint does not match node " + id));
+        }
+    }
 }
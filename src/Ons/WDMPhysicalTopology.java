@@ -5,6 +5,11 @@ import org.w3c.dom.NodeList;
 import Ons.RA.*;
 import Ons.Util.*;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
 /**
  * The WDM Physical Topology object
  * @author onsteam
@@ -12,6 +17,7 @@ import Ons.Util.*;
 public class WDMPhysicalTopology extends PhysicalTopology {
 
     protected int wavelengths;
+    protected int[] wavelengthUsage; // number of links where each wavelength is reserved
 
     public WDMPhysicalTopology(Element xml) {
         super(xml);
@@ -22,6 +28,7 @@ public class WDMPhysicalTopology extends PhysicalTopology {
 
         try {
             this.wavelengths = Integer.parseInt(xml.getAttribute("wavelengths"));
+            this.wavelengthUsage = new int[wavelengths];
             // Process nodes
             NodeList nodelist = xml.getElementsByTagName("node");
             nodes = nodelist.getLength();
@@ -37,6 +44,7 @@ public class WDMPhysicalTopology extends PhysicalTopology {
                 wvlConversionRange = Integer.parseInt(((Element) nodelist.item(i)).getAttribute("wlconversion-range"));
                 nodeVector[id] = new WDMOXC(id, groomingInPorts, groomingOutPorts, wvlConverters, wvlConversionRange);
             }
+            registerNodes();
 
             // Process links
             NodeList linklist = xml.getElementsByTagName("link");
@@ -45,7 +53,6 @@ public class WDMPhysicalTopology extends PhysicalTopology {
                 System.out.println(Integer.toString(links) + " links");
             }
             linkVector = new WDMLink[links];
-            adjMatrix = new WDMLink[nodes][nodes];
             for (int i = 0; i < links; i++) {
                 id = Integer.parseInt(((Element) linklist.item(i)).getAttribute("id"));
                 src = Integer.parseInt(((Element) linklist.item(i)).getAttribute("source"));
@@ -53,8 +60,9 @@ public class WDMPhysicalTopology extends PhysicalTopology {
                 delay = Double.parseDouble(((Element) linklist.item(i)).getAttribute("delay"));
                 bw = Integer.parseInt(((Element) linklist.item(i)).getAttribute("bandwidth"));
                 weight = Double.parseDouble(((Element) linklist.item(i)).getAttribute("weight"));
-                linkVector[id] = adjMatrix[src][dst] = new WDMLink(id, src, dst, delay, weight, wavelengths, bw);
+                linkVector[id] = new WDMLink(id, src, dst, delay, weight, wavelengths, bw);
             }
+            buildAdjacency();
         } catch (Throwable t) {
             t.printStackTrace();
         }
@@ -95,7 +103,9 @@ public class WDMPhysicalTopology extends PhysicalTopology {
         lightpath.setRx(this.getNode(this.getLink(lightpath.links[((WDMLightPath) lightpath).getWavelengths().length - 1]).getDestination()).reserveGroomingOutputPort());
         // Reserve wvls
         for (int i = 0; i < lightpath.links.length; i++) {
-            ((WDMLink) this.getLink(lightpath.links[i])).reserveWavelength(((WDMLightPath) lightpath).getWavelengths()[i]);
+            if (((WDMLink) this.getLink(lightpath.links[i])).reserveWavelength(((WDMLightPath) lightpath).getWavelengths()[i])) {
+                wavelengthUsage[((WDMLightPath) lightpath).getWavelengths()[i]]++;
+            }
         }
     }
 
@@ -123,7 +133,11 @@ public class WDMPhysicalTopology extends PhysicalTopology {
         this.getNode(this.getLink(lightpath.links[lightpath.links.length - 1]).getDestination()).releaseGroomingOutputPort(lightpath.Rx);
         // Release wvls
         for (int i = 0; i < lightpath.links.length; i++) {
-            ((WDMLink) this.getLink(lightpath.links[i])).releaseWavelength(((WDMLightPath) lightpath).getWavelengths()[i]);
+            WDMLink link = (WDMLink) this.getLink(lightpath.links[i]);
+            if (!link.isWLAvailable(((WDMLightPath) lightpath).getWavelengths()[i])) {
+                wavelengthUsage[((WDMLightPath) lightpath).getWavelengths()[i]]--;
+            }
+            link.releaseWavelength(((WDMLightPath) lightpath).getWavelengths()[i]);
         }
 
     }
@@ -231,6 +245,64 @@ public class WDMPhysicalTopology extends PhysicalTopology {
         return numConv;
     }
     
+    /**
+     * Retrieves the wavelengths that are free on every link of a path, i.e.,
+     * the wavelengths that satisfy the continuity constraint, in one pass of
+     * bitwise ANDs over the links' wavelength masks.
+     *
+     * @param links the ids of the links of the path
+     * @return a mask (see Ons.Util.BitMask) with the continuity-feasible wavelengths
+     */
+    public long[] getContinuityMask(int[] links) {
+        long[] mask = BitMask.full(wavelengths);
+        for (int i = 0; i < links.length; i++) {
+            if (!((WDMLink) getLink(links[i])).andFreeWavelengths(mask)) {
+                break;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * First-Fit wavelength assignment: the lowest wavelength in the mask.
+     *
+     * @param mask the continuity-feasible wavelengths
+     * @param from the lowest wavelength that may be returned
+     * @return the chosen wavelength, or -1 if there is none
+     */
+    public int firstFitWavelength(long[] mask, int from) {
+        return BitMask.nextSetBit(mask, from);
+    }
+
+    /**
+     * Most-Used wavelength assignment: the wavelength in the mask that is
+     * reserved on the largest number of links of the network. Ties are broken
+     * by the lowest wavelength.
+     *
+     * @param mask the continuity-feasible wavelengths
+     * @return the chosen wavelength, or -1 if there is none
+     */
+    public int mostUsedWavelength(long[] mask) {
+        int best = -1;
+        for (int i = BitMask.nextSetBit(mask, 0); i >= 0; i = BitMask.nextSetBit(mask, i + 1)) {
+            if (best < 0 || wavelengthUsage[i] > wavelengthUsage[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Random wavelength assignment: a wavelength of the mask chosen uniformly.
+     *
+     * @param mask the continuity-feasible wavelengths
+     * @param rng the random number generator
+     * @return the chosen wavelength, or -1 if there is none
+     */
+    public int randomWavelength(long[] mask, Random rng) {
+        return BitMask.randomSetBit(mask, rng);
+    }
+
     /**
      * Returns a weighted graph with vertices representing the physical network
      * nodes, and the edges representing the physical links.
@@ -246,14 +318,10 @@ public class WDMPhysicalTopology extends PhysicalTopology {
     public WeightedGraph getWeightedGraph(int wvl, int bw) {
         WDMLink link;
         WeightedGraph g = new WeightedGraph(nodes);
-        for (int i = 0; i < nodes; i++) {
-            for (int j = 0; j < nodes; j++) {
-                if (hasLink(i, j)) {
-                    link = (WDMLink) getLink(i, j);
-                    if (link.amountBWAvailable(wvl) >= bw) {
-                        g.addEdge(i, j, link.getWeight());
-                    }
-                }
+        for (int k = 0; k < adjLinks.length; k++) {
+            link = (WDMLink) linkVector[adjLinks[k]];
+            if (link.amountBWAvailable(wvl) >= bw) {
+                g.addEdge(link.getSource(), link.getDestination(), link.getWeight());
             }
         }
         return g;
@@ -287,4 +355,33 @@ public class WDMPhysicalTopology extends PhysicalTopology {
             ((WDMLink) getLink(lightpath.links[i])).removeTraffic(((WDMLightPath) lightpath).getWavelengths()[i], flow.getRate());
         }
     }
+
+    @Override
+    public double getOccupancy() {
+        long reserved = 0;
+        for (int usage : wavelengthUsage) {
+            reserved += usage;
+        }
+        return (double) reserved / ((double) links * wavelengths);
+    }
+
+    @Override
+    void writeState(DataOutputStream out) throws IOException {
+        super.writeState(out);
+        out.writeInt(wavelengthUsage.length);
+        for (int usage : wavelengthUsage) {
+            out.writeInt(usage);
+        }
+    }
+
+    @Override
+    void readState(DataInputStream in) throws IOException {
+        super.readState(in);
+        if (in.readInt() != wavelengthUsage.length) {
+            throw (new IOException("Checkpoint does not match the physical topology"));
+        }
+        for (int i = 0; i < wavelengthUsage.length; i++) {
+            wavelengthUsage[i] = in.readInt();
+        }
+    }
 }